@@ -22,11 +22,13 @@ import java.util.List;
 import java.util.Map;
 
 import clocker.docker.entity.container.DockerContainer;
+import clocker.docker.entity.util.DockerApiClient;
 import clocker.docker.entity.util.DockerAttributes;
 import clocker.docker.location.DockerHostLocation;
 import clocker.docker.location.strategy.affinity.AffinityRules;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
 import com.google.common.reflect.TypeToken;
 
 import org.jclouds.net.domain.IpPermission;
@@ -138,6 +140,72 @@ public interface DockerHost extends MachineEntity, HasShortName, LocationOwner<D
             "docker.host.scanInterval", "Interval between scans of Docker containers", Duration.THIRTY_SECONDS);
     AttributeSensor<Void> SCAN = Sensors.newSensor(Void.class, "docker.host.scan", "Notification of host scan");
 
+    @SetFromFlag("statusInterval")
+    ConfigKey<Duration> STATUS_INTERVAL = ConfigKeys.newConfigKey(Duration.class,
+            "docker.host.statusInterval", "Interval between status checks of all Docker containers on the host", Duration.seconds(15));
+    AttributeSensor<Void> STATUS = Sensors.newSensor(Void.class, "docker.host.status", "Notification of container status check");
+
+    @SetFromFlag("watchEvents")
+    ConfigKey<Boolean> WATCH_EVENTS = ConfigKeys.newBooleanConfigKey(
+            "docker.host.events.watch", "Track containers using the docker events stream, with only occasional full scans", Boolean.FALSE);
+
+    @SetFromFlag("reconcileInterval")
+    ConfigKey<Duration> RECONCILE_INTERVAL = ConfigKeys.newConfigKey(Duration.class,
+            "docker.host.events.reconcileInterval", "Interval between full scans of Docker containers when watching events", Duration.minutes(10));
+    AttributeSensor<Boolean> EVENTS_WATCHING = Sensors.newBooleanSensor("docker.host.events.watching", "Whether the docker events stream is connected");
+
+    @SetFromFlag("imageScanInterval")
+    ConfigKey<Duration> IMAGE_SCAN_INTERVAL = ConfigKeys.newConfigKey(Duration.class,
+            "docker.host.imageScanInterval", "Interval between full resynchronisations of the cached Docker image list", Duration.FIVE_MINUTES);
+    AttributeSensor<Integer> DOCKER_IMAGE_COUNT = Sensors.newIntegerSensor("docker.host.images.total", "Number of Docker images on the host");
+
+    @SetFromFlag("sshPoolSize")
+    ConfigKey<Integer> SSH_POOL_SIZE = ConfigKeys.newIntegerConfigKey(
+            "docker.host.ssh.poolSize", "Maximum number of idle SSH connections kept open for Docker commands; zero runs each command as a separate SSH task", 4);
+    @SetFromFlag("sshPoolMaxConnections")
+    ConfigKey<Integer> SSH_POOL_MAX_CONNECTIONS = ConfigKeys.newIntegerConfigKey(
+            "docker.host.ssh.maxConnections", "Maximum number of pooled SSH connections open at once; further commands wait for a connection", 16);
+    AttributeSensor<Integer> SSH_CONNECTIONS = Sensors.newIntegerSensor("docker.host.ssh.connections", "Number of open pooled SSH connections");
+    AttributeSensor<Long> SSH_CONNECTIONS_CREATED = Sensors.newLongSensor("docker.host.ssh.connections.created", "Total number of pooled SSH connections opened");
+    AttributeSensor<Long> SSH_COMMANDS = Sensors.newLongSensor("docker.host.ssh.commands", "Total number of commands run on pooled SSH connections");
+    AttributeSensor<Double> SSH_CONNECTION_REUSE = Sensors.newDoubleSensor("docker.host.ssh.reuse", "Fraction of commands that reused an open SSH connection");
+    AttributeSensor<Double> SSH_COMMAND_LATENCY = Sensors.newDoubleSensor("docker.host.ssh.latency", "Mean latency of pooled SSH commands (ms)");
+
+    @SetFromFlag("prePullImages")
+    ConfigKey<Integer> PRE_PULL_IMAGES = ConfigKeys.newIntegerConfigKey(
+            "docker.host.images.prePull", "Number of the most frequently used images in the infrastructure to pull when the host starts", 5);
+    AttributeSensor<Integer> PRE_PULLED_IMAGES = Sensors.newIntegerSensor("docker.host.images.prePulled", "Number of images pulled when the host started");
+
+    @SetFromFlag("imageGcHighWatermark")
+    ConfigKey<Double> IMAGE_GC_HIGH_WATERMARK = ConfigKeys.newDoubleConfigKey(
+            "docker.host.images.gc.highWatermark", "Fraction of the Docker disk in use that triggers removal of unused images, for example 0.85; unset by default, which disables removal");
+
+    @SetFromFlag("imageGcLowWatermark")
+    ConfigKey<Double> IMAGE_GC_LOW_WATERMARK = ConfigKeys.newDoubleConfigKey(
+            "docker.host.images.gc.lowWatermark", "Fraction of the Docker disk in use to reduce usage to when removing unused images", 0.7d);
+
+    @SetFromFlag("imageGcInterval")
+    ConfigKey<Duration> IMAGE_GC_INTERVAL = ConfigKeys.newConfigKey(Duration.class,
+            "docker.host.images.gc.interval", "Interval between checks of the Docker disk usage", Duration.FIVE_MINUTES);
+
+    @SetFromFlag("imageGcGracePeriod")
+    ConfigKey<Duration> IMAGE_GC_GRACE_PERIOD = ConfigKeys.newConfigKey(Duration.class,
+            "docker.host.images.gc.gracePeriod", "Time after an image is created or used before it may be removed", Duration.minutes(15));
+
+    @SetFromFlag("pinnedImages")
+    ConfigKey<List<String>> PINNED_IMAGES = ConfigKeys.newConfigKey(new TypeToken<List<String>>() { },
+            "docker.host.images.pinned", "IDs, names or name:tag references of images that are never removed", ImmutableList.<String>of());
+
+    AttributeSensor<Double> DOCKER_DISK_USAGE = Sensors.newDoubleSensor("docker.host.disk.usage", "Fraction of the Docker disk in use");
+    AttributeSensor<Long> IMAGES_EVICTED = Sensors.newLongSensor("docker.host.images.evicted", "Total number of unused images removed");
+    AttributeSensor<Map<String, Long>> IMAGE_LAST_USED = Sensors.newSensor(new TypeToken<Map<String, Long>>() { },
+            "docker.host.images.lastUsed", "Time each image was last pulled, built or used to create a container, saved for rebind");
+    AttributeSensor<Long> IMAGE_BYTES_RECLAIMED = Sensors.newLongSensor("docker.host.images.reclaimed", "Total disk space reclaimed by removing unused images (bytes)");
+
+    @SetFromFlag("useRemoteApi")
+    ConfigKey<Boolean> DOCKER_API_ENABLED = ConfigKeys.newBooleanConfigKey(
+            "docker.host.api.enabled", "Use the Docker Remote API for container and image queries and actions, falling back to the CLI over SSH", Boolean.TRUE);
+
     AttributeSensor<Group> DOCKER_CONTAINER_CLUSTER = Sensors.newSensor(Group.class,
             "docker.container.cluster", "The cluster of Docker containers");
     AttributeSensor<JcloudsLocation> JCLOUDS_DOCKER_LOCATION = Sensors.newSensor(JcloudsLocation.class,
@@ -191,6 +259,9 @@ public interface DockerHost extends MachineEntity, HasShortName, LocationOwner<D
 
     /**
      * @return an Optional containing the ID of the named and tagged image.
+     * <p>
+     * Lookups are served from a cached index of the images on the host, which is
+     * invalidated by Docker commands that change the image list.
      */
     Optional<String> getImageNamed(String name, String tag);
 
@@ -200,6 +271,37 @@ public interface DockerHost extends MachineEntity, HasShortName, LocationOwner<D
 
     Object getHostMutex();
 
+    /**
+     * Runs commands on the host over a pooled SSH connection and returns the exit status.
+     * <p>
+     * Falls back to the {@link SshMachineLocation machine} when pooling is disabled.
+     *
+     * @see #SSH_POOL_SIZE
+     */
+    int execPooledCommands(Map<String, ?> props, String summary, List<String> commands, Map<String, ?> env);
+
+    /**
+     * @return an Optional containing the Docker Remote API client for the host, or
+     * absent if the API is disabled, the host is not yet running, or the API could not
+     * be reached recently, in which case it is tried again after a few minutes.
+     * @see #DOCKER_API_ENABLED
+     */
+    Optional<DockerApiClient> getDockerApiClient();
+
+    /**
+     * Tags an image on the host, replacing any existing image with the same tag.
+     */
+    void tagImage(String imageId, String repository, String tag);
+
+    /**
+     * Records that a container is being created from an image, so recently used
+     * images are the last to be removed when the disk fills up.
+     *
+     * @param image the image ID, or a {@code name:tag} reference for an image about to be pulled
+     * @see #IMAGE_GC_HIGH_WATERMARK
+     */
+    void recordImageUse(String image);
+
     MethodEffector<String> BUILD_IMAGE = new MethodEffector<String>(DockerHost.class, "buildImage");
     MethodEffector<String> RUN_DOCKER_COMMAND = new MethodEffector<String>(DockerHost.class, "runDockerCommand");
     MethodEffector<String> RUN_DOCKER_COMMAND_TIMEOUT = new MethodEffector<String>(DockerHost.class, "runDockerCommandTimeout");
@@ -17,7 +17,9 @@ package clocker.docker.entity;
 
 import io.brooklyn.entity.nosql.etcd.EtcdNode;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.OutputStream;
 import java.net.URI;
 import java.util.Collection;
 import java.util.List;
@@ -25,17 +27,24 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
 
 import javax.annotation.Nullable;
+import javax.xml.bind.DatatypeConverter;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import clocker.docker.entity.container.DockerContainer;
 import clocker.docker.entity.container.registry.DockerRegistry;
+import clocker.docker.entity.util.DockerApiClient;
 import clocker.docker.entity.util.DockerAttributes;
+import clocker.docker.entity.util.DockerImageCollector;
 import clocker.docker.entity.util.DockerUtils;
 import clocker.docker.entity.util.JcloudsHostnameCustomizer;
+import clocker.docker.entity.util.SshConnectionPool;
 import clocker.docker.location.DockerHostLocation;
 import clocker.docker.networking.entity.sdn.DockerSdnProvider;
 import clocker.docker.networking.entity.sdn.SdnAgent;
@@ -44,6 +53,8 @@ import clocker.docker.networking.entity.sdn.util.SdnUtils;
 import clocker.docker.networking.entity.sdn.weave.WeaveNetwork;
 
 import com.google.common.base.CharMatcher;
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
 import com.google.common.base.Functions;
 import com.google.common.base.Joiner;
 import com.google.common.base.Objects;
@@ -51,10 +62,14 @@ import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.base.Splitter;
+import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 
 import org.jclouds.compute.domain.OsFamily;
 import org.jclouds.compute.domain.TemplateBuilder;
@@ -71,6 +86,7 @@ import org.apache.brooklyn.api.location.LocationDefinition;
 import org.apache.brooklyn.api.location.LocationSpec;
 import org.apache.brooklyn.api.location.MachineProvisioningLocation;
 import org.apache.brooklyn.api.location.PortRange;
+import org.apache.brooklyn.api.mgmt.Task;
 import org.apache.brooklyn.api.policy.PolicySpec;
 import org.apache.brooklyn.camp.brooklyn.BrooklynCampConstants;
 import org.apache.brooklyn.config.ConfigKey;
@@ -109,9 +125,11 @@ import org.apache.brooklyn.policy.ha.ServiceReplacer;
 import org.apache.brooklyn.policy.ha.ServiceRestarter;
 import org.apache.brooklyn.util.collections.MutableList;
 import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.collections.MutableSet;
 import org.apache.brooklyn.util.collections.QuorumCheck.QuorumChecks;
 import org.apache.brooklyn.util.core.ResourceUtils;
 import org.apache.brooklyn.util.core.config.ConfigBag;
+import org.apache.brooklyn.util.core.internal.ssh.SshTool;
 import org.apache.brooklyn.util.core.task.DynamicTasks;
 import org.apache.brooklyn.util.core.task.Tasks;
 import org.apache.brooklyn.util.core.task.system.ProcessTaskStub.ScriptReturnType;
@@ -126,6 +144,7 @@ import org.apache.brooklyn.util.text.Identifiers;
 import org.apache.brooklyn.util.text.StringPredicates;
 import org.apache.brooklyn.util.text.Strings;
 import org.apache.brooklyn.util.time.Duration;
+import org.apache.brooklyn.util.time.Time;
 
 import brooklyn.networking.portforwarding.DockerPortForwarder;
 import brooklyn.networking.subnet.SubnetTier;
@@ -140,7 +159,34 @@ public class DockerHostImpl extends MachineEntityImpl implements DockerHost {
 
     private transient FunctionFeed serviceUpIsRunningFeed;
     private transient FunctionFeed scan;
+    private transient Task<?> eventWatcher;
+    private transient volatile boolean watching;
     private transient Object mutex = new Object[0];
+    private transient Object imageMutex = new Object[0];
+    private transient volatile ImageIndex imageIndex;
+    private transient AtomicLong imageGeneration = new AtomicLong();
+    private transient volatile SshConnectionPool sshPool;
+    private transient volatile DockerApiClient apiClient;
+    private transient volatile long apiUnavailableAt;
+    private transient DockerImageCollector imageCollector = new DockerImageCollector();
+
+    /** Maximum lifetime of a single {@code docker events} session before it is reconnected. */
+    private static final Duration EVENTS_SESSION = Duration.minutes(30);
+
+    /** The filesystem holding Docker images and containers. */
+    private static final String DOCKER_ROOT_DIR = "/var/lib/docker";
+
+    /** Maximum number of concurrent Docker API connections to the host. */
+    private static final int API_CONNECTIONS = 4;
+
+    /** How long an idle pooled SSH connection has to answer a health check. */
+    private static final Duration SSH_CHECK_TIMEOUT = Duration.TEN_SECONDS;
+
+    /** How long the CLI is used after the Docker API could not be reached, before trying the API again. */
+    private static final Duration API_RETRY_PERIOD = Duration.FIVE_MINUTES;
+
+    /** Docker commands that change the list of images on the host. */
+    private static final Set<String> IMAGE_COMMANDS = ImmutableSet.of("build", "pull", "tag", "commit", "rmi", "load", "import");
 
     @Override
     public Object getHostMutex() {
@@ -374,6 +420,7 @@ public class DockerHostImpl extends MachineEntityImpl implements DockerHost {
     public String buildImage(String dockerFile, @Nullable String entrypoint, @Nullable String contextArchive, String name, boolean useSsh, Map<String, Object> substitutions) {
         String imageId = getDriver().buildImage(dockerFile, Optional.fromNullable(entrypoint), Optional.fromNullable(contextArchive), name, useSsh, substitutions);
         LOG.debug("Successfully created image {} ({})", new Object[] { imageId, name });
+        if (imageId != null) recordImageUse(imageId);
         return imageId;
     }
 
@@ -381,6 +428,7 @@ public class DockerHostImpl extends MachineEntityImpl implements DockerHost {
     public String layerSshableImageOnFullyQualified(String fullyQualifiedName) {
         String imageId = getDriver().layerSshableImageOn(fullyQualifiedName);
         LOG.debug("Successfully added SSHable layer as {}", fullyQualifiedName);
+        if (imageId != null) recordImageUse(imageId);
         return imageId;
     }
 
@@ -388,6 +436,7 @@ public class DockerHostImpl extends MachineEntityImpl implements DockerHost {
     public String layerSshableImageOn(String baseImage, String tag) {
         String imageId = getDriver().layerSshableImageOn(baseImage+ ":" +tag);
         LOG.debug("Successfully added SSHable layer as {} from {}", imageId, baseImage);
+        if (imageId != null) recordImageUse(imageId);
         return imageId;
     }
 
@@ -402,11 +451,219 @@ public class DockerHostImpl extends MachineEntityImpl implements DockerHost {
     @Override
     public String runDockerCommandTimeout(String command, Duration timeout) {
         // FIXME Set DOCKER_OPTS values in command-line for when running on localhost
-        String stdout = execCommandTimeout(BashCommands.sudo(String.format("docker %s", command)), timeout);
+        String stdout;
+        if ("pull".equals(Strings.getFirstWord(command))) {
+            // Count a pull as a use, so the image is not removed before a container is created from it
+            recordImageUse(Iterables.getLast(Splitter.on(CharMatcher.WHITESPACE).omitEmptyStrings().split(command)));
+        }
+        try {
+            stdout = execPooledCommandTimeout(BashCommands.sudo(String.format("docker %s", command)), timeout);
+        } finally {
+            if (IMAGE_COMMANDS.contains(Strings.getFirstWord(command))) {
+                invalidateImages();
+            }
+        }
         LOG.debug("Successfully executed Docker {}: {}", Strings.getFirstWord(command), Strings.getFirstLine(stdout));
         return Strings.trim(stdout);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public int execPooledCommands(Map<String, ?> props, String summary, List<String> commands, Map<String, ?> env) {
+        SshConnectionPool pool = getConnectionPool();
+        if (pool == null) {
+            return getMachine().execCommands(props, summary, commands, env);
+        }
+        return execPooled(pool, props, summary, commands, env, null);
+    }
+
+    /**
+     * Runs commands on a connection borrowed from the pool, in a task so they show in
+     * the activity view and can be cancelled.
+     * <p>
+     * If the timeout passes, or the task is cancelled, the task is cancelled and the
+     * connection closed, so a hung command cannot block the caller or be reused.
+     *
+     * @param timeout the longest time to wait for the commands, or {@code null} for no limit
+     */
+    private int execPooled(SshConnectionPool pool, Map<String, ?> props, String summary, List<String> commands, Map<String, ?> env, @Nullable Duration timeout) {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        SshTool tool = pool.borrow(timeout);
+        boolean healthy = false;
+        try {
+            int result = runOnConnection(tool, props, summary, commands, env, timeout == null ? null : timeout.subtract(Duration.of(stopwatch)));
+            healthy = true;
+            return result;
+        } finally {
+            pool.release(tool, healthy, Duration.of(stopwatch));
+        }
+    }
+
+    private int runOnConnection(final SshTool tool, final Map<String, ?> props, String summary, final List<String> commands, final Map<String, ?> env, @Nullable Duration timeout) {
+        Task<Integer> task = Tasks.<Integer>builder()
+                .displayName(summary)
+                .body(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        return tool.execCommands(props, commands, env);
+                    }
+                })
+                .build();
+        try {
+            DynamicTasks.queueIfPossible(task)
+                    .executionContext(this)
+                    .orSubmitAsync();
+            return timeout == null ? task.get() : task.get(timeout);
+        } catch (TimeoutException te) {
+            task.cancel(true);
+            throw new IllegalStateException(String.format("Timed out after %s running: %s", timeout, summary));
+        } catch (Exception e) {
+            task.cancel(true);
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    /**
+     * Runs a command over a pooled SSH connection and returns its output, failing
+     * on a non-zero exit status as {@link #execCommandTimeout(String, Duration)} does.
+     */
+    protected String execPooledCommandTimeout(String command, Duration timeout) {
+        SshConnectionPool pool = getConnectionPool();
+        if (pool == null) {
+            return execCommandTimeout(command, timeout);
+        }
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        Map<String, Object> props = MutableMap.<String, Object>of(
+                SshTool.PROP_OUT_STREAM.getName(), stdout,
+                SshTool.PROP_ERR_STREAM.getName(), stderr);
+        Map<String, String> env = ((AbstractSoftwareProcessSshDriver) getDriver()).getShellEnvironment();
+        int result = execPooled(pool, props, command, ImmutableList.of(command), env, timeout);
+        if (result != 0) {
+            LOG.warn("Command failed, return code {}: {}", result, new String(stderr.toByteArray(), Charsets.UTF_8));
+            throw new IllegalStateException(String.format("Command failed with return code %d: %s", result, command));
+        }
+        return new String(stdout.toByteArray(), Charsets.UTF_8);
+    }
+
+    /**
+     * The pool of SSH connections to the host, or {@code null} if pooling is
+     * disabled or the host has no machine yet.
+     */
+    protected SshConnectionPool getConnectionPool() {
+        SshConnectionPool pool = sshPool;
+        if (pool == null) {
+            Integer size = config().get(SSH_POOL_SIZE);
+            if (size == null || size <= 0) return null;
+            int max = Math.max(size, Optional.fromNullable(config().get(SSH_POOL_MAX_CONNECTIONS)).or(size));
+            synchronized (mutex) {
+                if (sshPool == null) {
+                    Maybe<SshMachineLocation> machine = Machines.findUniqueMachineLocation(getLocations(), SshMachineLocation.class);
+                    if (machine.isAbsentOrNull()) return null;
+                    sshPool = new SshConnectionPool(machine.get(), size, max);
+                    LOG.debug("Created SSH connection pool for {}: {}", this, sshPool);
+                }
+                pool = sshPool;
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Run a trivial command on each idle connection, closing any that fail or do
+     * not answer in time, as a half-open connection still reports it is connected.
+     */
+    private void checkConnections(SshConnectionPool pool) {
+        for (SshTool tool : pool.takeIdle()) {
+            boolean healthy = false;
+            try {
+                healthy = runOnConnection(tool, ImmutableMap.<String, Object>of(), "Check SSH connection",
+                        ImmutableList.of("true"), ImmutableMap.<String, Object>of(), SSH_CHECK_TIMEOUT) == 0;
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                LOG.debug("Removing broken SSH connection to {}: {}", this, e.getMessage());
+            } finally {
+                pool.release(tool, healthy);
+            }
+        }
+    }
+
+    private void closeConnectionPool() {
+        synchronized (mutex) {
+            if (sshPool != null) {
+                sshPool.close();
+                sshPool = null;
+            }
+        }
+    }
+
+    /** Discard broken idle connections and publish the pool metrics. */
+    private Long updateConnectionPoolMetrics() {
+        SshConnectionPool pool = sshPool;
+        if (pool == null) return null;
+        checkConnections(pool);
+        sensors().set(SSH_CONNECTIONS, pool.getOpenConnections());
+        sensors().set(SSH_CONNECTIONS_CREATED, pool.getCreatedConnections());
+        sensors().set(SSH_CONNECTION_REUSE, pool.getReuseRatio());
+        sensors().set(SSH_COMMAND_LATENCY, pool.getMeanLatency());
+        return pool.getCommandCount();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Optional<DockerApiClient> getDockerApiClient() {
+        DockerApiClient client = apiClient;
+        if (client == null) {
+            if (!Boolean.TRUE.equals(config().get(DOCKER_API_ENABLED))) return Optional.absent();
+            long unavailableAt = apiUnavailableAt;
+            if (unavailableAt > 0L && System.currentTimeMillis() - unavailableAt < API_RETRY_PERIOD.toMilliseconds()) return Optional.absent();
+            JcloudsLocation jcloudsLocation = getJcloudsLocation();
+            if (jcloudsLocation == null || !Boolean.TRUE.equals(sensors().get(SERVICE_UP))) return Optional.absent();
+            synchronized (mutex) {
+                if (apiClient == null) {
+                    try {
+                        apiClient = DockerApiClient.newClient(jcloudsLocation.getEndpoint(),
+                                config().get(DockerInfrastructure.DOCKER_CA_CERTIFICATE_PATH),
+                                jcloudsLocation.config().get(JcloudsLocationConfig.ACCESS_IDENTITY),
+                                jcloudsLocation.config().get(JcloudsLocationConfig.ACCESS_CREDENTIAL),
+                                API_CONNECTIONS, Duration.ONE_MINUTE);
+                        apiUnavailableAt = 0L;
+                        LOG.debug("Created Docker API client for {}: {}", this, apiClient);
+                    } catch (Exception e) {
+                        Exceptions.propagateIfFatal(e);
+                        LOG.warn("Cannot create Docker API client for {}, using SSH: {}", this, e.getMessage());
+                        apiUnavailableAt = System.currentTimeMillis();
+                        return Optional.absent();
+                    }
+                }
+                client = apiClient;
+            }
+        }
+        // Use the CLI for a while if the daemon could not be reached, then try the API again
+        if (client.isUnreachableWithin(API_RETRY_PERIOD)) return Optional.absent();
+        return Optional.of(client);
+    }
+
+    private void closeApiClient() {
+        synchronized (mutex) {
+            if (apiClient != null) {
+                apiClient.close();
+                apiClient = null;
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void tagImage(String imageId, String repository, String tag) {
+        Optional<DockerApiClient> api = getDockerApiClient();
+        if (api.isPresent() && api.get().tagImage(imageId, repository, tag)) {
+            invalidateImages();
+        } else {
+            runDockerCommand(String.format("tag -f %s %s:%s", imageId, repository, tag));
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     public String deployArchive(String url) {
@@ -475,8 +732,93 @@ public class DockerHostImpl extends MachineEntityImpl implements DockerHost {
 
     @Override
     public Optional<String> getImageNamed(String name, String tag) {
-        String imageList = runDockerCommand("images --no-trunc " + name);
-        return Optional.fromNullable(Strings.getFirstWordAfter(imageList, tag));
+        ImageIndex images = imageIndex;
+        if (images == null) {
+            images = refreshImageIndex();
+        }
+        return Optional.fromNullable(images.byName.get(name + ":" + tag));
+    }
+
+    /**
+     * Marks the cached image index as stale, so the next lookup reloads it from the host.
+     */
+    public void invalidateImages() {
+        imageGeneration.incrementAndGet();
+        imageIndex = null;
+    }
+
+    /**
+     * Reloads the index of image IDs on the host, keyed by {@code repository:tag}.
+     */
+    public Map<String, String> refreshImages() {
+        return refreshImageIndex().byName;
+    }
+
+    /**
+     * Reloads the index of the images on the host.
+     */
+    private ImageIndex refreshImageIndex() {
+        synchronized (imageMutex) {
+            long generation = imageGeneration.get();
+            ImageIndex images = imageIndex;
+            if (images != null) return images;
+
+            Map<String, Set<String>> index = MutableMap.of();
+            Optional<DockerApiClient> api = getDockerApiClient();
+            Optional<JsonArray> list = api.isPresent() ? api.get().listImages() : Optional.<JsonArray>absent();
+            if (list.isPresent()) {
+                for (JsonElement element : list.get()) {
+                    JsonObject image = element.getAsJsonObject();
+                    Set<String> tags = MutableSet.of();
+                    index.put(image.get("Id").getAsString(), tags);
+                    if (!image.has("RepoTags") || image.get("RepoTags").isJsonNull()) continue;
+                    for (JsonElement repoTag : image.getAsJsonArray("RepoTags")) {
+                        if ("<none>:<none>".equals(repoTag.getAsString())) continue;
+                        tags.add(repoTag.getAsString());
+                    }
+                }
+            } else {
+                String output = runDockerCommand("images --no-trunc");
+                List<String> lines = Splitter.on(CharMatcher.anyOf("\r\n")).omitEmptyStrings().splitToList(output);
+                for (String line : Iterables.skip(lines, 1)) {
+                    List<String> fields = Splitter.on(CharMatcher.WHITESPACE).omitEmptyStrings().splitToList(line);
+                    if (fields.size() < 3) continue;
+                    if (!index.containsKey(fields.get(2))) index.put(fields.get(2), MutableSet.<String>of());
+                    if ("<none>".equals(fields.get(0)) || "<none>".equals(fields.get(1))) continue;
+                    index.get(fields.get(2)).add(fields.get(0) + ":" + fields.get(1));
+                }
+            }
+            images = new ImageIndex(index);
+
+            // Only publish the index if no image changes were made while it was loading
+            if (imageGeneration.get() == generation) {
+                imageIndex = images;
+            }
+            sensors().set(DOCKER_IMAGE_COUNT, images.byId.size());
+            return images;
+        }
+    }
+
+    /**
+     * An immutable index of the images on a host, giving the ID for each {@code repository:tag}
+     * and the {@code repository:tag} names of each image ID, which are empty for untagged images.
+     */
+    private static class ImageIndex {
+        private final Map<String, String> byName;
+        private final Map<String, Set<String>> byId;
+
+        private ImageIndex(Map<String, Set<String>> index) {
+            Map<String, String> names = MutableMap.of();
+            ImmutableMap.Builder<String, Set<String>> ids = ImmutableMap.builder();
+            for (Map.Entry<String, Set<String>> entry : index.entrySet()) {
+                for (String tag : entry.getValue()) {
+                    names.put(tag, entry.getKey());
+                }
+                ids.put(entry.getKey(), ImmutableSet.copyOf(entry.getValue()));
+            }
+            byName = ImmutableMap.copyOf(names);
+            byId = ids.build();
+        }
     }
 
     /**
@@ -752,6 +1094,7 @@ public class DockerHostImpl extends MachineEntityImpl implements DockerHost {
         sensors().set(DOCKER_IMAGE_ID, imageId);
 
         scan = scanner();
+        startEventWatcher();
 
         // If a registry URL is configured with credentials then log in
         String registryUrl = config().get(DockerInfrastructure.DOCKER_IMAGE_REGISTRY_URL);
@@ -764,10 +1107,60 @@ public class DockerHostImpl extends MachineEntityImpl implements DockerHost {
                 runDockerCommand(String.format("login  -e \"fake@example.org\" -u %s -p %s %s", username, password, registryUrl));
             }
         }
+
+        prePullImages();
+    }
+
+    /**
+     * Pulls the most frequently used images in the infrastructure in parallel, so
+     * the first containers placed on the host do not wait for them.
+     * <p>
+     * The Docker location does not place containers on a starting host
+     * until {@link #PRE_PULLED_IMAGES} is set.
+     */
+    private void prePullImages() {
+        Integer count = config().get(PRE_PULL_IMAGES);
+        if (count == null || count <= 0) return;
+        List<String> images = getInfrastructure().getFrequentImages(count);
+        if (images.isEmpty()) {
+            sensors().set(PRE_PULLED_IMAGES, 0);
+            return;
+        }
+
+        final AtomicInteger pulled = new AtomicInteger();
+        List<Task<?>> pulls = MutableList.of();
+        for (final String image : images) {
+            pulls.add(Tasks.builder()
+                    .displayName("Pull " + image)
+                    .body(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                runDockerCommandTimeout(String.format("pull %s", image), Duration.minutes(20));
+                                pulled.incrementAndGet();
+                            } catch (Exception e) {
+                                Exceptions.propagateIfFatal(e);
+                                LOG.warn("Error pulling image {} on {}: {}", new Object[] { image, DockerHostImpl.this, e.getMessage() });
+                            }
+                        }
+                    })
+                    .build());
+        }
+        LOG.info("Pulling {} frequently used images on {}: {}", new Object[] { images.size(), this, images });
+        Tasks.setBlockingDetails("Pulling frequently used images");
+        try {
+            DynamicTasks.queueIfPossible(Tasks.parallel("Pull frequently used images", pulls))
+                    .orSubmitAsync(this)
+                    .andWaitForSuccess();
+        } finally {
+            Tasks.resetBlockingDetails();
+            sensors().set(PRE_PULLED_IMAGES, pulled.get());
+        }
     }
 
     private FunctionFeed scanner() {
-        Duration interval = config().get(SCAN_INTERVAL);
+        boolean events = Boolean.TRUE.equals(config().get(WATCH_EVENTS));
+        Duration interval = events ? config().get(RECONCILE_INTERVAL) : config().get(SCAN_INTERVAL);
         return FunctionFeed.builder()
                 .entity(this)
                 .poll(new FunctionPollConfig<Object, Void>(SCAN)
@@ -781,22 +1174,284 @@ public class DockerHostImpl extends MachineEntityImpl implements DockerHost {
                                 }
                             })
                         .onFailureOrException(Functions.<Void>constant(null)))
+                .poll(new FunctionPollConfig<Object, Void>(STATUS)
+                        .period(events ? interval : config().get(STATUS_INTERVAL))
+                        .description("Container Status")
+                        .callable(new Callable<Void>() {
+                                @Override
+                                public Void call() throws Exception {
+                                    updateContainerStatus();
+                                    return null;
+                                }
+                            })
+                        .onFailureOrException(Functions.<Void>constant(null)))
+                .poll(new FunctionPollConfig<Long, Long>(SSH_COMMANDS)
+                        .period(Duration.THIRTY_SECONDS)
+                        .description("SSH Connection Pool")
+                        .callable(new Callable<Long>() {
+                                @Override
+                                public Long call() throws Exception {
+                                    return updateConnectionPoolMetrics();
+                                }
+                            })
+                        .onFailureOrException(Functions.<Long>constant(null)))
+                .poll(new FunctionPollConfig<Integer, Integer>(DOCKER_IMAGE_COUNT)
+                        .period(config().get(IMAGE_SCAN_INTERVAL))
+                        .description("Scan Images")
+                        .callable(new Callable<Integer>() {
+                                @Override
+                                public Integer call() throws Exception {
+                                    invalidateImages();
+                                    return refreshImageIndex().byId.size();
+                                }
+                            })
+                        .onFailureOrException(new Function<Object, Integer>() {
+                                @Override
+                                public Integer apply(Object input) {
+                                    // Keep the last count until a scan succeeds
+                                    return sensors().get(DOCKER_IMAGE_COUNT);
+                                }
+                            }))
+                .poll(new FunctionPollConfig<Double, Double>(DOCKER_DISK_USAGE)
+                        .period(config().get(IMAGE_GC_INTERVAL))
+                        .description("Image Garbage Collection")
+                        .callable(new Callable<Double>() {
+                                @Override
+                                public Double call() throws Exception {
+                                    return collectImages();
+                                }
+                            })
+                        .onFailureOrException(Functions.<Double>constant(null)))
                 .build();
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void recordImageUse(String image) {
+        imageCollector.touch(image);
+    }
+
+    /**
+     * Removes the least recently used images that are not used by any container
+     * and are not pinned, once the Docker disk usage passes the high watermark.
+     * Removal is disabled unless the high watermark is set.
+     *
+     * @return the fraction of the Docker disk in use
+     * @see #IMAGE_GC_HIGH_WATERMARK
+     */
+    public Double collectImages() {
+        long[] disk = getDiskUsage();
+        long used = disk[1];
+        double usage = (double) used / (double) disk[0];
+        // Save the usage, so the removal order survives rebind
+        Map<String, Long> lastUsed = imageCollector.getUsage();
+        if (!lastUsed.equals(sensors().get(IMAGE_LAST_USED))) {
+            sensors().set(IMAGE_LAST_USED, lastUsed);
+        }
+
+        Double highWatermark = config().get(IMAGE_GC_HIGH_WATERMARK);
+        if (highWatermark == null || highWatermark >= 1d || usage < highWatermark) return usage;
+
+        long target = used - (long) (config().get(IMAGE_GC_LOW_WATERMARK) * disk[0]);
+        Set<String> pinned = MutableSet.copyOf(config().get(PINNED_IMAGES));
+        String baseImageId = sensors().get(DOCKER_IMAGE_ID);
+        if (baseImageId != null) pinned.add(baseImageId);
+        long cutoff = System.currentTimeMillis() - config().get(IMAGE_GC_GRACE_PERIOD).toMilliseconds();
+        List<DockerImageCollector.Image> victims = imageCollector.select(listImageDetails(), listImagesInUse(), pinned, target, cutoff);
+        LOG.info("Docker disk usage on {} is {}%, removing {} unused images", new Object[] { this, (int) (usage * 100), victims.size() });
+
+        long evicted = 0L;
+        for (DockerImageCollector.Image image : victims) {
+            // Remove each tag, as an image with several tags cannot be removed by its ID
+            boolean removed = true;
+            for (String reference : image.getTags().isEmpty() ? ImmutableSet.of(image.getId()) : image.getTags()) {
+                removed &= removeImage(reference);
+            }
+            if (removed) {
+                imageCollector.forget(image);
+                evicted++;
+            }
+        }
+        invalidateImages();
+
+        disk = getDiskUsage();
+        long reclaimed = Math.max(0L, used - disk[1]);
+        sensors().set(IMAGES_EVICTED, Optional.fromNullable(sensors().get(IMAGES_EVICTED)).or(0L) + evicted);
+        sensors().set(IMAGE_BYTES_RECLAIMED, Optional.fromNullable(sensors().get(IMAGE_BYTES_RECLAIMED)).or(0L) + reclaimed);
+        LOG.info("Removed {} images on {}, reclaiming {} bytes", new Object[] { evicted, this, reclaimed });
+        return (double) disk[1] / (double) disk[0];
+    }
+
+    private boolean removeImage(String reference) {
+        try {
+            Optional<DockerApiClient> api = getDockerApiClient();
+            if (!api.isPresent() || !api.get().removeImage(reference)) {
+                runDockerCommand(String.format("rmi %s", reference));
+            }
+            return true;
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            LOG.debug("Cannot remove image {} on {}: {}", new Object[] { reference, this, e.getMessage() });
+            return false;
+        }
+    }
+
+    /** The total and used bytes on the Docker filesystem. */
+    private long[] getDiskUsage() {
+        String output = execPooledCommandTimeout(String.format("df -P -B1 %s | tail -n 1", DOCKER_ROOT_DIR), Duration.ONE_MINUTE);
+        List<String> fields = Splitter.on(CharMatcher.WHITESPACE).omitEmptyStrings().splitToList(Strings.trim(output));
+        return new long[] { Long.parseLong(fields.get(1)), Long.parseLong(fields.get(2)) };
+    }
+
+    private List<DockerImageCollector.Image> listImageDetails() {
+        List<DockerImageCollector.Image> images = MutableList.of();
+        Optional<DockerApiClient> api = getDockerApiClient();
+        Optional<JsonArray> list = api.isPresent() ? api.get().listImages() : Optional.<JsonArray>absent();
+        if (list.isPresent()) {
+            for (JsonElement element : list.get()) {
+                JsonObject image = element.getAsJsonObject();
+                List<String> tags = MutableList.of();
+                if (image.has("RepoTags") && !image.get("RepoTags").isJsonNull()) {
+                    for (JsonElement tag : image.getAsJsonArray("RepoTags")) {
+                        if (!"<none>:<none>".equals(tag.getAsString())) tags.add(tag.getAsString());
+                    }
+                }
+                images.add(new DockerImageCollector.Image(image.get("Id").getAsString(), tags,
+                        image.get("Size").getAsLong(), image.get("Created").getAsLong() * 1000L));
+            }
+        } else {
+            ImageIndex index = refreshImageIndex();
+            String ids = runDockerCommand("images -q --no-trunc");
+            if (Strings.isBlank(ids)) return images;
+            String output = runDockerCommand(String.format("inspect --format \"{{.Id}} {{.Size}} {{.Created}}\" %s",
+                    Joiner.on(' ').join(ImmutableSet.copyOf(Splitter.on(CharMatcher.WHITESPACE).omitEmptyStrings().split(ids)))));
+            for (String line : Splitter.on(CharMatcher.anyOf("\r\n")).omitEmptyStrings().trimResults().split(output)) {
+                List<String> fields = Splitter.on(' ').omitEmptyStrings().splitToList(line);
+                Set<String> tags = index.byId.containsKey(fields.get(0)) ? index.byId.get(fields.get(0)) : ImmutableSet.<String>of();
+                images.add(new DockerImageCollector.Image(fields.get(0), tags, Long.parseLong(fields.get(1)), parseCreated(fields)));
+            }
+        }
+        return images;
+    }
+
+    /**
+     * The creation time from {@code docker inspect}, or now if it cannot be parsed,
+     * so the grace period keeps the image rather than it being removed first.
+     */
+    private long parseCreated(List<String> fields) {
+        if (fields.size() > 2) {
+            try {
+                return DatatypeConverter.parseDateTime(fields.get(2)).getTimeInMillis();
+            } catch (IllegalArgumentException iae) {
+                LOG.debug("Cannot parse image creation time {} on {}", fields.get(2), this);
+            }
+        }
+        return System.currentTimeMillis();
+    }
+
+    /** IDs of the images used by all containers on the host, including stopped containers. */
+    private Set<String> listImagesInUse() {
+        Set<String> images = MutableSet.of();
+        Optional<DockerApiClient> api = getDockerApiClient();
+        Optional<JsonArray> list = api.isPresent() ? api.get().listContainers(true) : Optional.<JsonArray>absent();
+        if (list.isPresent()) {
+            for (JsonElement element : list.get()) {
+                images.add(element.getAsJsonObject().get("ImageID").getAsString());
+            }
+        } else {
+            String ids = runDockerCommand("ps -a -q --no-trunc");
+            if (Strings.isBlank(ids)) return images;
+            String output = runDockerCommand(String.format("inspect --format \"{{.Image}}\" %s",
+                    Joiner.on(' ').join(Splitter.on(CharMatcher.WHITESPACE).omitEmptyStrings().split(ids))));
+            images.addAll(Splitter.on(CharMatcher.WHITESPACE).omitEmptyStrings().splitToList(output));
+        }
+        return images;
+    }
+
+    /**
+     * Lists every container on the host with a single Docker API request, or inspects
+     * every known container with a single {@code docker inspect} command, and sets the
+     * status sensors on each {@link DockerContainer}.
+     */
+    public void updateContainerStatus() {
+        Map<String, Entity> containers = MutableMap.of();
+        for (Entity member : getDockerContainerList()) {
+            String id = member.sensors().get(DockerContainer.DOCKER_CONTAINER_ID);
+            if (id != null) containers.put(id, member);
+        }
+        if (containers.isEmpty()) return;
+
+        Map<String, List<String>> status = MutableMap.of();
+        boolean success = false;
+        Optional<DockerApiClient> api = getDockerApiClient();
+        Optional<JsonArray> list = api.isPresent() ? api.get().listContainers(true) : Optional.<JsonArray>absent();
+        if (list.isPresent()) {
+            for (JsonElement element : list.get()) {
+                JsonObject container = element.getAsJsonObject();
+                String id = container.get("Id").getAsString();
+                String name = container.getAsJsonArray("Names").size() > 0 ? container.getAsJsonArray("Names").get(0).getAsString() : "";
+                // The State field is only present from API version 1.23, so parse the Status text
+                String state = container.get("Status").getAsString();
+                boolean running = state.startsWith("Up");
+                boolean paused = running && state.contains("(Paused)");
+                status.put(id, ImmutableList.of(id, name, Boolean.toString(running), Boolean.toString(paused)));
+            }
+            success = true;
+        } else {
+            try {
+                // Missing containers cause a non-zero exit, but the others are still reported
+                String command = String.format("docker inspect --format '{{.Id}} {{.Name}} {{.State.Running}} {{.State.Paused}}' %s",
+                        Joiner.on(' ').join(containers.keySet()));
+                String output = execPooledCommandTimeout(BashCommands.ok(BashCommands.sudo(command)), Duration.ONE_MINUTE);
+                for (String line : Splitter.on(CharMatcher.anyOf("\r\n")).omitEmptyStrings().trimResults().split(output)) {
+                    List<String> fields = Splitter.on(' ').omitEmptyStrings().splitToList(line);
+                    if (fields.size() == 4) {
+                        status.put(fields.get(0), fields);
+                    }
+                }
+                success = true;
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                LOG.debug("Error checking container status on {}: {}", this, e.getMessage());
+            }
+        }
+
+        for (Map.Entry<String, Entity> entry : containers.entrySet()) {
+            Entity container = entry.getValue();
+            List<String> fields = status.get(entry.getKey());
+            if (fields != null) {
+                container.sensors().set(DockerContainer.DOCKER_CONTAINER_NAME, Strings.removeFromStart(fields.get(1), "/"));
+                container.sensors().set(SERVICE_UP, Boolean.TRUE);
+                container.sensors().set(DockerContainer.CONTAINER_RUNNING, Boolean.parseBoolean(fields.get(2)));
+                container.sensors().set(DockerContainer.CONTAINER_PAUSED, Boolean.parseBoolean(fields.get(3)));
+            } else {
+                if (success) {
+                    container.sensors().set(DockerContainer.DOCKER_CONTAINER_NAME, "");
+                }
+                container.sensors().set(SERVICE_UP, Boolean.FALSE);
+                container.sensors().set(DockerContainer.CONTAINER_RUNNING, Boolean.FALSE);
+                container.sensors().set(DockerContainer.CONTAINER_PAUSED, Boolean.FALSE);
+            }
+        }
+    }
+
     @Override
     public void rebind() {
         super.rebind();
 
+        imageCollector.restore(sensors().get(IMAGE_LAST_USED));
+
         // Restart the container scanner
         if (scan == null) {
             scan = scanner();
         }
+        startEventWatcher();
     }
 
     @Override
     public void preStop() {
         if (scan != null && scan.isActivated()) scan.stop();
+        stopEventWatcher();
 
         super.preStop();
 
@@ -814,39 +1469,18 @@ public class DockerHostImpl extends MachineEntityImpl implements DockerHost {
 
         EtcdNode etcd = sensors().get(ETCD_NODE);
         DockerUtils.stop(getInfrastructure(), etcd, Duration.THIRTY_SECONDS);
+
+        closeConnectionPool();
+        closeApiClient();
     }
 
     public void scanContainers() {
         getDynamicLocation().getLock().lock();
         try {
-            String output = runDockerCommand("ps");
-            List<String> ps = Splitter.on(CharMatcher.anyOf("\r\n")).omitEmptyStrings().splitToList(output);
-            if (ps.size() > 1) {
-                for (int i = 1; i < ps.size(); i++) {
-                    String line = ps.get(i);
-                    String id = Strings.getFirstWord(line);
-                    Optional<Entity> container = Iterables.tryFind(getDockerContainerCluster().getMembers(),
-                            Predicates.compose(StringPredicates.startsWith(id), EntityFunctions.attribute(DockerContainer.DOCKER_CONTAINER_ID)));
-                    if (container.isPresent()) continue;
-
-                    // Build an unmanged DockerContainer without a locations, as it may not be SSHable
-                    String containerId = Strings.getFirstWord(runDockerCommand("inspect --format {{.Id}} " + id));
-                    String imageId = Strings.getFirstWord(runDockerCommand("inspect --format {{.Image}} " + id));
-                    String imageName = Strings.getFirstWord(runDockerCommand("inspect --format {{.Config.Image}} " + id));
-                    EntitySpec<DockerContainer> containerSpec = EntitySpec.create(config().get(DOCKER_CONTAINER_SPEC));
-                    containerSpec.configure(SoftwareProcess.ENTITY_STARTED, Boolean.TRUE)
-                            .configure(DockerContainer.DOCKER_HOST, this)
-                            .configure(DockerContainer.DOCKER_INFRASTRUCTURE, getInfrastructure())
-                            .configure(DockerContainer.DOCKER_IMAGE_ID, imageId)
-                            .configure(DockerContainer.DOCKER_IMAGE_NAME, imageName)
-                            .configure(DockerContainer.MANAGED, Boolean.FALSE)
-                            .configure(DockerContainer.LOCATION_FLAGS, MutableMap.<String, Object>of("container", getMachine()));
-
-                    // Create and start the container
-                    DockerContainer added = getDockerContainerCluster().addMemberChild(containerSpec);
-                    added.sensors().set(DockerContainer.DOCKER_CONTAINER_ID, containerId);
-                    added.start(ImmutableList.of(getDynamicLocation().getMachine()));
-                }
+            List<String> ps = listRunningContainers();
+            for (String id : ps) {
+                if (findContainer(id).isPresent()) continue;
+                addUnmanagedContainer(id);
             }
             for (Entity member : ImmutableList.copyOf(getDockerContainerCluster().getMembers())) {
                 final String id = member.sensors().get(DockerContainer.DOCKER_CONTAINER_ID);
@@ -854,27 +1488,225 @@ public class DockerHostImpl extends MachineEntityImpl implements DockerHost {
                     Optional<String> found = Iterables.tryFind(ps, new Predicate<String>() {
                         @Override
                         public boolean apply(String input) {
-                            String firstWord = Strings.getFirstWord(input);
-                            return id.startsWith(firstWord);
+                            return id.startsWith(input);
                         }
                     });
                     if (found.isPresent()) continue;
                 }
+                removeMissingContainer(member);
+            }
+        } finally {
+            getDynamicLocation().getLock().unlock();
+        }
+    }
 
-                // Stop and then remove the container as it is no longer running unless ON_FIRE
-                Lifecycle state = member.sensors().get(SERVICE_STATE_ACTUAL);
-                if (Lifecycle.ON_FIRE.equals(state) || Lifecycle.STARTING.equals(state)) {
-                    continue;
-                } else if (Lifecycle.STOPPING.equals(state) || Lifecycle.STOPPED.equals(state)) {
-                    getDockerContainerCluster().removeMember(member);
-                    getDockerContainerCluster().removeChild(member);
-                    Entities.unmanage(member);
+    /** The full or short IDs of the running containers on the host. */
+    private List<String> listRunningContainers() {
+        List<String> ids = MutableList.of();
+        Optional<DockerApiClient> api = getDockerApiClient();
+        Optional<JsonArray> list = api.isPresent() ? api.get().listContainers(false) : Optional.<JsonArray>absent();
+        if (list.isPresent()) {
+            for (JsonElement element : list.get()) {
+                ids.add(element.getAsJsonObject().get("Id").getAsString());
+            }
+        } else {
+            String output = runDockerCommand("ps");
+            List<String> ps = Splitter.on(CharMatcher.anyOf("\r\n")).omitEmptyStrings().splitToList(output);
+            for (String line : Iterables.skip(ps, 1)) {
+                ids.add(Strings.getFirstWord(line));
+            }
+        }
+        return ids;
+    }
+
+    private Optional<Entity> findContainer(String id) {
+        return Iterables.tryFind(getDockerContainerCluster().getMembers(),
+                Predicates.compose(StringPredicates.startsWith(id), EntityFunctions.attribute(DockerContainer.DOCKER_CONTAINER_ID)));
+    }
+
+    /** Must be called holding the location write lock. */
+    private void addUnmanagedContainer(String id) {
+        // Build an unmanged DockerContainer without a locations, as it may not be SSHable
+        String containerId, imageId, imageName;
+        Optional<DockerApiClient> api = getDockerApiClient();
+        Optional<JsonObject> inspect = api.isPresent() ? api.get().inspectContainer(id) : Optional.<JsonObject>absent();
+        if (inspect.isPresent()) {
+            containerId = inspect.get().get("Id").getAsString();
+            imageId = inspect.get().get("Image").getAsString();
+            imageName = inspect.get().getAsJsonObject("Config").get("Image").getAsString();
+        } else {
+            String output = runDockerCommand("inspect --format \"{{.Id}} {{.Image}} {{.Config.Image}}\" " + id);
+            List<String> fields = Splitter.on(CharMatcher.WHITESPACE).omitEmptyStrings().splitToList(output);
+            containerId = fields.get(0);
+            imageId = fields.get(1);
+            imageName = fields.get(2);
+        }
+        EntitySpec<DockerContainer> containerSpec = EntitySpec.create(config().get(DOCKER_CONTAINER_SPEC));
+        containerSpec.configure(SoftwareProcess.ENTITY_STARTED, Boolean.TRUE)
+                .configure(DockerContainer.DOCKER_HOST, this)
+                .configure(DockerContainer.DOCKER_INFRASTRUCTURE, getInfrastructure())
+                .configure(DockerContainer.DOCKER_IMAGE_ID, imageId)
+                .configure(DockerContainer.DOCKER_IMAGE_NAME, imageName)
+                .configure(DockerContainer.MANAGED, Boolean.FALSE)
+                .configure(DockerContainer.LOCATION_FLAGS, MutableMap.<String, Object>of("container", getMachine()));
+
+        // Create and start the container
+        DockerContainer added = getDockerContainerCluster().addMemberChild(containerSpec);
+        added.sensors().set(DockerContainer.DOCKER_CONTAINER_ID, containerId);
+        added.start(ImmutableList.of(getDynamicLocation().getMachine()));
+    }
+
+    /** Must be called holding the location write lock. */
+    private void removeMissingContainer(Entity member) {
+        // Stop and then remove the container as it is no longer running unless ON_FIRE
+        Lifecycle state = member.sensors().get(SERVICE_STATE_ACTUAL);
+        if (Lifecycle.ON_FIRE.equals(state) || Lifecycle.STARTING.equals(state)) {
+            return;
+        } else if (Lifecycle.STOPPING.equals(state) || Lifecycle.STOPPED.equals(state)) {
+            getDockerContainerCluster().removeMember(member);
+            getDockerContainerCluster().removeChild(member);
+            Entities.unmanage(member);
+        } else {
+            ServiceStateLogic.setExpectedState(member, Lifecycle.STOPPING);
+        }
+    }
+
+    private void startEventWatcher() {
+        if (!Boolean.TRUE.equals(config().get(WATCH_EVENTS)) || eventWatcher != null) return;
+
+        watching = true;
+        eventWatcher = getExecutionContext().submit(MutableMap.of("displayName", "Watch Docker events"), new Runnable() {
+                @Override
+                public void run() {
+                    watchEvents();
+                }
+            });
+    }
+
+    private void stopEventWatcher() {
+        watching = false;
+        if (eventWatcher != null) {
+            eventWatcher.cancel(true);
+            eventWatcher = null;
+        }
+        sensors().set(EVENTS_WATCHING, Boolean.FALSE);
+    }
+
+    /**
+     * Follows the {@code docker events} stream on the host until the watcher is stopped.
+     * <p>
+     * Each session is limited to {@link #EVENTS_SESSION} and is then reconnected. Events
+     * missed while disconnected are caught by a full scan before reconnecting.
+     */
+    private void watchEvents() {
+        String command = BashCommands.sudo(String.format(
+                "timeout %d docker events --since $(date +%%s) --filter type=container --filter type=image",
+                EVENTS_SESSION.toSeconds()));
+        boolean reconnect = false;
+        while (watching) {
+            try {
+                if (reconnect) {
+                    scanContainers();
+                    updateContainerStatus();
+                }
+                sensors().set(EVENTS_WATCHING, Boolean.TRUE);
+                getMachine().execCommands(MutableMap.of(
+                                "out", new DockerEventStream(),
+                                "env", ((AbstractSoftwareProcessSshDriver) getDriver()).getShellEnvironment()),
+                        "docker events", ImmutableList.of(command));
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                LOG.debug("Error watching Docker events on {}: {}", this, e.getMessage());
+            }
+            sensors().set(EVENTS_WATCHING, Boolean.FALSE);
+            reconnect = true;
+            if (watching) Time.sleep(Duration.FIVE_SECONDS);
+        }
+    }
+
+    /**
+     * Updates container membership and state from a single line of {@code docker events}
+     * output, formatted as {@code <time> <type> <action> <id> (<attributes>)}.
+     */
+    protected void onDockerEvent(String event) {
+        List<String> fields = Splitter.on(' ').omitEmptyStrings().limit(5).splitToList(event);
+        if (fields.size() < 4) return;
+        String type = fields.get(1);
+        String action = fields.get(2);
+        String id = fields.get(3);
+        LOG.trace("Docker {} event on {}: {} {}", new Object[] { type, this, action, id });
+
+        if ("image".equals(type)) {
+            invalidateImages();
+        } else if ("container".equals(type)) {
+            Optional<Entity> container = findContainer(id);
+            if ("start".equals(action) || "unpause".equals(action)) {
+                if (container.isPresent()) {
+                    container.get().sensors().set(SERVICE_UP, Boolean.TRUE);
+                    container.get().sensors().set(DockerContainer.CONTAINER_RUNNING, Boolean.TRUE);
+                    container.get().sensors().set(DockerContainer.CONTAINER_PAUSED, Boolean.FALSE);
                 } else {
-                    ServiceStateLogic.setExpectedState(member, Lifecycle.STOPPING);
+                    // Containers being created by Clocker hold the read lock until they are registered,
+                    // so rather than block the event stream leave the container for the reconciliation scan
+                    Lock lock = getDynamicLocation().getLock();
+                    if (lock.tryLock()) {
+                        try {
+                            if (!findContainer(id).isPresent()) {
+                                addUnmanagedContainer(id);
+                            }
+                        } finally {
+                            lock.unlock();
+                        }
+                    } else {
+                        LOG.debug("Containers being created on {}, leaving {} for the scan", this, id);
+                    }
+                }
+            } else if ("pause".equals(action)) {
+                if (container.isPresent()) {
+                    container.get().sensors().set(DockerContainer.CONTAINER_PAUSED, Boolean.TRUE);
+                }
+            } else if ("die".equals(action)) {
+                if (container.isPresent()) {
+                    container.get().sensors().set(DockerContainer.CONTAINER_RUNNING, Boolean.FALSE);
+                    container.get().sensors().set(DockerContainer.CONTAINER_PAUSED, Boolean.FALSE);
+                }
+            } else if ("destroy".equals(action)) {
+                // Containers that are stopping themselves, or that go while others are created, are left for the reconciliation scan
+                if (container.isPresent() && !Lifecycle.STOPPING.equals(container.get().sensors().get(SERVICE_STATE_ACTUAL))) {
+                    container.get().sensors().set(SERVICE_UP, Boolean.FALSE);
+                    container.get().sensors().set(DockerContainer.CONTAINER_RUNNING, Boolean.FALSE);
+                    Lock lock = getDynamicLocation().getLock();
+                    if (lock.tryLock()) {
+                        try {
+                            removeMissingContainer(container.get());
+                        } finally {
+                            lock.unlock();
+                        }
+                    }
                 }
             }
-        } finally {
-            getDynamicLocation().getLock().unlock();
+        }
+    }
+
+    /** Splits the output of {@code docker events} into lines for {@link #onDockerEvent(String)}. */
+    private class DockerEventStream extends OutputStream {
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        @Override
+        public void write(int b) {
+            if (b == '\n') {
+                String event = Strings.trim(new String(line.toByteArray(), Charsets.UTF_8));
+                line.reset();
+                if (Strings.isBlank(event)) return;
+                try {
+                    onDockerEvent(event);
+                } catch (Exception e) {
+                    Exceptions.propagateIfFatal(e);
+                    LOG.warn("Error processing Docker event on {}: {}", DockerHostImpl.this, event);
+                }
+            } else if (b != '\r') {
+                line.write(b);
+            }
         }
     }
 
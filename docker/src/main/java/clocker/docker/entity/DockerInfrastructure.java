@@ -22,6 +22,9 @@ import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import clocker.docker.entity.util.DockerAttributes;
+import clocker.docker.entity.util.DockerHostIndex;
+import clocker.docker.entity.util.DockerHostReservations;
+import clocker.docker.entity.util.DockerImageBuilds;
 import clocker.docker.entity.util.DockerUtils;
 import clocker.docker.location.DockerLocation;
 import clocker.docker.location.strategy.DockerAwarePlacementStrategy;
@@ -174,6 +177,9 @@ public interface DockerInfrastructure extends StartableApplication, Resizable, L
     AttributeSensor<Integer> DOCKER_HOST_COUNT = DockerAttributes.DOCKER_HOST_COUNT;
     AttributeSensor<Integer> DOCKER_CONTAINER_COUNT = DockerAttributes.DOCKER_CONTAINER_COUNT;
 
+    AttributeSensor<Map<String, Integer>> DOCKER_IMAGE_USAGE = Sensors.newSensor(new TypeToken<Map<String, Integer>>() { },
+            "docker.images.usage", "Number of containers created from each pullable image, aged so that unused images are dropped");
+
     List<Entity> getDockerHostList();
 
     DynamicCluster getDockerHostCluster();
@@ -182,6 +188,25 @@ public interface DockerInfrastructure extends StartableApplication, Resizable, L
 
     DynamicGroup getContainerFabric();
 
+    /** An index of the containers and deployed entities on each Docker host. */
+    DockerHostIndex getHostIndex();
+
+    /** The resources reserved on each Docker host by placements in progress. */
+    DockerHostReservations getHostReservations();
+
+    /** The Dockerfile image builds shared between the Docker hosts. */
+    DockerImageBuilds getImageBuilds();
+
+    /**
+     * Records that a container was created from an image that any host can pull.
+     *
+     * @see #DOCKER_IMAGE_USAGE
+     */
+    void recordImageUsage(String fullyQualifiedImageName);
+
+    /** The most frequently used pullable images, most used first. */
+    List<String> getFrequentImages(int count);
+
     Object getInfrastructureMutex();
 
 }
@@ -26,9 +26,11 @@ import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import javax.net.ssl.X509TrustManager;
 
@@ -38,6 +40,9 @@ import org.slf4j.LoggerFactory;
 import clocker.docker.entity.container.DockerContainer;
 import clocker.docker.entity.container.registry.DockerRegistry;
 import clocker.docker.entity.util.DockerAttributes;
+import clocker.docker.entity.util.DockerHostIndex;
+import clocker.docker.entity.util.DockerHostReservations;
+import clocker.docker.entity.util.DockerImageBuilds;
 import clocker.docker.entity.util.DockerUtils;
 import clocker.docker.location.DockerLocation;
 import clocker.docker.location.DockerResolver;
@@ -45,12 +50,16 @@ import clocker.docker.networking.entity.sdn.util.SdnAttributes;
 import clocker.docker.policy.ContainerHeadroomEnricher;
 
 import com.google.common.base.Function;
+import com.google.common.base.Functions;
 import com.google.common.base.Joiner;
 import com.google.common.base.Predicates;
+import com.google.common.collect.ConcurrentHashMultiset;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Ordering;
 import com.google.common.net.HostAndPort;
 
 import org.apache.brooklyn.api.entity.Application;
@@ -60,6 +69,7 @@ import org.apache.brooklyn.api.location.Location;
 import org.apache.brooklyn.api.location.LocationDefinition;
 import org.apache.brooklyn.api.location.LocationRegistry;
 import org.apache.brooklyn.api.location.LocationSpec;
+import org.apache.brooklyn.api.mgmt.Task;
 import org.apache.brooklyn.api.policy.PolicySpec;
 import org.apache.brooklyn.api.sensor.EnricherSpec;
 import org.apache.brooklyn.camp.brooklyn.BrooklynCampConstants;
@@ -77,6 +87,8 @@ import org.apache.brooklyn.core.location.BasicLocationRegistry;
 import org.apache.brooklyn.core.location.Locations;
 import org.apache.brooklyn.core.location.dynamic.LocationOwner;
 import org.apache.brooklyn.enricher.stock.Enrichers;
+import org.apache.brooklyn.entity.group.AbstractMembershipTrackingPolicy;
+import org.apache.brooklyn.entity.group.AbstractMembershipTrackingPolicy.EventType;
 import org.apache.brooklyn.entity.group.Cluster;
 import org.apache.brooklyn.entity.group.DynamicCluster;
 import org.apache.brooklyn.entity.group.DynamicGroup;
@@ -90,6 +102,8 @@ import org.apache.brooklyn.util.collections.MutableMap;
 import org.apache.brooklyn.util.collections.QuorumCheck.QuorumChecks;
 import org.apache.brooklyn.util.core.ResourceUtils;
 import org.apache.brooklyn.util.core.crypto.SecureKeys;
+import org.apache.brooklyn.util.core.task.ScheduledTask;
+import org.apache.brooklyn.util.core.task.Tasks;
 import org.apache.brooklyn.util.exceptions.Exceptions;
 import org.apache.brooklyn.util.text.Strings;
 import org.apache.brooklyn.util.text.VersionComparator;
@@ -99,7 +113,18 @@ public class DockerInfrastructureImpl extends AbstractApplication implements Doc
 
     private static final Logger LOG = LoggerFactory.getLogger(DockerInfrastructure.class);
 
+    /** The most images whose usage is recorded, before the counts are aged. */
+    private static final int IMAGE_USAGE_LIMIT = 100;
+
+    /** How often image usage counted since the last update is added to {@link #DOCKER_IMAGE_USAGE}. */
+    private static final Duration IMAGE_USAGE_PUBLISH_PERIOD = Duration.THIRTY_SECONDS;
+
     private transient Object mutex = new Object[0];
+    private transient DockerHostIndex hostIndex = new DockerHostIndex();
+    private transient DockerImageBuilds imageBuilds = new DockerImageBuilds();
+    private transient DockerHostReservations hostReservations = new DockerHostReservations();
+    private transient Multiset<String> pendingImageUsage = ConcurrentHashMultiset.create();
+    private transient volatile Task<?> imageUsagePublisher;
 
     @Override
     public Object getInfrastructureMutex() {
@@ -201,6 +226,11 @@ public class DockerInfrastructureImpl extends AbstractApplication implements Doc
         sensors().set(DOCKER_HOST_CLUSTER, hosts);
         sensors().set(DOCKER_CONTAINER_FABRIC, fabric);
 
+        policies().add(PolicySpec.create(ContainerTrackingPolicy.class)
+                .displayName("Docker container tracker")
+                .configure("group", fabric)
+                .configure("sensorsToTrack", ImmutableSet.of(DockerContainer.ENTITY)));
+
         hosts.enrichers().add(Enrichers.builder()
                 .aggregating(MachineAttributes.CPU_USAGE)
                 .computingAverage()
@@ -229,7 +259,11 @@ public class DockerInfrastructureImpl extends AbstractApplication implements Doc
         if ((headroom != null && headroom > 0) || (headroomPercent != null && headroomPercent > 0d)) {
             enrichers().add(EnricherSpec.create(ContainerHeadroomEnricher.class)
                     .configure(ContainerHeadroomEnricher.CONTAINER_HEADROOM, headroom)
-                    .configure(ContainerHeadroomEnricher.CONTAINER_HEADROOM_PERCENTAGE, headroomPercent));
+                    .configure(ContainerHeadroomEnricher.CONTAINER_HEADROOM_PERCENTAGE, headroomPercent)
+                    .configure(ContainerHeadroomEnricher.PREDICTIVE, config().get(ContainerHeadroomEnricher.PREDICTIVE))
+                    .configure(ContainerHeadroomEnricher.FORECAST_WINDOW, config().get(ContainerHeadroomEnricher.FORECAST_WINDOW))
+                    .configure(ContainerHeadroomEnricher.RECALCULATE_PERIOD, config().get(ContainerHeadroomEnricher.RECALCULATE_PERIOD))
+                    .configure(ContainerHeadroomEnricher.DEFAULT_HOST_START_TIME, config().get(ContainerHeadroomEnricher.DEFAULT_HOST_START_TIME)));
             hosts.enrichers().add(Enrichers.builder()
                     .propagating(
                             ContainerHeadroomEnricher.DOCKER_CONTAINER_CLUSTER_COLD,
@@ -300,6 +334,123 @@ public class DockerInfrastructureImpl extends AbstractApplication implements Doc
         return sensors().get(DOCKER_CONTAINER_FABRIC);
     }
 
+    @Override
+    public DockerHostIndex getHostIndex() {
+        return hostIndex;
+    }
+
+    @Override
+    public DockerHostReservations getHostReservations() {
+        return hostReservations;
+    }
+
+    @Override
+    public DockerImageBuilds getImageBuilds() {
+        return imageBuilds;
+    }
+
+    @Override
+    public void recordImageUsage(String fullyQualifiedImageName) {
+        // Count locally and publish periodically, rather than setting the sensor for every container
+        pendingImageUsage.add(fullyQualifiedImageName);
+        if (imageUsagePublisher == null) scheduleImageUsagePublisher();
+    }
+
+    private synchronized void scheduleImageUsagePublisher() {
+        if (imageUsagePublisher != null) return;
+        Callable<Task<?>> factory = new Callable<Task<?>>() {
+            @Override
+            public Task<?> call() {
+                return Tasks.builder()
+                        .displayName("Publish image usage")
+                        .body(new Runnable() {
+                            @Override
+                            public void run() {
+                                // Do not throw, or the scheduled task stops
+                                try {
+                                    publishImageUsage();
+                                } catch (Exception e) {
+                                    Exceptions.propagateIfFatal(e);
+                                    LOG.debug("Error publishing image usage for {}: {}", DockerInfrastructureImpl.this, e.getMessage());
+                                }
+                            }
+                        })
+                        .build();
+            }
+        };
+        imageUsagePublisher = getExecutionContext().submit(
+                new ScheduledTask(MutableMap.of("displayName", "Image usage"), factory).period(IMAGE_USAGE_PUBLISH_PERIOD));
+    }
+
+    /** Add the usage counted since the last update to {@link #DOCKER_IMAGE_USAGE}. */
+    private void publishImageUsage() {
+        if (pendingImageUsage.isEmpty()) return;
+        synchronized (mutex) {
+            Map<String, Integer> usage = MutableMap.copyOf(sensors().get(DOCKER_IMAGE_USAGE));
+            for (String image : ImmutableSet.copyOf(pendingImageUsage.elementSet())) {
+                int count = pendingImageUsage.count(image);
+                if (count == 0) continue;
+                pendingImageUsage.remove(image, count);
+                if (!usage.containsKey(image) && usage.size() >= IMAGE_USAGE_LIMIT) {
+                    ageImageUsage(usage);
+                }
+                Integer current = usage.get(image);
+                usage.put(image, current == null ? count : current + count);
+            }
+            sensors().set(DOCKER_IMAGE_USAGE, ImmutableMap.copyOf(usage));
+        }
+    }
+
+    /**
+     * Halves the usage counts, so images that are no longer used age out, then removes
+     * the least used images until there is room for another.
+     */
+    private void ageImageUsage(Map<String, Integer> usage) {
+        for (Iterator<Map.Entry<String, Integer>> i = usage.entrySet().iterator(); i.hasNext();) {
+            Map.Entry<String, Integer> entry = i.next();
+            int count = entry.getValue() / 2;
+            if (count == 0) {
+                i.remove();
+            } else {
+                entry.setValue(count);
+            }
+        }
+        if (usage.size() >= IMAGE_USAGE_LIMIT) {
+            List<String> least = Ordering.natural().onResultOf(Functions.forMap(usage)).sortedCopy(usage.keySet());
+            for (String image : Iterables.limit(least, usage.size() - IMAGE_USAGE_LIMIT + 1)) {
+                usage.remove(image);
+            }
+        }
+    }
+
+    @Override
+    public List<String> getFrequentImages(int count) {
+        // Include the usage not yet published
+        Map<String, Integer> usage = MutableMap.copyOf(sensors().get(DOCKER_IMAGE_USAGE));
+        for (Multiset.Entry<String> entry : pendingImageUsage.entrySet()) {
+            Integer current = usage.get(entry.getElement());
+            usage.put(entry.getElement(), current == null ? entry.getCount() : current + entry.getCount());
+        }
+        if (usage.isEmpty()) return ImmutableList.of();
+        List<String> images = Ordering.natural().onResultOf(Functions.forMap(usage)).reverse().sortedCopy(usage.keySet());
+        return ImmutableList.copyOf(Iterables.limit(images, count));
+    }
+
+    public static class ContainerTrackingPolicy extends AbstractMembershipTrackingPolicy {
+        @Override
+        protected void onEntityEvent(EventType type, Entity member) {
+            ((DockerInfrastructureImpl) entity).onContainerChanged(type, member);
+        }
+    }
+
+    private void onContainerChanged(EventType type, Entity member) {
+        if (type == EventType.ENTITY_REMOVED) {
+            hostIndex.remove(member.getId());
+        } else if (member instanceof DockerContainer) {
+            hostIndex.update((DockerContainer) member);
+        }
+    }
+
     @Override
     public Integer resize(Integer desiredSize) {
         if (LOG.isDebugEnabled()) {
@@ -417,6 +568,13 @@ public class DockerInfrastructureImpl extends AbstractApplication implements Doc
 
         deleteLocation();
 
+        Task<?> publisher = imageUsagePublisher;
+        if (publisher != null) {
+            publisher.cancel(true);
+            imageUsagePublisher = null;
+        }
+        publishImageUsage();
+
         // Shutdown the Registry if configured
         if (config().get(DOCKER_SHOULD_START_REGISTRY)) {
             Entity registry = sensors().get(DOCKER_IMAGE_REGISTRY);
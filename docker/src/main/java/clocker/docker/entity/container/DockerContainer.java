@@ -46,6 +46,7 @@ import org.apache.brooklyn.location.jclouds.JcloudsSshMachineLocation;
 import org.apache.brooklyn.location.ssh.SshMachineLocation;
 import org.apache.brooklyn.util.core.flags.SetFromFlag;
 import org.apache.brooklyn.util.net.HasNetworkAddresses;
+import org.apache.brooklyn.util.time.Duration;
 
 /**
  * A Docker container.
@@ -128,6 +129,9 @@ public interface DockerContainer extends BasicStartable, HasNetworkAddresses, Ha
     AttributeSensor<Set<String>> CONTAINER_ADDRESSES = Sensors.newSensor(new TypeToken<Set<String>>() { },
             "docker.container.addresses", "The set of Docker container IP addresses");
 
+    AttributeSensor<Map<String, Duration>> NETWORK_ATTACH_TIMES = Sensors.newSensor(new TypeToken<Map<String, Duration>>() { },
+            "docker.container.networks.attachTimes", "The time taken to attach each SDN network to the Docker container");
+
     AttributeSensor<Entity> CONTAINER = Sensors.newSensor(Entity.class, "docker.container", "The Docker container entity");
 
     AttributeSensor<Boolean> CONTAINER_RUNNING = Sensors.newBooleanSensor("docker.container.running", "The Docker container process running status");
@@ -22,12 +22,12 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Callable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import clocker.docker.entity.DockerHost;
+import clocker.docker.entity.util.DockerApiClient;
 import clocker.docker.entity.util.DockerAttributes;
 import clocker.docker.entity.util.DockerUtils;
 import clocker.docker.location.DockerContainerLocation;
@@ -38,15 +38,18 @@ import clocker.docker.networking.entity.sdn.SdnProvider;
 import clocker.docker.networking.entity.sdn.util.SdnAttributes;
 import clocker.docker.networking.entity.sdn.util.SdnUtils;
 
-import com.google.common.base.Functions;
 import com.google.common.base.Joiner;
 import com.google.common.base.Objects;
 import com.google.common.base.Optional;
+import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.primitives.Ints;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 
 import org.jclouds.compute.domain.Processor;
 import org.jclouds.compute.domain.TemplateBuilder;
@@ -61,6 +64,7 @@ import org.apache.brooklyn.api.location.NoMachinesAvailableException;
 import org.apache.brooklyn.api.location.OsDetails;
 import org.apache.brooklyn.api.location.PortRange;
 import org.apache.brooklyn.api.mgmt.LocationManager;
+import org.apache.brooklyn.api.mgmt.Task;
 import org.apache.brooklyn.core.config.render.RendererHints;
 import org.apache.brooklyn.core.entity.Attributes;
 import org.apache.brooklyn.core.entity.Entities;
@@ -75,8 +79,6 @@ import org.apache.brooklyn.core.sensor.PortAttributeSensorAndConfigKey;
 import org.apache.brooklyn.entity.software.base.SoftwareProcess;
 import org.apache.brooklyn.entity.stock.BasicStartableImpl;
 import org.apache.brooklyn.entity.stock.DelegateEntity;
-import org.apache.brooklyn.feed.function.FunctionFeed;
-import org.apache.brooklyn.feed.function.FunctionPollConfig;
 import org.apache.brooklyn.location.jclouds.JcloudsLocation;
 import org.apache.brooklyn.location.jclouds.JcloudsLocationConfig;
 import org.apache.brooklyn.location.jclouds.JcloudsSshMachineLocation;
@@ -86,6 +88,8 @@ import org.apache.brooklyn.util.collections.MutableList;
 import org.apache.brooklyn.util.collections.MutableMap;
 import org.apache.brooklyn.util.collections.MutableSet;
 import org.apache.brooklyn.util.core.internal.ssh.SshTool;
+import org.apache.brooklyn.util.core.task.DynamicTasks;
+import org.apache.brooklyn.util.core.task.Tasks;
 import org.apache.brooklyn.util.exceptions.Exceptions;
 import org.apache.brooklyn.util.net.Cidr;
 import org.apache.brooklyn.util.net.Urls;
@@ -103,8 +107,6 @@ public class DockerContainerImpl extends BasicStartableImpl implements DockerCon
 
     private static final Logger LOG = LoggerFactory.getLogger(DockerContainer.class);
 
-    private transient FunctionFeed status;
-
     @Override
     public void init() {
         LOG.info("Starting Docker container id {}", getId());
@@ -124,61 +126,6 @@ public class DockerContainerImpl extends BasicStartableImpl implements DockerCon
         return String.format("Container (%s)", DockerUtils.getUniqueContainerName(this));
     }
 
-    protected void connectSensors() {
-        status = FunctionFeed.builder()
-                .entity(this)
-                .period(Duration.seconds(15))
-                .poll(new FunctionPollConfig<String, String>(DOCKER_CONTAINER_NAME)
-                        .period(Duration.minutes(1))
-                        .callable(new Callable<String>() {
-                                @Override
-                                public String call() throws Exception {
-                                    String containerId = getContainerId();
-                                    if (containerId == null) return "";
-                                    String name = getDockerHost().runDockerCommand("inspect -f {{.Name}} " + containerId);
-                                    return Strings.removeFromStart(name, "/");
-                                }
-                        })
-                        .onFailureOrException(Functions.constant("")))
-                .poll(new FunctionPollConfig<Boolean, Boolean>(SERVICE_UP)
-                        .callable(new Callable<Boolean>() {
-                                @Override
-                                public Boolean call() throws Exception {
-                                    String containerId = getContainerId();
-                                    if (containerId == null) return false;
-                                    return Strings.isNonBlank(getDockerHost().runDockerCommand("inspect -f {{.Id}} " + containerId));
-                                }
-                        })
-                        .onFailureOrException(Functions.constant(Boolean.FALSE)))
-                .poll(new FunctionPollConfig<Boolean, Boolean>(CONTAINER_RUNNING)
-                        .callable(new Callable<Boolean>() {
-                                @Override
-                                public Boolean call() throws Exception {
-                                    String containerId = getContainerId();
-                                    if (containerId == null) return false;
-                                    String running = getDockerHost().runDockerCommand("inspect -f {{.State.Running}} " + containerId);
-                                    return Strings.isNonBlank(running) && Boolean.parseBoolean(Strings.trim(running));
-                                }
-                        })
-                        .onFailureOrException(Functions.constant(Boolean.FALSE)))
-                .poll(new FunctionPollConfig<Boolean, Boolean>(CONTAINER_PAUSED)
-                        .callable(new Callable<Boolean>() {
-                                @Override
-                                public Boolean call() throws Exception {
-                                    String containerId = getContainerId();
-                                    if (containerId == null) return false;
-                                    String running = getDockerHost().runDockerCommand("inspect -f {{.State.Paused}} " + containerId);
-                                    return Strings.isNonBlank(running) && Boolean.parseBoolean(Strings.trim(running));
-                                }
-                        })
-                        .onFailureOrException(Functions.constant(Boolean.FALSE)))
-                .build();
-    }
-
-    public void disconnectSensors() {
-        if (status != null) status.destroy();
-    }
-
     @Override
     public Entity getRunningEntity() {
         return sensors().get(ENTITY);
@@ -228,21 +175,30 @@ public class DockerContainerImpl extends BasicStartableImpl implements DockerCon
     public void shutDown() {
         String dockerContainerName = sensors().get(DockerContainer.DOCKER_CONTAINER_NAME);
         LOG.info("Stopping {}", dockerContainerName);
-        getDockerHost().runDockerCommand("kill " + getContainerId());
+        Optional<DockerApiClient> api = getDockerHost().getDockerApiClient();
+        if (!api.isPresent() || !api.get().killContainer(getContainerId())) {
+            getDockerHost().runDockerCommand("kill " + getContainerId());
+        }
     }
 
     @Override
     public void pause() {
         String dockerContainerName = sensors().get(DockerContainer.DOCKER_CONTAINER_NAME);
         LOG.info("Pausing {}", dockerContainerName);
-        getDockerHost().runDockerCommand("stop " + getContainerId());
+        Optional<DockerApiClient> api = getDockerHost().getDockerApiClient();
+        if (!api.isPresent() || !api.get().stopContainer(getContainerId())) {
+            getDockerHost().runDockerCommand("stop " + getContainerId());
+        }
     }
 
     @Override
     public void resume() {
         String dockerContainerName = sensors().get(DockerContainer.DOCKER_CONTAINER_NAME);
         LOG.info("Resuming {}", dockerContainerName);
-        getDockerHost().runDockerCommand("start " + getContainerId());
+        Optional<DockerApiClient> api = getDockerHost().getDockerApiClient();
+        if (!api.isPresent() || !api.get().startContainer(getContainerId())) {
+            getDockerHost().runDockerCommand("start " + getContainerId());
+        }
     }
 
     /**
@@ -253,7 +209,142 @@ public class DockerContainerImpl extends BasicStartableImpl implements DockerCon
     private void removeContainer() {
         String dockerContainerName = sensors().get(DockerContainer.DOCKER_CONTAINER_NAME);
         LOG.info("Removing {}", dockerContainerName);
-        getDockerHost().runDockerCommand("rm " + getContainerId());
+        Optional<DockerApiClient> api = getDockerHost().getDockerApiClient();
+        if (!api.isPresent() || !api.get().removeContainer(getContainerId())) {
+            getDockerHost().runDockerCommand("rm " + getContainerId());
+        }
+    }
+
+    /**
+     * Create and attach the SDN networks for the container concurrently.
+     * <p>
+     * Networks are attached in batches of at most {@link SdnAttributes#NETWORK_ATTACH_PARALLELISM},
+     * and the time taken for each is saved as {@link #NETWORK_ATTACH_TIMES}. If any network
+     * fails to attach, the container is disconnected from all of them, any networks created
+     * here that are no longer used are deleted, and its addresses are released before the
+     * failure is propagated.
+     *
+     * @return the container addresses on the networks
+     */
+    private Set<String> attachNetworks(final SdnAgent agent, final String containerId, List<String> networks) {
+        final SdnProvider provider = agent.sensors().get(SdnAgent.SDN_PROVIDER);
+        Integer parallelism = config().get(SdnAttributes.NETWORK_ATTACH_PARALLELISM);
+        final Set<String> addresses = Sets.newConcurrentHashSet();
+        final Map<String, Duration> times = Maps.newConcurrentMap();
+        final Map<String, VirtualNetwork> attached = Maps.newConcurrentMap();
+        final Set<String> created = Sets.newConcurrentHashSet();
+
+        Tasks.setBlockingDetails("Attaching networks " + Iterables.toString(networks));
+        try {
+            for (List<String> batch : Lists.partition(networks, parallelism == null || parallelism < 1 ? 1 : parallelism)) {
+                List<Task<?>> attachments = Lists.newArrayList();
+                for (final String networkId : batch) {
+                    attachments.add(Tasks.builder()
+                            .displayName("Attach network " + networkId)
+                            .body(new Runnable() {
+                                @Override
+                                public void run() {
+                                    Stopwatch stopwatch = Stopwatch.createStarted();
+                                    if (provider.getSubnetCidr(networkId) == null) {
+                                        created.add(networkId);
+                                    }
+                                    // Count the container as attached before connecting it, so the network is not removed meanwhile
+                                    VirtualNetwork vlan = null;
+                                    while (vlan == null) {
+                                        VirtualNetwork network = agent.createNetwork(networkId);
+                                        synchronized (provider.getNetworkMutex()) {
+                                            if (!SdnUtils.isDeleting(network)) {
+                                                agent.connect(DockerContainerImpl.this, network);
+                                                vlan = network;
+                                            }
+                                        }
+                                    }
+                                    attached.put(networkId, vlan);
+                                    InetAddress address = agent.attachNetwork(containerId, networkId);
+                                    addresses.add(address.getHostAddress());
+                                    times.put(networkId, Duration.of(stopwatch));
+                                }
+                            })
+                            .build());
+                }
+                DynamicTasks.queueIfPossible(Tasks.parallel("Attach networks " + Iterables.toString(batch), attachments))
+                        .orSubmitAsync(this)
+                        .andWaitForSuccess();
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Failed attaching networks to {}, rolling back {}: {}", new Object[] { this, attached.keySet(), e.getMessage() });
+            detachNetworks(provider, agent, containerId, attached, created);
+            throw e;
+        } finally {
+            Tasks.resetBlockingDetails();
+        }
+
+        LOG.debug("Attached networks to {}: {}", this, times);
+        sensors().set(NETWORK_ATTACH_TIMES, MutableMap.copyOf(times).asUnmodifiable());
+        return addresses;
+    }
+
+    /**
+     * Undo a partial {@link #attachNetworks(SdnAgent, String, List) attachment}, ignoring errors.
+     * The networks that were created for it are deleted if no other container is using them.
+     */
+    private void detachNetworks(SdnProvider provider, SdnAgent agent, String containerId, Map<String, VirtualNetwork> attached, Set<String> created) {
+        provider.releaseContainerAddresses(containerId);
+        for (Map.Entry<String, VirtualNetwork> entry : attached.entrySet()) {
+            try {
+                getDockerHost().runDockerCommand(String.format("network disconnect %s %s", entry.getKey(), containerId));
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                LOG.debug("Error detaching {} from network {}: {}", new Object[] { this, entry.getKey(), e.getMessage() });
+            }
+            try {
+                if (created.contains(entry.getKey())) {
+                    disconnectNetwork(provider, agent, entry.getValue());
+                } else {
+                    agent.disconnect(this, entry.getValue());
+                }
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                LOG.debug("Error removing {} from network {}: {}", new Object[] { this, entry.getKey(), e.getMessage() });
+            }
+        }
+    }
+
+    /** Disconnect from a network, and delete it if no other containers are attached. */
+    private void disconnectNetwork(SdnProvider provider, SdnAgent agent, VirtualNetwork vlan) {
+        int attached;
+        synchronized (provider.getNetworkMutex()) {
+            agent.disconnect(this, vlan);
+            attached = SdnUtils.countAttached(vlan, this);
+            // Mark the network so new containers wait for a fresh one instead of attaching to this
+            if (attached == 0) {
+                vlan.sensors().set(VirtualNetwork.NETWORK_DELETING, Boolean.TRUE);
+            }
+        }
+        LOG.debug("Found {} containers attached to {} when detaching {}",
+                new Object[] { attached, vlan.sensors().get(VirtualNetwork.NETWORK_ID), getContainerId() });
+        if (attached == 0) {
+            try {
+                Entities.invokeEffector(getDockerHost(), vlan, Startable.STOP).getUnchecked();
+            } finally {
+                vlan.sensors().set(VirtualNetwork.NETWORK_DELETING, Boolean.FALSE);
+            }
+            Entities.unmanage(vlan);
+        }
+    }
+
+    /** Whether the named network exists on the host. */
+    private boolean hasNetwork(String name) {
+        Optional<DockerApiClient> api = getDockerHost().getDockerApiClient();
+        Optional<JsonArray> networks = api.isPresent() ? api.get().listNetworks() : Optional.<JsonArray>absent();
+        if (networks.isPresent()) {
+            for (JsonElement network : networks.get()) {
+                if (name.equals(network.getAsJsonObject().get("Name").getAsString())) return true;
+            }
+            return false;
+        } else {
+            return getDockerHost().runDockerCommand("network ls").contains(name);
+        }
     }
 
     private DockerTemplateOptions getDockerTemplateOptions() {
@@ -565,7 +656,7 @@ public class DockerContainerImpl extends BasicStartableImpl implements DockerCon
             // Create isolated application bridge network for port forwarding
             synchronized (getDockerHost().getHostMutex()) {
                 String bridgeNetwork = String.format("%s_%s", entity.getApplicationId(), DockerUtils.BRIDGE_NETWORK).toLowerCase();
-                if (!getDockerHost().runDockerCommand("network ls").contains(bridgeNetwork)) {
+                if (!hasNetwork(bridgeNetwork)) {
                     getDockerHost().runDockerCommand(String.format("network create --driver bridge " +
                             "-o com.docker.network.bridge.enable_ip_masquerade=true " +
                             "-o com.docker.network.bridge.host_binding_ipv4=0.0.0.0 %s", bridgeNetwork));
@@ -596,15 +687,9 @@ public class DockerContainerImpl extends BasicStartableImpl implements DockerCon
             if (config().get(SdnAttributes.SDN_ENABLE)) {
                 SdnAgent agent = Entities.attributeSupplierWhenReady(dockerHost, SdnAgent.SDN_AGENT).get();
                 List<String> networks = sensors().get(SdnAttributes.ATTACHED_NETWORKS);
-                Set<String> addresses = Sets.newHashSet();
 
                 // Create and attach networks
-                for (String networkId : networks) {
-                    VirtualNetwork vlan = agent.createNetwork(networkId);
-                    InetAddress address = agent.attachNetwork(containerId, networkId);
-                    addresses.add(address.getHostAddress());
-                    agent.connect(this, vlan);
-                }
+                Set<String> addresses = attachNetworks(agent, containerId, networks);
 
                 // Save container addresses
                 sensors().set(CONTAINER_ADDRESSES, addresses);
@@ -679,8 +764,6 @@ public class DockerContainerImpl extends BasicStartableImpl implements DockerCon
                 sensors().set(SSH_MACHINE_LOCATION, location.getMachine());
             }
 
-            connectSensors();
-
             super.start(locations);
         } catch (Exception e) {
             ServiceStateLogic.setExpectedState(this, Lifecycle.ON_FIRE);
@@ -689,15 +772,6 @@ public class DockerContainerImpl extends BasicStartableImpl implements DockerCon
         ServiceStateLogic.setExpectedState(this, Lifecycle.RUNNING);
     }
 
-    @Override
-    public void rebind() {
-        super.rebind();
-
-        if (status == null) {
-            connectSensors();
-        }
-    }
-
     @Override
     public void restart() {
         stop();
@@ -716,8 +790,6 @@ public class DockerContainerImpl extends BasicStartableImpl implements DockerCon
         LOG.info("Stopping {} when its state is {}", this, sensors().get(SERVICE_STATE_ACTUAL));
         ServiceStateLogic.setExpectedState(this, Lifecycle.STOPPING);
 
-        disconnectSensors();
-
         // Remove IP permissions for running entity if present
         Entity entity =  getRunningEntity();
         if (entity != null) {
@@ -752,18 +824,12 @@ public class DockerContainerImpl extends BasicStartableImpl implements DockerCon
                 SdnProvider provider = (SdnProvider) getDockerHost().getInfrastructure().sensors().get(SdnAttributes.SDN_PROVIDER);
                 SdnAgent agent = getDockerHost().sensors().get(SdnAgent.SDN_AGENT);
                 List<String> networks = sensors().get(SdnAttributes.ATTACHED_NETWORKS);
+                if (getContainerId() != null) {
+                    provider.releaseContainerAddresses(getContainerId());
+                }
                 for (String networkId : networks) {
-                    synchronized (getDockerHost().getInfrastructure().getInfrastructureMutex()) {
-                        VirtualNetwork vlan = SdnUtils.lookupNetwork(provider, networkId);
-                        agent.disconnect(this, vlan);
-                        Optional<Integer> attached = SdnUtils.countAttached(getDockerHost(), networkId);
-                        LOG.debug("Found {} containers attached to {} when stopping {}",
-                                new Object[] { attached.or(-1), networkId, getContainerId() });
-                        if (attached.isPresent() && attached.get() == 0) {
-                            Entities.invokeEffector(getDockerHost(), vlan, Startable.STOP).getUnchecked();
-                            Entities.unmanage(vlan);
-                        }
-                    }
+                    VirtualNetwork vlan = SdnUtils.lookupNetwork(provider, networkId);
+                    disconnectNetwork(provider, agent, vlan);
                 }
             }
 
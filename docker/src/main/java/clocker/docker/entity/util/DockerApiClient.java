@@ -0,0 +1,270 @@
+/*
+ * Copyright 2014-2016 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package clocker.docker.entity.util;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.net.URI;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.util.Map;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Function;
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.net.HttpHeaders;
+import com.google.common.net.UrlEscapers;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.apache.brooklyn.util.core.ResourceUtils;
+import org.apache.brooklyn.util.core.crypto.SecureKeys;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.http.HttpTool;
+import org.apache.brooklyn.util.http.HttpToolResponse;
+import org.apache.brooklyn.util.net.Urls;
+import org.apache.brooklyn.util.time.Duration;
+
+/**
+ * A minimal client for the Docker Remote API on a host, over a pooled HTTPS connection.
+ * <p>
+ * Authenticates with the same client certificate and key as the {@code jclouds:docker}
+ * location for the host, and trusts only the infrastructure CA certificate. Queries
+ * return {@link Optional#absent()} and actions return {@code false} when the daemon
+ * cannot be reached, so callers can fall back to running the Docker CLI over SSH.
+ * Error responses from the daemon throw {@link IllegalStateException} instead, as
+ * the same command would fail if it were run with the CLI.
+ */
+public class DockerApiClient implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DockerApiClient.class);
+
+    private static final char[] KEYSTORE_PASSWORD = "docker".toCharArray();
+    private static final Map<String, String> HEADERS = ImmutableMap.of(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.getMimeType());
+
+    private final URI endpoint;
+    private final PoolingClientConnectionManager manager;
+    private final HttpClient client;
+    private volatile long unreachableAt;
+
+    /**
+     * Create a client for the Docker endpoint.
+     *
+     * @param endpoint the {@code https} URL of the Docker daemon
+     * @param caCertUrl URL of the CA certificate that signed the daemon certificate
+     * @param certUrl URL of the client certificate PEM file
+     * @param keyUrl URL of the client key PEM file
+     */
+    public static DockerApiClient newClient(String endpoint, String caCertUrl, String certUrl, String keyUrl, int maxConnections, Duration timeout) {
+        try {
+            ResourceUtils resources = ResourceUtils.create(DockerApiClient.class);
+            CertificateFactory factory = CertificateFactory.getInstance("X.509");
+
+            KeyStore trustStore = SecureKeys.newKeyStore();
+            try (InputStream caCert = resources.getResourceFromUrl(caCertUrl)) {
+                trustStore.setCertificateEntry("ca", factory.generateCertificate(caCert));
+            }
+
+            KeyStore keyStore = SecureKeys.newKeyStore();
+            try (InputStream cert = resources.getResourceFromUrl(certUrl);
+                    InputStream key = resources.getResourceFromUrl(keyUrl)) {
+                Certificate certificate = factory.generateCertificate(cert);
+                KeyPair keys = SecureKeys.readPem(key, null);
+                keyStore.setKeyEntry("client", keys.getPrivate(), KEYSTORE_PASSWORD, new Certificate[] { certificate });
+            }
+
+            // Only certificates signed by our own CA are trusted, so the host name need not match
+            SSLSocketFactory socketFactory = new SSLSocketFactory(SSLSocketFactory.TLS, keyStore, new String(KEYSTORE_PASSWORD),
+                    trustStore, null, SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
+            URI uri = URI.create(endpoint);
+            SchemeRegistry registry = new SchemeRegistry();
+            registry.register(new Scheme("https", uri.getPort(), socketFactory));
+
+            PoolingClientConnectionManager manager = new PoolingClientConnectionManager(registry);
+            manager.setMaxTotal(maxConnections);
+            manager.setDefaultMaxPerRoute(maxConnections);
+            HttpClient client = HttpTool.httpClientBuilder()
+                    .clientConnectionManager(manager)
+                    .connectionTimeout(timeout)
+                    .socketTimeout(timeout)
+                    .uri(endpoint)
+                    .build();
+            return new DockerApiClient(uri, manager, client);
+        } catch (Exception e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    protected DockerApiClient(URI endpoint, PoolingClientConnectionManager manager, HttpClient client) {
+        this.endpoint = endpoint;
+        this.manager = manager;
+        this.client = client;
+    }
+
+    /** The containers on the host, as returned by {@code GET /containers/json}. */
+    public Optional<JsonArray> listContainers(boolean all) {
+        return get(all ? "/containers/json?all=1" : "/containers/json").transform(AS_ARRAY);
+    }
+
+    /** The container details, as returned by {@code GET /containers/(id)/json}. */
+    public Optional<JsonObject> inspectContainer(String id) {
+        return get(String.format("/containers/%s/json", escape(id))).transform(AS_OBJECT);
+    }
+
+    /** The images on the host, as returned by {@code GET /images/json}. */
+    public Optional<JsonArray> listImages() {
+        return get("/images/json").transform(AS_ARRAY);
+    }
+
+    /** The networks on the host, as returned by {@code GET /networks}. */
+    public Optional<JsonArray> listNetworks() {
+        return get("/networks").transform(AS_ARRAY);
+    }
+
+    public boolean tagImage(String image, String repository, String tag) {
+        return post(String.format("/images/%s/tag?repo=%s&tag=%s&force=1", escape(image), escape(repository), escape(tag)));
+    }
+
+    public boolean startContainer(String id) {
+        return post(String.format("/containers/%s/start", escape(id)));
+    }
+
+    public boolean stopContainer(String id) {
+        return post(String.format("/containers/%s/stop", escape(id)));
+    }
+
+    public boolean killContainer(String id) {
+        return post(String.format("/containers/%s/kill", escape(id)));
+    }
+
+    public boolean removeContainer(String id) {
+        return delete(String.format("/containers/%s", escape(id)));
+    }
+
+    /** Remove an image, failing with a {@code 409} if it is used by a container or has child images. */
+    public boolean removeImage(String id) {
+        return delete(String.format("/images/%s", escape(id)));
+    }
+
+    private Optional<JsonElement> get(String path) {
+        HttpToolResponse response;
+        try {
+            response = HttpTool.httpGet(client, uri(path), HEADERS);
+        } catch (Exception e) {
+            failed("GET", path, e);
+            return Optional.absent();
+        }
+        check("GET", path, response);
+        return Optional.of(new JsonParser().parse(response.getContentAsString()));
+    }
+
+    private boolean post(String path) {
+        HttpToolResponse response;
+        try {
+            response = HttpTool.httpPost(client, uri(path), HEADERS, new byte[0]);
+        } catch (Exception e) {
+            return failed("POST", path, e);
+        }
+        check("POST", path, response);
+        return true;
+    }
+
+    private boolean delete(String path) {
+        HttpToolResponse response;
+        try {
+            response = HttpTool.httpDelete(client, uri(path), HEADERS);
+        } catch (Exception e) {
+            return failed("DELETE", path, e);
+        }
+        check("DELETE", path, response);
+        return true;
+    }
+
+    /**
+     * Accepts successful responses, and {@code 304 Not Modified} for containers already in the requested state.
+     *
+     * @throws IllegalStateException for any other response
+     */
+    private void check(String method, String path, HttpToolResponse response) {
+        int code = response.getResponseCode();
+        if (!HttpTool.isStatusCodeHealthy(code) && code != 304) {
+            throw new IllegalStateException(String.format("Docker API %s %s on %s failed with %d: %s",
+                    method, path, endpoint, code, response.getContentAsString()));
+        }
+    }
+
+    private boolean failed(String method, String path, Exception e) {
+        Exceptions.propagateIfFatal(e);
+        unreachableAt = System.currentTimeMillis();
+        LOG.debug("Docker API {} {} on {} failed: {}", new Object[] { method, path, endpoint, e.getMessage() });
+        return false;
+    }
+
+    /** Whether a request has failed to reach the daemon within the given period. */
+    public boolean isUnreachableWithin(Duration period) {
+        long at = unreachableAt;
+        return at > 0L && System.currentTimeMillis() - at < period.toMilliseconds();
+    }
+
+    private URI uri(String path) {
+        return URI.create(Urls.mergePaths(endpoint.toString(), path));
+    }
+
+    private static String escape(String value) {
+        return UrlEscapers.urlPathSegmentEscaper().escape(value);
+    }
+
+    private static final Function<JsonElement, JsonArray> AS_ARRAY = new Function<JsonElement, JsonArray>() {
+        @Override
+        public JsonArray apply(JsonElement input) {
+            return input.getAsJsonArray();
+        }
+    };
+
+    private static final Function<JsonElement, JsonObject> AS_OBJECT = new Function<JsonElement, JsonObject>() {
+        @Override
+        public JsonObject apply(JsonElement input) {
+            return input.getAsJsonObject();
+        }
+    };
+
+    @Override
+    public void close() {
+        manager.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("endpoint", endpoint)
+                .toString();
+    }
+
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2014-2016 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package clocker.docker.entity.util;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import clocker.docker.entity.container.DockerContainer;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+
+import org.apache.brooklyn.api.entity.Entity;
+
+/**
+ * Indexes the containers on each Docker host, and the entities deployed in them.
+ * <p>
+ * Placement strategies query the index to find the hosts running entities from
+ * an application, with a given parent or of a given type, without walking the
+ * containers on every host. The index is kept up to date by the infrastructure
+ * as containers are added, changed and removed, and all keys are entity IDs.
+ * <p>
+ * Entities that have been placed on a host but whose containers are still being
+ * created can be {@link #addPlacement(String, Entity) added} too, so strategies
+ * placing a batch of entities see the earlier placements in the batch.
+ */
+public class DockerHostIndex {
+
+    private static final String PLACEMENT_PREFIX = "placement:";
+
+    private final Map<String, Entry> containers = Maps.newHashMap();
+    private final Multiset<String> containerCount = HashMultiset.create();
+    private final ListMultimap<String, Entity> entities = LinkedListMultimap.create();
+    private final Map<String, Multiset<String>> applications = Maps.newHashMap();
+    private final Map<String, Multiset<String>> parents = Maps.newHashMap();
+    private final Map<String, Multiset<String>> types = Maps.newHashMap();
+    private final Map<String, Summary> summaries = Maps.newHashMap();
+
+    /**
+     * Add or update the index entry for a container.
+     */
+    public synchronized void update(DockerContainer container) {
+        remove(container.getId());
+
+        Entity host = container.config().get(DockerContainer.DOCKER_HOST);
+        if (host == null) return;
+        add(container.getId(), new Entry(host.getId(), container.sensors().get(DockerContainer.ENTITY)));
+    }
+
+    /**
+     * Add an entity placed on a host before its container has been created.
+     */
+    public synchronized void addPlacement(String hostId, Entity entity) {
+        String key = PLACEMENT_PREFIX + entity.getId();
+        remove(key);
+        add(key, new Entry(hostId, entity));
+    }
+
+    /**
+     * Remove the placement of an entity, once its container has been created or has failed.
+     */
+    public synchronized void removePlacement(Entity entity) {
+        remove(PLACEMENT_PREFIX + entity.getId());
+    }
+
+    private void add(String key, Entry entry) {
+        containers.put(key, entry);
+        containerCount.add(entry.hostId);
+        summaries.remove(entry.hostId);
+
+        if (entry.entity != null) {
+            entities.put(entry.hostId, entry.entity);
+            add(applications, entry.applicationId, entry.hostId);
+            add(parents, entry.parentId, entry.hostId);
+            add(types, entry.typeName, entry.hostId);
+            add(types, entry.simpleTypeName, entry.hostId);
+        }
+    }
+
+    /**
+     * Remove the index entry for a container.
+     */
+    public synchronized void remove(String containerId) {
+        Entry entry = containers.remove(containerId);
+        if (entry == null) return;
+        containerCount.remove(entry.hostId);
+        summaries.remove(entry.hostId);
+
+        if (entry.entity != null) {
+            entities.remove(entry.hostId, entry.entity);
+            remove(applications, entry.applicationId, entry.hostId);
+            remove(parents, entry.parentId, entry.hostId);
+            remove(types, entry.typeName, entry.hostId);
+            remove(types, entry.simpleTypeName, entry.hostId);
+        }
+    }
+
+    /** The number of containers on a host, including placements in progress. */
+    public synchronized int getContainerCount(String hostId) {
+        return containerCount.count(hostId);
+    }
+
+    /** The entities deployed in containers on a host. */
+    public synchronized Set<Entity> getEntities(String hostId) {
+        return ImmutableSet.copyOf(entities.get(hostId));
+    }
+
+    /**
+     * A summary of the entities deployed on a host, cached until the containers
+     * on the host change.
+     */
+    public synchronized Summary getSummary(String hostId) {
+        Summary summary = summaries.get(hostId);
+        if (summary == null) {
+            summary = new Summary(entities.get(hostId));
+            summaries.put(hostId, summary);
+        }
+        return summary;
+    }
+
+    public synchronized Set<String> getHostsWithApplication(String applicationId) {
+        return hosts(applications, applicationId);
+    }
+
+    public synchronized Set<String> getHostsWithChildrenOf(String parentId) {
+        return hosts(parents, parentId);
+    }
+
+    /**
+     * The hosts with entities of a type, matched by the case-insensitive
+     * fully qualified or simple name of the entity type.
+     */
+    public synchronized Set<String> getHostsWithType(String type) {
+        return hosts(types, type.toLowerCase(Locale.ENGLISH));
+    }
+
+    public synchronized boolean hasApplication(String hostId, String applicationId) {
+        return contains(applications, applicationId, hostId);
+    }
+
+    public synchronized boolean hasChildrenOf(String hostId, String parentId) {
+        return contains(parents, parentId, hostId);
+    }
+
+    public synchronized boolean hasType(String hostId, String type) {
+        return contains(types, type.toLowerCase(Locale.ENGLISH), hostId);
+    }
+
+    private static void add(Map<String, Multiset<String>> index, @Nullable String key, String hostId) {
+        if (key == null) return;
+        Multiset<String> hosts = index.get(key);
+        if (hosts == null) {
+            hosts = HashMultiset.create();
+            index.put(key, hosts);
+        }
+        hosts.add(hostId);
+    }
+
+    private static void remove(Map<String, Multiset<String>> index, @Nullable String key, String hostId) {
+        if (key == null) return;
+        Multiset<String> hosts = index.get(key);
+        if (hosts != null) {
+            hosts.remove(hostId);
+            if (hosts.isEmpty()) index.remove(key);
+        }
+    }
+
+    private static boolean contains(Map<String, Multiset<String>> index, @Nullable String key, String hostId) {
+        if (key == null) return false;
+        Multiset<String> hosts = index.get(key);
+        return hosts != null && hosts.contains(hostId);
+    }
+
+    private static Set<String> hosts(Map<String, Multiset<String>> index, @Nullable String key) {
+        if (key == null) return ImmutableSet.of();
+        Multiset<String> hosts = index.get(key);
+        return hosts == null ? ImmutableSet.<String>of() : ImmutableSet.copyOf(hosts.elementSet());
+    }
+
+    @Override
+    public synchronized String toString() {
+        return Objects.toStringHelper(this)
+                .add("containers", containers.size())
+                .add("hosts", containerCount.elementSet().size())
+                .add("applications", applications.size())
+                .toString();
+    }
+
+    /**
+     * The types, names, IDs and application IDs of the entities on a host.
+     * <p>
+     * Type names are lower case, and each entity is counted once by its
+     * fully qualified and once by its simple type name.
+     */
+    public static class Summary {
+        private final Set<Entity> entities;
+        private final Multiset<String> typeNames = HashMultiset.create();
+        private final Multiset<String> simpleTypeNames = HashMultiset.create();
+        private final Multiset<String> names = HashMultiset.create();
+        private final Multiset<String> ids = HashMultiset.create();
+        private final Multiset<String> applicationIds = HashMultiset.create();
+
+        private Summary(Iterable<Entity> entities) {
+            this.entities = ImmutableSet.copyOf(entities);
+            for (Entity entity : this.entities) {
+                typeNames.add(entity.getEntityType().getName().toLowerCase(Locale.ENGLISH));
+                simpleTypeNames.add(entity.getEntityType().getSimpleName().toLowerCase(Locale.ENGLISH));
+                if (entity.getDisplayName() != null) names.add(entity.getDisplayName());
+                ids.add(entity.getId());
+                if (entity.getApplicationId() != null) applicationIds.add(entity.getApplicationId());
+            }
+        }
+
+        public boolean isEmpty() { return entities.isEmpty(); }
+
+        public int size() { return entities.size(); }
+
+        public Set<Entity> getEntities() { return entities; }
+
+        /** The number of entities whose fully qualified or simple type name matches, ignoring case. */
+        public int countType(String type) {
+            String name = type.toLowerCase(Locale.ENGLISH);
+            // Simple names never contain a dot, and classes in the default package have identical names
+            return name.indexOf('.') >= 0 ? typeNames.count(name) : simpleTypeNames.count(name);
+        }
+
+        /** The number of entities whose name contains the text, ignoring case. */
+        public int countNameContaining(String text) {
+            String lower = text.toLowerCase(Locale.ENGLISH);
+            int count = 0;
+            for (Multiset.Entry<String> name : names.entrySet()) {
+                if (name.getElement().toLowerCase(Locale.ENGLISH).contains(lower)) {
+                    count += name.getCount();
+                }
+            }
+            return count;
+        }
+
+        public int countId(String id) { return ids.count(id); }
+
+        public int countApplication(String applicationId) { return applicationIds.count(applicationId); }
+    }
+
+    private static class Entry {
+        private final String hostId;
+        private final Entity entity;
+        private final String applicationId;
+        private final String parentId;
+        private final String typeName;
+        private final String simpleTypeName;
+
+        private Entry(String hostId, @Nullable Entity entity) {
+            this.hostId = hostId;
+            this.entity = entity;
+            this.applicationId = entity == null ? null : entity.getApplicationId();
+            this.parentId = (entity == null || entity.getParent() == null) ? null : entity.getParent().getId();
+            this.typeName = entity == null ? null : entity.getEntityType().getName().toLowerCase(Locale.ENGLISH);
+            this.simpleTypeName = entity == null ? null : entity.getEntityType().getSimpleName().toLowerCase(Locale.ENGLISH);
+        }
+    }
+
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright 2014-2016 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package clocker.docker.entity.util;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import org.apache.brooklyn.util.time.Duration;
+
+/**
+ * Tracks the resources reserved on each Docker host by containers that have
+ * been placed there but are not yet running.
+ * <p>
+ * Placement strategies add the reservations to the resources used by the
+ * containers already on a host, so concurrent placements do not all choose
+ * the same host. Reservations are updated with compare-and-set, without locking.
+ * <p>
+ * A reservation can be limited to the capacity left on the host, and can hold
+ * {@link Claim claims} that give an owner exclusive use of a key, such as the
+ * host an application's cluster members are grouped on. It is
+ * {@link Reservation#commit() committed} when the container starts, or
+ * {@link Reservation#rollback() rolled back} if it fails, and is rolled back
+ * automatically if neither happens before it expires. Long running steps such
+ * as image builds {@link Reservation#renew() renew} the reservation, so the
+ * timeout can be short enough to release the capacity promptly if it is leaked.
+ */
+public class DockerHostReservations {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DockerHostReservations.class);
+
+    private final ConcurrentMap<String, AtomicReference<Resources>> reserved = Maps.newConcurrentMap();
+    private final ConcurrentMap<String, Owner> claims = Maps.newConcurrentMap();
+    private final Set<Reservation> active = Sets.newConcurrentHashSet();
+
+    /**
+     * Reserve resources on a host if the total reserved there stays within the
+     * limit, and all the claims can be made.
+     *
+     * @return the reservation, which must be committed or rolled back once the
+     *         container is running or has failed, or absent if the limit would be
+     *         exceeded or a key is claimed by another owner
+     */
+    public Optional<Reservation> tryReserve(String hostId, Resources resources, Resources limit, List<Claim> requested, Duration timeout) {
+        expire();
+
+        List<Claim> made = Lists.newArrayList();
+        for (Claim claim : requested) {
+            if (!acquire(claim)) {
+                LOG.debug("Reservation on {} failed, {} claimed by {}", new Object[] { hostId, claim.getKey(), getOwner(claim.getKey()).orNull() });
+                for (Claim undo : made) release(undo);
+                return Optional.absent();
+            }
+            made.add(claim);
+        }
+
+        AtomicReference<Resources> current = getReference(hostId);
+        Resources before, after;
+        do {
+            before = current.get();
+            after = before.plus(resources);
+            if (!after.fits(limit)) {
+                LOG.debug("Reservation on {} failed, {} exceeds {}", new Object[] { hostId, after, limit });
+                for (Claim undo : made) release(undo);
+                return Optional.absent();
+            }
+        } while (!current.compareAndSet(before, after));
+
+        Reservation reservation = new Reservation(hostId, resources, made, timeout.toMilliseconds());
+        active.add(reservation);
+        return Optional.of(reservation);
+    }
+
+    /** The total resources reserved on a host. */
+    public Resources getReserved(String hostId) {
+        expire();
+        AtomicReference<Resources> current = reserved.get(hostId);
+        return current == null ? Resources.NONE : current.get();
+    }
+
+    /** The owner of a claimed key, if it is claimed by any reservation. */
+    public Optional<String> getOwner(String key) {
+        Owner owner = claims.get(key);
+        return owner == null ? Optional.<String>absent() : Optional.of(owner.name);
+    }
+
+    /** Roll back any reservations that have expired. */
+    public void expire() {
+        long now = System.currentTimeMillis();
+        for (Reservation reservation : active) {
+            if (reservation.expires < now && reservation.finish(State.EXPIRED)) {
+                LOG.warn("Reservation expired: {}", reservation);
+            }
+        }
+    }
+
+    private AtomicReference<Resources> getReference(String hostId) {
+        AtomicReference<Resources> current = reserved.get(hostId);
+        if (current == null) {
+            AtomicReference<Resources> created = new AtomicReference<Resources>(Resources.NONE);
+            current = reserved.putIfAbsent(hostId, created);
+            if (current == null) current = created;
+        }
+        return current;
+    }
+
+    private void release(String hostId, Resources resources) {
+        AtomicReference<Resources> current = getReference(hostId);
+        Resources before;
+        do {
+            before = current.get();
+        } while (!current.compareAndSet(before, before.minus(resources)));
+    }
+
+    private boolean acquire(Claim claim) {
+        while (true) {
+            Owner owner = claims.get(claim.getKey());
+            if (owner == null) {
+                if (claims.putIfAbsent(claim.getKey(), new Owner(claim.getOwner(), 1)) == null) return true;
+            } else if (!owner.name.equals(claim.getOwner())) {
+                return false;
+            } else if (claims.replace(claim.getKey(), owner, new Owner(owner.name, owner.count + 1))) {
+                return true;
+            }
+        }
+    }
+
+    private void release(Claim claim) {
+        while (true) {
+            Owner owner = claims.get(claim.getKey());
+            if (owner == null) return;
+            if (owner.count <= 1) {
+                if (claims.remove(claim.getKey(), owner)) return;
+            } else if (claims.replace(claim.getKey(), owner, new Owner(owner.name, owner.count - 1))) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("hosts", reserved.size())
+                .add("active", active.size())
+                .add("claims", claims.size())
+                .toString();
+    }
+
+    public enum State { RESERVED, COMMITTED, ROLLED_BACK, EXPIRED }
+
+    /** Resources reserved on a host. */
+    public class Reservation {
+        private final String hostId;
+        private final Resources resources;
+        private final List<Claim> claimed;
+        private final long timeout;
+        private volatile long expires;
+        private final AtomicReference<State> state = new AtomicReference<State>(State.RESERVED);
+
+        private Reservation(String hostId, Resources resources, List<Claim> claimed, long timeout) {
+            this.hostId = hostId;
+            this.resources = resources;
+            this.claimed = ImmutableList.copyOf(claimed);
+            this.timeout = timeout;
+            this.expires = System.currentTimeMillis() + timeout;
+        }
+
+        public String getHostId() { return hostId; }
+
+        public Resources getResources() { return resources; }
+
+        public State getState() { return state.get(); }
+
+        /** Extend the reservation by its timeout from now, while the container is still being prepared. */
+        public void renew() {
+            if (state.get() == State.RESERVED) {
+                expires = System.currentTimeMillis() + timeout;
+            }
+        }
+
+        /** The container has been added to the host and now counts its resources itself; subsequent calls have no effect. */
+        public void commit() {
+            finish(State.COMMITTED);
+        }
+
+        /** The container failed, so release the resources; subsequent calls have no effect. */
+        public void rollback() {
+            finish(State.ROLLED_BACK);
+        }
+
+        private boolean finish(State result) {
+            if (!state.compareAndSet(State.RESERVED, result)) return false;
+            active.remove(this);
+            DockerHostReservations.this.release(hostId, resources);
+            for (Claim claim : claimed) DockerHostReservations.this.release(claim);
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this)
+                    .add("host", hostId)
+                    .add("resources", resources)
+                    .add("claims", claimed)
+                    .add("state", state.get())
+                    .toString();
+        }
+    }
+
+    /**
+     * A key that a reservation uses exclusively for an owner. Any number of
+     * reservations can hold claims on the same key for the same owner.
+     */
+    public static class Claim {
+        private final String key;
+        private final String owner;
+
+        public Claim(String key, String owner) {
+            this.key = Preconditions.checkNotNull(key, "key");
+            this.owner = Preconditions.checkNotNull(owner, "owner");
+        }
+
+        public String getKey() { return key; }
+
+        public String getOwner() { return owner; }
+
+        @Override
+        public String toString() {
+            return key + "=" + owner;
+        }
+    }
+
+    /** The owner of a claimed key and the number of reservations holding it. */
+    private static class Owner {
+        private final String name;
+        private final int count;
+
+        private Owner(String name, int count) {
+            this.name = name;
+            this.count = count;
+        }
+    }
+
+    /** An immutable amount of container, CPU share and memory capacity. */
+    public static class Resources {
+        public static final Resources NONE = new Resources(0, 0L, 0L);
+        public static final Resources UNLIMITED = new Resources(Integer.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+
+        private final int containers;
+        private final long cpuShares;
+        private final long memory;
+
+        public Resources(int containers, long cpuShares, long memory) {
+            Preconditions.checkArgument(containers >= 0 && cpuShares >= 0 && memory >= 0, "Negative resources: %s, %s, %s", containers, cpuShares, memory);
+            this.containers = containers;
+            this.cpuShares = cpuShares;
+            this.memory = memory;
+        }
+
+        /** A single container with the given CPU shares and memory (MB). */
+        public static Resources container(long cpuShares, long memory) {
+            return new Resources(1, cpuShares, memory);
+        }
+
+        public int getContainers() { return containers; }
+
+        public long getCpuShares() { return cpuShares; }
+
+        /** Memory in MB. */
+        public long getMemory() { return memory; }
+
+        public Resources plus(Resources other) {
+            return new Resources(containers + other.containers, cpuShares + other.cpuShares, memory + other.memory);
+        }
+
+        /** Whether these resources are all within the limit. */
+        public boolean fits(Resources limit) {
+            return containers <= limit.containers && cpuShares <= limit.cpuShares && memory <= limit.memory;
+        }
+
+        /** The smaller of each of these resources and the other. */
+        public Resources min(Resources other) {
+            return new Resources(Math.min(containers, other.containers),
+                    Math.min(cpuShares, other.cpuShares), Math.min(memory, other.memory));
+        }
+
+        public Resources minus(Resources other) {
+            return new Resources(Math.max(0, containers - other.containers),
+                    Math.max(0L, cpuShares - other.cpuShares), Math.max(0L, memory - other.memory));
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this)
+                    .add("containers", containers)
+                    .add("cpuShares", cpuShares)
+                    .add("memory", memory)
+                    .toString();
+        }
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2014-2016 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package clocker.docker.entity.util;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.time.Duration;
+
+/**
+ * Tracks the Dockerfile image builds in progress across a Docker infrastructure.
+ * <p>
+ * The first request to {@link #claim(String, String) claim} an image key builds the
+ * image and pushes it to the infrastructure registry, and the other requests wait
+ * for the build and pull the pushed image instead of building it themselves.
+ * Failed builds are forgotten, so a later request can try again, and completed
+ * builds are forgotten once every request using them has {@link #release(Build) released} them.
+ */
+public class DockerImageBuilds {
+
+    private final ConcurrentMap<String, Build> builds = Maps.newConcurrentMap();
+
+    /**
+     * Claim the build of an image for a request, or join a build already claimed by another request.
+     *
+     * @return the build, which the caller must {@link #complete(Build, String) complete}
+     *         if it is the {@link Build#isBuilder(String) builder}, or otherwise
+     *         {@link #release(Build) release} once it has finished waiting
+     */
+    public Build claim(String key, String requestId) {
+        while (true) {
+            Build build = new Build(key, requestId);
+            Build existing = builds.putIfAbsent(key, build);
+            if (existing == null) return build;
+            if (existing.join()) return existing;
+            // The existing build was released as we joined it
+            builds.remove(key, existing);
+        }
+    }
+
+    /**
+     * Complete a build, with the fully qualified name of the pushed image, or
+     * {@code null} if the image could not be built or pushed, and release the
+     * builder's claim.
+     */
+    public void complete(Build build, @Nullable String image) {
+        build.image = image;
+        build.done.countDown();
+        if (image == null) {
+            builds.remove(build.key, build);
+        }
+        release(build);
+    }
+
+    /** Release a claim on a build, forgetting the build once it has no more users. */
+    public void release(Build build) {
+        if (build.leave()) {
+            builds.remove(build.key, build);
+        }
+    }
+
+    /** The number of builds that are in progress or still in use. */
+    public int size() {
+        return builds.size();
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("builds", builds.size())
+                .toString();
+    }
+
+    public static class Build {
+        private final String key;
+        private final String builderId;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile String image;
+        private int users = 1;
+
+        private Build(String key, String builderId) {
+            this.key = Preconditions.checkNotNull(key, "key");
+            this.builderId = Preconditions.checkNotNull(builderId, "builderId");
+        }
+
+        public boolean isBuilder(String requestId) {
+            return builderId.equals(requestId);
+        }
+
+        public String getBuilderId() {
+            return builderId;
+        }
+
+        /**
+         * Wait for the build to complete.
+         *
+         * @return the fully qualified name of the pushed image, or absent if the
+         *         build failed or did not complete in time
+         */
+        public Optional<String> await(Duration timeout) {
+            try {
+                if (done.await(timeout.toMilliseconds(), TimeUnit.MILLISECONDS)) {
+                    return Optional.fromNullable(image);
+                } else {
+                    return Optional.absent();
+                }
+            } catch (InterruptedException ie) {
+                throw Exceptions.propagate(ie);
+            }
+        }
+
+        private synchronized boolean join() {
+            if (users == 0) return false;
+            users++;
+            return true;
+        }
+
+        /** @return whether this was the last user */
+        private synchronized boolean leave() {
+            return users > 0 && --users == 0;
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this)
+                    .add("key", key)
+                    .add("builder", builderId)
+                    .add("image", image)
+                    .toString();
+        }
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2014-2016 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package clocker.docker.entity.util;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Chooses the images to remove from a Docker host when its disk fills up.
+ * <p>
+ * Records when each image was last used to create a container, and selects
+ * unreferenced images in least recently used order. Images that have not been
+ * used since the host was managed are ordered by their creation time.
+ * <p>
+ * The owner {@link #getUsage() saves} the usage in a sensor and {@link #restore(Map) restores}
+ * it on rebind, so the order survives a restart of the management server.
+ */
+public class DockerImageCollector {
+
+    private final ConcurrentMap<String, Long> lastUsed = Maps.newConcurrentMap();
+
+    /**
+     * Record that an image has just been used.
+     *
+     * @param image the image ID, or a {@code name:tag} reference for an image that is about to be pulled
+     */
+    public void touch(String image) {
+        lastUsed.put(image, System.currentTimeMillis());
+    }
+
+    /** The time in milliseconds that each image ID or reference was last used. */
+    public Map<String, Long> getUsage() {
+        return ImmutableMap.copyOf(lastUsed);
+    }
+
+    /** Restore saved usage, keeping any more recent use recorded since. */
+    public void restore(@Nullable Map<String, Long> usage) {
+        if (usage == null) return;
+        for (Map.Entry<String, Long> entry : usage.entrySet()) {
+            Long used = lastUsed.putIfAbsent(entry.getKey(), entry.getValue());
+            if (used != null && used < entry.getValue()) lastUsed.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /** Forget the usage of a removed image. */
+    public void forget(Image image) {
+        lastUsed.remove(image.getId());
+        for (String tag : image.getTags()) {
+            lastUsed.remove(tag);
+        }
+    }
+
+    /** The time in milliseconds that an image or any of its tags was last used, or the image was created. */
+    public long getLastUsed(Image image) {
+        long last = image.getCreated();
+        Long used = lastUsed.get(image.getId());
+        if (used != null) last = Math.max(last, used);
+        for (String tag : image.getTags()) {
+            used = lastUsed.get(tag);
+            if (used != null) last = Math.max(last, used);
+        }
+        return last;
+    }
+
+    /**
+     * As {@link #select(Collection, Set, Set, long, long)} with no grace period.
+     */
+    public List<Image> select(Collection<Image> images, Set<String> inUse, Set<String> pinned, long bytes) {
+        return select(images, inUse, pinned, bytes, Long.MAX_VALUE);
+    }
+
+    /**
+     * Select images to remove, least recently used first, until their total size
+     * reaches the number of bytes to reclaim.
+     *
+     * @param inUse IDs of images used by containers, which are never selected
+     * @param pinned IDs, names or {@code name:tag} references of images that are never selected
+     * @param cutoff images created or used after this time in milliseconds are never selected,
+     *        as they may have just been built or pulled for a container that does not exist yet
+     */
+    public List<Image> select(Collection<Image> images, Set<String> inUse, Set<String> pinned, long bytes, long cutoff) {
+        List<Image> candidates = Lists.newArrayList();
+        for (Image image : images) {
+            if (inUse.contains(image.getId()) || isPinned(image, pinned) || getLastUsed(image) > cutoff) continue;
+            candidates.add(image);
+        }
+        Collections.sort(candidates, new Comparator<Image>() {
+            @Override
+            public int compare(Image a, Image b) {
+                return Long.compare(getLastUsed(a), getLastUsed(b));
+            }
+        });
+
+        List<Image> selected = Lists.newArrayList();
+        long total = 0L;
+        for (Image image : candidates) {
+            if (total >= bytes) break;
+            selected.add(image);
+            total += image.getSize();
+        }
+        return selected;
+    }
+
+    private static boolean isPinned(Image image, Set<String> pinned) {
+        if (pinned.contains(image.getId())) return true;
+        for (String tag : image.getTags()) {
+            if (pinned.contains(tag)) return true;
+            int colon = tag.lastIndexOf(':');
+            if (colon > tag.lastIndexOf('/') && pinned.contains(tag.substring(0, colon))) return true;
+        }
+        return false;
+    }
+
+    /** An image on a Docker host. */
+    public static class Image {
+        private final String id;
+        private final Set<String> tags;
+        private final long size;
+        private final long created;
+
+        public Image(String id, Collection<String> tags, long size, long created) {
+            this.id = Preconditions.checkNotNull(id, "id");
+            this.tags = ImmutableSet.copyOf(tags);
+            this.size = size;
+            this.created = created;
+        }
+
+        public String getId() { return id; }
+
+        public Set<String> getTags() { return tags; }
+
+        /** The size of the image layer in bytes. */
+        public long getSize() { return size; }
+
+        /** The creation time in milliseconds. */
+        public long getCreated() { return created; }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this)
+                    .add("id", id)
+                    .add("tags", tags)
+                    .add("size", size)
+                    .toString();
+        }
+    }
+
+}
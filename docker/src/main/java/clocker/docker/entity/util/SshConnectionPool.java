@@ -0,0 +1,262 @@
+/*
+ * Copyright 2014-2016 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package clocker.docker.entity.util;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+
+import org.apache.brooklyn.location.ssh.SshMachineLocation;
+import org.apache.brooklyn.util.core.config.ConfigBag;
+import org.apache.brooklyn.util.core.internal.ssh.SshTool;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.text.Strings;
+import org.apache.brooklyn.util.time.Duration;
+
+/**
+ * A pool of authenticated SSH connections to a single machine.
+ * <p>
+ * Each command runs in its own exec channel on a connection {@link #borrow(Duration) borrowed}
+ * from the pool, so only the first commands pay for connection setup and authentication.
+ * If no connection is idle a new one is opened, up to {@code maxOpen} connections; beyond
+ * that commands wait for a connection to be returned. At most {@code maxIdle} connections
+ * are kept open once their commands finish. Each connection runs one command at a time,
+ * as the Brooklyn {@link SshTool SSH tools} must not be used by more than one thread.
+ * <p>
+ * Connections are created with the {@link SshMachineLocation#SSH_TOOL_CLASS SSH tool class}
+ * configured on the machine. Connections that fail, or that are returned by a command
+ * that timed out, are closed rather than kept. Idle connections that have dropped are
+ * discarded when they are next borrowed, and callers should periodically run a command
+ * on each {@link #takeIdle() idle connection} to find half-open connections.
+ */
+public class SshConnectionPool implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SshConnectionPool.class);
+
+    /** How often a command waiting for a connection checks whether it may open one. */
+    private static final Duration WAIT_INTERVAL = Duration.ONE_SECOND;
+
+    private final SshMachineLocation machine;
+    private final Map<String, Object> sshConfig;
+    private final int maxIdle;
+    private final int maxOpen;
+    private final BlockingQueue<SshTool> idle = new LinkedBlockingQueue<SshTool>();
+    private final AtomicInteger open = new AtomicInteger();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong commands = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private volatile boolean closed = false;
+
+    public SshConnectionPool(SshMachineLocation machine, int maxIdle, int maxOpen) {
+        Preconditions.checkArgument(maxIdle > 0, "Pool size must be positive: %s", maxIdle);
+        Preconditions.checkArgument(maxOpen >= maxIdle, "Maximum connections must be at least the pool size: %s", maxOpen);
+        this.machine = Preconditions.checkNotNull(machine, "machine");
+        this.maxIdle = maxIdle;
+        this.maxOpen = maxOpen;
+        this.sshConfig = sshConfig(machine);
+    }
+
+    /** The SSH configuration for the machine, as {@code SshMachineLocation} passes to its own tools. */
+    private static Map<String, Object> sshConfig(SshMachineLocation machine) {
+        ConfigBag args = new ConfigBag()
+                .configure(SshTool.PROP_USER, machine.getUser())
+                .configure(SshTool.PROP_HOST, machine.getAddress().getHostName())
+                .configure(SshTool.PROP_PORT, machine.getPort());
+        for (Map.Entry<String, Object> entry : machine.config().getBag().getAllConfig().entrySet()) {
+            String key = entry.getKey();
+            if (key.startsWith(SshTool.BROOKLYN_CONFIG_KEY_PREFIX)) {
+                key = Strings.removeFromStart(key, SshTool.BROOKLYN_CONFIG_KEY_PREFIX);
+            } else if (!SshMachineLocation.ALL_SSH_CONFIG_KEY_NAMES.contains(key)) {
+                continue;
+            }
+            args.putIfAbsent(key, entry.getValue());
+        }
+        return args.getAllConfig();
+    }
+
+    /**
+     * Borrow an idle connection, or open a new one if none is idle, waiting for
+     * one to be returned if {@code maxOpen} connections are already open.
+     *
+     * @param timeout the longest time to wait, or {@code null} to wait indefinitely
+     * @throws IllegalStateException if no connection is available within the timeout
+     */
+    public SshTool borrow(@Nullable Duration timeout) {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        while (true) {
+            Preconditions.checkState(!closed, "Connection pool closed for %s", machine);
+            SshTool tool;
+            while ((tool = idle.poll()) != null) {
+                if (tool.isConnected()) {
+                    reused.incrementAndGet();
+                    return tool;
+                }
+                LOG.debug("Discarding disconnected SSH connection to {}", machine);
+                discard(tool);
+            }
+
+            int current = open.get();
+            if (current < maxOpen) {
+                if (open.compareAndSet(current, current + 1)) {
+                    return connect();
+                }
+                continue;
+            }
+
+            Duration wait = WAIT_INTERVAL;
+            if (timeout != null) {
+                Duration remaining = timeout.subtract(Duration.of(stopwatch));
+                if (remaining.toMilliseconds() <= 0L) {
+                    throw new IllegalStateException(String.format("Timed out waiting for one of %d SSH connections to %s", maxOpen, machine));
+                }
+                wait = Duration.min(wait, remaining);
+            }
+            try {
+                tool = idle.poll(wait.toMilliseconds(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                throw Exceptions.propagate(e);
+            }
+            if (tool != null) idle.offer(tool);
+        }
+    }
+
+    /** Open a new connection, whose slot has already been counted. */
+    private SshTool connect() {
+        LOG.debug("Opening new SSH connection to {}", machine);
+        try {
+            String toolClass = machine.config().get(SshMachineLocation.SSH_TOOL_CLASS);
+            Class<?> clazz = machine.getClass().getClassLoader().loadClass(toolClass);
+            SshTool tool = (SshTool) clazz.getConstructor(Map.class).newInstance(sshConfig);
+            tool.connect();
+            created.incrementAndGet();
+            return tool;
+        } catch (Exception e) {
+            open.decrementAndGet();
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    /**
+     * Return a borrowed connection after running a command on it, recording the command.
+     *
+     * @param healthy whether the command completed, so the connection can be reused
+     * @param elapsed the time taken by the command, including borrowing the connection
+     */
+    public void release(SshTool tool, boolean healthy, Duration elapsed) {
+        commands.incrementAndGet();
+        if (!healthy) failures.incrementAndGet();
+        totalNanos.addAndGet(elapsed.toNanoseconds());
+        release(tool, healthy);
+    }
+
+    /** Return a borrowed connection without recording a command. */
+    public void release(SshTool tool, boolean healthy) {
+        // Connections beyond the idle limit were only needed for a burst of commands
+        if (healthy && !closed && tool.isConnected() && idle.size() < maxIdle) {
+            idle.offer(tool);
+        } else {
+            discard(tool);
+        }
+    }
+
+    private void discard(SshTool tool) {
+        open.decrementAndGet();
+        try {
+            tool.disconnect();
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            LOG.debug("Error disconnecting from {}: {}", machine, e.getMessage());
+        }
+    }
+
+    /**
+     * Borrow all the idle connections, for example to check each is still alive.
+     * Each must be {@link #release(SshTool, boolean) released} afterwards.
+     */
+    public List<SshTool> takeIdle() {
+        List<SshTool> tools = Lists.newArrayList();
+        idle.drainTo(tools);
+        return tools;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        SshTool tool;
+        while ((tool = idle.poll()) != null) {
+            discard(tool);
+        }
+    }
+
+    /** Number of connections currently open. */
+    public int getOpenConnections() {
+        return open.get();
+    }
+
+    /** Total number of connections opened. */
+    public long getCreatedConnections() {
+        return created.get();
+    }
+
+    /** Total number of commands run. */
+    public long getCommandCount() {
+        return commands.get();
+    }
+
+    /** Number of commands that failed with an exception. */
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    /** Fraction of commands that ran on an already open connection. */
+    public double getReuseRatio() {
+        long count = commands.get();
+        return count == 0 ? 0d : (double) reused.get() / (double) count;
+    }
+
+    /** Mean command latency in milliseconds, including opening a connection if needed. */
+    public double getMeanLatency() {
+        long count = commands.get();
+        return count == 0 ? 0d : (double) TimeUnit.NANOSECONDS.toMicros(totalNanos.get()) / (1000d * count);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("machine", machine)
+                .add("open", open.get())
+                .add("commands", commands.get())
+                .toString();
+    }
+
+}
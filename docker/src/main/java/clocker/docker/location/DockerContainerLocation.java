@@ -41,6 +41,7 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Objects.ToStringHelper;
 import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
@@ -200,7 +201,7 @@ public class DockerContainerLocation extends SshMachineLocation implements Suppo
             return super.execScript(props, summaryForLogging, commands, env);
         } else {
             Map<String,?> nonPortProps = Maps.filterKeys(props, Predicates.not(Predicates.containsPattern("port")));
-            return hostMachine.execCommands(nonPortProps, summaryForLogging, getDockerExecCommand(commands, env));
+            return getOwner().getDockerHost().execPooledCommands(nonPortProps, summaryForLogging, getDockerExecCommand(commands, env), ImmutableMap.<String, Object>of());
         }
     }
 
@@ -216,7 +217,7 @@ public class DockerContainerLocation extends SshMachineLocation implements Suppo
             return super.execCommands(props, summaryForLogging, commands, env);
         } else {
             Map<String,?> nonPortProps = Maps.filterKeys(props, Predicates.not(Predicates.containsPattern("port")));
-            return hostMachine.execCommands(nonPortProps, summaryForLogging, getDockerExecCommand(commands, env));
+            return getOwner().getDockerHost().execPooledCommands(nonPortProps, summaryForLogging, getDockerExecCommand(commands, env), ImmutableMap.<String, Object>of());
         }
     }
 
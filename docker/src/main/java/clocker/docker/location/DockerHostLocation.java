@@ -37,6 +37,8 @@ import clocker.docker.entity.DockerInfrastructure;
 import clocker.docker.entity.container.DockerContainer;
 import clocker.docker.entity.util.DockerAttributes;
 import clocker.docker.entity.util.DockerCallbacks;
+import clocker.docker.entity.util.DockerHostReservations.Reservation;
+import clocker.docker.entity.util.DockerImageBuilds;
 import clocker.docker.entity.util.DockerUtils;
 import clocker.docker.networking.entity.sdn.SdnAgent;
 import clocker.docker.networking.entity.sdn.SdnProvider;
@@ -45,6 +47,7 @@ import clocker.docker.networking.entity.sdn.util.SdnAttributes;
 import com.google.common.base.Joiner;
 import com.google.common.base.Objects.ToStringHelper;
 import com.google.common.base.Optional;
+import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
@@ -72,10 +75,12 @@ import org.apache.brooklyn.location.jclouds.JcloudsLocation;
 import org.apache.brooklyn.location.ssh.SshMachineLocation;
 import org.apache.brooklyn.util.collections.MutableMap;
 import org.apache.brooklyn.util.core.flags.SetFromFlag;
+import org.apache.brooklyn.util.core.task.Tasks;
 import org.apache.brooklyn.util.exceptions.Exceptions;
 import org.apache.brooklyn.util.net.Cidr;
 import org.apache.brooklyn.util.ssh.BashCommands;
 import org.apache.brooklyn.util.text.Strings;
+import org.apache.brooklyn.util.time.Duration;
 
 import brooklyn.networking.common.subnet.PortForwarder;
 import brooklyn.networking.subnet.SubnetTier;
@@ -87,6 +92,12 @@ public class DockerHostLocation extends AbstractLocation implements MachineProvi
 
     public static final String CONTAINER_MUTEX = "container";
 
+    /** Flag for the {@link Reservation} held for the container, committed once the container is a member of the host. */
+    public static final String RESERVATION_FLAG = "reservation";
+
+    /** Maximum time to build, push or pull an image. */
+    private static final Duration BUILD_TIMEOUT = Duration.minutes(20);
+
     public static final ConfigKey<String> LOCATION_NAME = ConfigKeys.newStringConfigKey("locationName");
 
     public static final ConfigKey<SshMachineLocation> MACHINE = ConfigKeys.newConfigKey(SshMachineLocation.class, "machine");
@@ -277,12 +288,15 @@ public class DockerHostLocation extends AbstractLocation implements MachineProvi
                 }
                 imageName = Joiner.on('/').join(Optional.presentInstances(ImmutableList.of(imageRepo.or(localRepo), baseImage)));
                 String fullyQualifiedName = imageName + ":" + imageTag;
+                getDockerInfrastructure().recordImageUsage(fullyQualifiedName);
 
                 if (useSsh) {
                     // Create an SSHable image from the one configured
                     imageId = dockerHost.layerSshableImageOnFullyQualified(fullyQualifiedName);
                     LOG.info("Created SSHable image from {}: {}", fullyQualifiedName, imageId);
                 } else {
+                    // Mark the image as used before pulling, so it is not collected before the container exists
+                    dockerHost.recordImageUse(fullyQualifiedName);
                     try {
                         dockerHost.runDockerCommand(String.format("pull %s", fullyQualifiedName));
                     } catch (Exception e) {
@@ -308,8 +322,7 @@ public class DockerHostLocation extends AbstractLocation implements MachineProvi
                     if (imageId != null) {
                         LOG.warn("Ignoring container imageId {} as dockerfile URL is set: {}", imageId, dockerfile);
                     }
-                    Map<String, Object> substitutions = getExtraTemplateSubstitutions(imageName, entity);
-                    imageId = dockerHost.buildImage(dockerfile, entrypoint, contextArchive, imageName, useSsh, substitutions);
+                    imageId = buildImage(entity, dockerfile, entrypoint, contextArchive, imageName, useSsh, autoCheckpointImagePostInstall);
                 }
                 if (Strings.isBlank(imageId)) {
                     imageId = getOwner().sensors().get(DockerHost.DOCKER_IMAGE_ID);
@@ -317,9 +330,17 @@ public class DockerHostLocation extends AbstractLocation implements MachineProvi
 
                 // Tag the image name and create its latch
                 imageLatches.putIfAbsent(imageName, new CountDownLatch(1));
-                dockerHost.runDockerCommand(String.format("tag -f %s %s:latest", imageId, imageName));
+                dockerHost.tagImage(imageId, imageName, "latest");
+            }
+
+            if (imageId != null) {
+                dockerHost.recordImageUse(imageId);
             }
 
+            // Keep the capacity reserved now the image is ready, as building or pulling it may take a while
+            Reservation reservation = (Reservation) flags.get(RESERVATION_FLAG);
+            if (reservation != null) reservation.renew();
+
             // Look up hardware ID
             String hardwareId = entity.config().get(DockerAttributes.DOCKER_HARDWARE_ID);
             if (Strings.isEmpty(hardwareId)) {
@@ -333,7 +354,7 @@ public class DockerHostLocation extends AbstractLocation implements MachineProvi
             // Create new Docker container in the host cluster
             LOG.info("Starting container with imageId {} and hardwareId {} at {}", new Object[] { imageId, hardwareId, machine });
             Map<Object, Object> containerFlags = MutableMap.builder()
-                    .putAll(flags)
+                    .putAll(Maps.filterKeys(flags, Predicates.not(Predicates.<Object>equalTo(RESERVATION_FLAG))))
                     .put("useSsh", useSsh)
                     .put("entity", entity)
                     .putIfNotNull("imageId", imageId)
@@ -348,6 +369,9 @@ public class DockerHostLocation extends AbstractLocation implements MachineProvi
             if (added == null) {
                 throw new NoMachinesAvailableException(String.format("Failed to create container at %s", dockerHost));
             } else {
+                // The placement strategies now count the container itself, so stop counting its reservation
+                if (reservation != null) reservation.commit();
+
                 if (LOG.isDebugEnabled()) LOG.debug("Starting container {} at {}, config {}", 
                         new Object[] { added, machine, Sanitizer.sanitize(((EntityInternal)added).config().getBag()) });
                 Entities.invokeEffector(entity, added, Startable.START,  MutableMap.of("locations", ImmutableList.of(machine))).getUnchecked();
@@ -373,6 +397,76 @@ public class DockerHostLocation extends AbstractLocation implements MachineProvi
         }
     }
 
+    /**
+     * Build an image from a Dockerfile, or pull it from the registry if another host
+     * is building the same image.
+     * <p>
+     * Only images named by their {@link DockerUtils#imageName(Entity, String) hash} are
+     * shared, and only when there is a writeable registry to push them to.
+     */
+    private String buildImage(Entity entity, String dockerfile, String entrypoint, String contextArchive, String imageName, boolean useSsh, boolean shared) {
+        Map<String, Object> substitutions = getExtraTemplateSubstitutions(imageName, entity);
+        Optional<String> registry = getWriteableRegistry();
+        if (!shared || !registry.isPresent()) {
+            return dockerHost.buildImage(dockerfile, entrypoint, contextArchive, imageName, useSsh, substitutions);
+        }
+
+        String repository = Joiner.on('/').join(registry.get(), imageName);
+        String tag = useSsh ? "ssh" : "latest";
+        String fullyQualifiedName = repository + ":" + tag;
+        getDockerInfrastructure().recordImageUsage(fullyQualifiedName);
+        DockerImageBuilds builds = getDockerInfrastructure().getImageBuilds();
+        DockerImageBuilds.Build build = builds.claim(fullyQualifiedName, entity.getId());
+
+        if (build.isBuilder(entity.getId())) {
+            String imageId = null;
+            try {
+                imageId = dockerHost.buildImage(dockerfile, entrypoint, contextArchive, imageName, useSsh, substitutions);
+                dockerHost.tagImage(imageId, repository, tag);
+                dockerHost.runDockerCommandTimeout(String.format("push %s", fullyQualifiedName), BUILD_TIMEOUT);
+                LOG.info("Pushed image {} to {}", imageName, fullyQualifiedName);
+                builds.complete(build, fullyQualifiedName);
+            } catch (Exception e) {
+                builds.complete(build, null);
+                if (imageId == null) throw Exceptions.propagate(e);
+                Exceptions.propagateIfFatal(e);
+                LOG.warn("Error pushing image {} to {}, other hosts will build it: {}", new Object[] { imageName, fullyQualifiedName, e.getMessage() });
+            }
+            return imageId;
+        }
+
+        Tasks.setBlockingDetails("Waiting for image build by " + build.getBuilderId() + ": " + imageName);
+        try {
+            LOG.info("Waiting for build of image {} by {} for {}", new Object[] { imageName, build.getBuilderId(), entity });
+            Optional<String> pushed = build.await(BUILD_TIMEOUT);
+            if (pushed.isPresent()) {
+                dockerHost.runDockerCommandTimeout(String.format("pull %s", pushed.get()), BUILD_TIMEOUT);
+                Optional<String> imageId = dockerHost.getImageNamed(repository, tag);
+                if (imageId.isPresent()) {
+                    LOG.info("Pulled image {} from {}: {}", new Object[] { imageName, pushed.get(), imageId.get() });
+                    return imageId.get();
+                }
+            }
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            LOG.warn("Error pulling image {} from {}, building it: {}", new Object[] { imageName, fullyQualifiedName, e.getMessage() });
+        } finally {
+            builds.release(build);
+            Tasks.resetBlockingDetails();
+        }
+        return dockerHost.buildImage(dockerfile, entrypoint, contextArchive, imageName, useSsh, substitutions);
+    }
+
+    /** The infrastructure registry URL, if images can be pushed to it. */
+    private Optional<String> getWriteableRegistry() {
+        DockerInfrastructure infrastructure = getDockerInfrastructure();
+        if (!infrastructure.config().get(DockerInfrastructure.DOCKER_IMAGE_REGISTRY_WRITEABLE)) {
+            return Optional.absent();
+        }
+        String url = infrastructure.sensors().get(DockerInfrastructure.DOCKER_IMAGE_REGISTRY_URL);
+        return Strings.isNonBlank(url) ? Optional.of(url) : Optional.<String>absent();
+    }
+
     private Map<String, Object> getExtraTemplateSubstitutions(String imageName, Entity context) {
         Map<String, Object> templateSubstitutions = MutableMap.<String, Object>of("fullyQualifiedImageName", imageName);
         templateSubstitutions.putAll(getOwner().config().get(DockerInfrastructure.DOCKERFILE_SUBSTITUTIONS));
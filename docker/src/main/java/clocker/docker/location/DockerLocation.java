@@ -23,7 +23,8 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,7 +32,13 @@ import org.slf4j.LoggerFactory;
 import clocker.docker.entity.DockerHost;
 import clocker.docker.entity.DockerInfrastructure;
 import clocker.docker.entity.util.DockerAttributes;
+import clocker.docker.entity.util.DockerHostReservations.Claim;
+import clocker.docker.entity.util.DockerHostReservations.Reservation;
+import clocker.docker.entity.util.DockerHostReservations.Resources;
 import clocker.docker.location.strategy.DockerAwarePlacementStrategy;
+import clocker.docker.location.strategy.basic.BinPackingPlacementStrategy;
+import clocker.docker.location.strategy.basic.GroupPlacementStrategy;
+import clocker.docker.location.strategy.basic.MaxContainersPlacementStrategy;
 import clocker.docker.networking.location.NetworkProvisioningExtension;
 import clocker.docker.policy.ContainerHeadroomEnricher;
 
@@ -39,13 +46,16 @@ import com.google.common.base.Objects.ToStringHelper;
 import com.google.common.base.Optional;
 import com.google.common.base.Predicates;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.HashMultiset;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimaps;
+import com.google.common.collect.Multiset;
 import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
 
 import org.apache.brooklyn.api.entity.Entity;
 import org.apache.brooklyn.api.location.LocationDefinition;
@@ -53,14 +63,18 @@ import org.apache.brooklyn.api.location.MachineLocation;
 import org.apache.brooklyn.api.location.MachineProvisioningLocation;
 import org.apache.brooklyn.api.location.NoMachinesAvailableException;
 import org.apache.brooklyn.api.mgmt.ManagementContext.PropertiesReloadListener;
+import org.apache.brooklyn.api.mgmt.Task;
 import org.apache.brooklyn.api.mgmt.rebind.RebindContext;
 import org.apache.brooklyn.api.mgmt.rebind.RebindSupport;
 import org.apache.brooklyn.api.mgmt.rebind.mementos.LocationMemento;
 import org.apache.brooklyn.api.policy.Policy;
 import org.apache.brooklyn.config.ConfigKey;
 import org.apache.brooklyn.core.config.ConfigKeys;
+import org.apache.brooklyn.core.entity.Attributes;
 import org.apache.brooklyn.core.entity.Entities;
 import org.apache.brooklyn.core.entity.EntityFunctions;
+import org.apache.brooklyn.core.entity.lifecycle.Lifecycle;
+import org.apache.brooklyn.core.entity.trait.Startable;
 import org.apache.brooklyn.core.location.AbstractLocation;
 import org.apache.brooklyn.core.location.BasicLocationDefinition;
 import org.apache.brooklyn.core.location.LocationConfigKeys;
@@ -72,15 +86,44 @@ import org.apache.brooklyn.policy.autoscaling.AutoScalerPolicy;
 import org.apache.brooklyn.util.collections.MutableMap;
 import org.apache.brooklyn.util.core.flags.SetFromFlag;
 import org.apache.brooklyn.util.core.mutex.WithMutexes;
+import org.apache.brooklyn.util.core.task.Tasks;
 import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.time.Duration;
+import org.apache.brooklyn.util.time.Time;
 
 public class DockerLocation extends AbstractLocation implements DockerVirtualLocation, MachineProvisioningLocation<MachineLocation>,
         DynamicLocation<DockerInfrastructure, DockerLocation>, Closeable {
 
     private static final Logger LOG = LoggerFactory.getLogger(DockerLocation.class);
 
+    /** Number of times to try placing a request before giving up, backing off between attempts. */
+    private static final int PLACEMENT_ATTEMPTS = 5;
+    private static final Duration PLACEMENT_BACKOFF = Duration.ONE_SECOND;
+    private static final Duration PLACEMENT_BACKOFF_MAX = Duration.seconds(30);
+    /** How often requests for new hosts check whether one of them has started. */
+    private static final Duration CLAIM_POLL_PERIOD = Duration.ONE_SECOND;
+
     public static final ConfigKey<String> LOCATION_NAME = ConfigKeys.newStringConfigKey("locationName");
 
+    @SetFromFlag("provisioningBatchDelay")
+    public static final ConfigKey<Duration> PROVISIONING_BATCH_DELAY = ConfigKeys.newDurationConfigKey(
+            "docker.location.provisioningBatchDelay",
+            "Time to collect concurrent requests for new Docker hosts before resizing the host cluster",
+            Duration.seconds(5));
+
+    @SetFromFlag("placementBatchDelay")
+    public static final ConfigKey<Duration> PLACEMENT_BATCH_DELAY = ConfigKeys.newDurationConfigKey(
+            "docker.location.placementBatchDelay",
+            "Time to collect concurrent requests from members of the same cluster before placing them together; zero, the default, places each request on its own",
+            Duration.ZERO);
+
+    @SetFromFlag("reservationTimeout")
+    public static final ConfigKey<Duration> RESERVATION_TIMEOUT = ConfigKeys.newDurationConfigKey(
+            "docker.location.reservationTimeout",
+            "Time to hold the capacity reserved on a host for a container that is being created without progress, before releasing it; "
+                    + "renewed after each image is built or pulled",
+            Duration.minutes(5));
+
     @SetFromFlag("strategies")
     private List<DockerAwarePlacementStrategy> strategies;
 
@@ -94,7 +137,11 @@ public class DockerLocation extends AbstractLocation implements DockerVirtualLoc
     private String locationRegistrationId;
 
     private transient DockerInfrastructure infrastructure;
-    private transient Semaphore permit = new Semaphore(1);
+    private transient Object provisioningMutex = new Object[0];
+    private transient ProvisioningBatch provisioningBatch;
+    private transient Object resizeMutex = new Object[0];
+    private transient Object placementMutex = new Object[0];
+    private transient Map<String, PlacementBatch> placementBatches = Maps.newHashMap();
 
     public DockerLocation() {
         this(Maps.newLinkedHashMap());
@@ -179,12 +226,21 @@ public class DockerLocation extends AbstractLocation implements DockerVirtualLoc
         List<Optional<DockerHostLocation>> result = Lists.newArrayList();
         for (Entity entity : getDockerHostList()) {
             DockerHost host = (DockerHost) entity;
+            if (isPullingImages(host)) continue;
             DockerHostLocation machine = host.getDynamicLocation();
             result.add(Optional.<DockerHostLocation>fromNullable(machine));
         }
         return ImmutableList.copyOf(Optional.presentInstances(result));
     }
 
+    /** Whether a new host is still pulling the frequently used images, so containers should not be placed there yet. */
+    private boolean isPullingImages(DockerHost host) {
+        Integer count = host.config().get(DockerHost.PRE_PULL_IMAGES);
+        return count != null && count > 0
+                && host.sensors().get(DockerHost.PRE_PULLED_IMAGES) == null
+                && Lifecycle.STARTING.equals(host.sensors().get(Attributes.SERVICE_STATE_ACTUAL));
+    }
+
     public MachineLocation obtain() throws NoMachinesAvailableException {
         return obtain(Maps.<String,Object>newLinkedHashMap());
     }
@@ -197,85 +253,437 @@ public class DockerLocation extends AbstractLocation implements DockerVirtualLoc
             throw new IllegalStateException("Invalid location context: " + context);
         }
         Entity entity = (Entity) context;
+        Iterable<DockerAwarePlacementStrategy> allStrategies = getStrategies(entity);
 
-        // Get the available hosts
-        List<DockerHostLocation> available = getDockerHostLocations();
-        LOG.debug("Placement for: {}", Iterables.toString(Iterables.transform(available, EntityFunctions.id())));
+        // Place members of a growing cluster together, or on their own
+        DockerHostLocation machine = null;
+        DockerHost dockerHost = null;
+        Reservation reservation = null;
+        Placement placement = isBatchable(entity) ? placeInBatch(entity) : null;
+        if (placement != null) {
+            machine = placement.machine;
+            dockerHost = machine.getOwner();
+            reservation = placement.reservation;
+        } else {
+            for (int attempt = 1; reservation == null; attempt++) {
+                machine = null;
+                List<DockerHostLocation> available = filterLocations(entity, allStrategies);
+
+                // Use the provisioning strategy to add a new host
+                if (available.size() > 0) {
+                    machine = available.get(0);
+                    dockerHost = machine.getOwner();
+                } else {
+                    // Join the current batch of requests for new Docker hosts
+                    dockerHost = provisionHost();
+                }
+
+                // Reserve the requested resources on the host until the container is created
+                if (dockerHost != null) {
+                    Optional<Reservation> reserved = reserve(entity, dockerHost.getId(), machine, allStrategies);
+                    if (reserved.isPresent()) {
+                        reservation = reserved.get();
+                        break;
+                    }
+                }
 
-        // Apply placement strategies
+                // The new hosts were all claimed, or another placement took the capacity first, so try again
+                if (attempt >= PLACEMENT_ATTEMPTS) {
+                    throw new NoMachinesAvailableException(String.format("Unable to place %s after %d attempts", entity, attempt));
+                }
+                Duration backoff = Duration.millis(Math.min(PLACEMENT_BACKOFF_MAX.toMilliseconds(), PLACEMENT_BACKOFF.toMilliseconds() << (attempt - 1)));
+                LOG.debug("No capacity for {} on attempt {}, retrying in {}", new Object[] { entity, attempt, backoff });
+                Time.sleep(backoff);
+            }
+        }
+
+        try {
+            // Now wait until the host has started up
+            Entities.waitForServiceUp(dockerHost);
+            if (machine == null) machine = dockerHost.getDynamicLocation();
+
+            // Obtain a new Docker container location, save and return it
+            LOG.debug("Obtain a new container from {} for {}", machine, entity);
+            Map<Object, Object> hostFlags = MutableMap.<Object, Object>copyOf(flags);
+            hostFlags.put(DockerHostLocation.RESERVATION_FLAG, reservation);
+            DockerContainerLocation container = machine.obtain(hostFlags);
+            containers.put(machine, container.getId());
+
+            // Index the container now rather than on its membership event, so the placement can be removed
+            getOwner().getHostIndex().update(container.getOwner());
+            return container;
+        } finally {
+            // Roll back the reservation if the container was not created
+            reservation.rollback();
+            if (placement != null) getOwner().getHostIndex().removePlacement(entity);
+            releaseMutexes(entity, allStrategies);
+        }
+    }
+
+    /**
+     * Reserve the resources for an entity on a host, within the limits set by the
+     * placement strategies and with the claims required by the {@link GroupPlacementStrategy}.
+     *
+     * @param machine the host location, or {@code null} for a new host that is not yet running
+     */
+    private Optional<Reservation> reserve(Entity entity, String hostId, DockerHostLocation machine, Iterable<DockerAwarePlacementStrategy> allStrategies) {
+        Resources limit = Resources.UNLIMITED;
+        List<Claim> claims = ImmutableList.of();
+        for (DockerAwarePlacementStrategy strategy : allStrategies) {
+            if (machine != null && strategy instanceof BinPackingPlacementStrategy) {
+                limit = limit.min(((BinPackingPlacementStrategy) strategy).getLimit(machine));
+            } else if (machine != null && strategy instanceof MaxContainersPlacementStrategy) {
+                limit = limit.min(((MaxContainersPlacementStrategy) strategy).getLimit(machine));
+            } else if (strategy instanceof GroupPlacementStrategy) {
+                claims = ((GroupPlacementStrategy) strategy).getClaims(entity, hostId);
+            }
+        }
+        return getOwner().getHostReservations().tryReserve(hostId, getRequest(entity, allStrategies), limit, claims, getConfig(RESERVATION_TIMEOUT));
+    }
+
+    /** The placement strategies for the location, followed by any configured on the entity. */
+    private Iterable<DockerAwarePlacementStrategy> getStrategies(Entity entity) {
         List<DockerAwarePlacementStrategy> entityStrategies = entity.config().get(DockerAttributes.PLACEMENT_STRATEGIES);
         if (entityStrategies == null) entityStrategies = ImmutableList.of();
-        for (DockerAwarePlacementStrategy strategy : Iterables.concat(strategies, entityStrategies)) {
+        return ImmutableList.copyOf(Iterables.concat(strategies, entityStrategies));
+    }
+
+    /** Apply the placement strategies to the available hosts, best first. */
+    private List<DockerHostLocation> filterLocations(Entity entity, Iterable<DockerAwarePlacementStrategy> allStrategies) {
+        List<DockerHostLocation> available = getDockerHostLocations();
+        LOG.debug("Placement for: {}", Iterables.toString(Iterables.transform(available, EntityFunctions.id())));
+        for (DockerAwarePlacementStrategy strategy : allStrategies) {
             available = strategy.filterLocations(available, entity);
             LOG.debug("Placement after {}: {}", strategy, Iterables.toString(Iterables.transform(available, EntityFunctions.id())));
         }
+        return available;
+    }
 
-        // Use the provisioning strategy to add a new host
-        DockerHostLocation machine = null;
-        DockerHost dockerHost = null;
-        if (available.size() > 0) {
-            machine = available.get(0);
-            dockerHost = machine.getOwner();
-        } else {
-            // Get permission to create a new Docker host
-            if (permit.tryAcquire()) {
+    /** Release any placement strategy locks held for an entity by the current thread. */
+    private void releaseMutexes(Entity entity, Iterable<DockerAwarePlacementStrategy> allStrategies) {
+        for (DockerAwarePlacementStrategy strategy : allStrategies) {
+            if (strategy instanceof WithMutexes) {
+                ((WithMutexes) strategy).releaseMutex(entity.getApplicationId());
+            }
+        }
+    }
+
+    /** Whether an entity is a member of a cluster, and may be placed with the other members being added. */
+    private boolean isBatchable(Entity entity) {
+        Duration delay = getConfig(PLACEMENT_BATCH_DELAY);
+        return delay != null && delay.isPositive() && entity.getParent() instanceof DynamicCluster;
+    }
+
+    /**
+     * Place an entity together with the other members of its cluster that are
+     * being added at the same time.
+     * <p>
+     * The first request collects the concurrent requests for members with the
+     * same parent and type for the {@link #PLACEMENT_BATCH_DELAY batch delay}, and
+     * then places them all in one pass, reserving capacity for each on its host
+     * before placing the next. Each request then creates its own container, so
+     * the containers are created in parallel.
+     *
+     * @return the placement, or {@code null} if there was no room on the existing hosts
+     */
+    protected Placement placeInBatch(Entity entity) {
+        String key = entity.getParent().getId() + ":" + entity.getEntityType().getName();
+        PlacementBatch batch;
+        boolean first = false;
+        synchronized (placementMutex) {
+            batch = placementBatches.get(key);
+            if (batch == null) {
+                batch = new PlacementBatch();
+                placementBatches.put(key, batch);
+                first = true;
+            }
+            batch.requests.add(entity);
+        }
+
+        if (first) {
+            // Always close the batch and release the waiting requests, even if interrupted while collecting
+            List<Entity> requests = ImmutableList.of();
+            try {
+                Tasks.setBlockingDetails("Waiting for requests from other members of " + entity.getParent());
                 try {
-                    // Determine if headroom scaling policy is being used and suspend
-                    Integer headroom = getOwner().config().get(ContainerHeadroomEnricher.CONTAINER_HEADROOM);
-                    Double headroomPercent = getOwner().config().get(ContainerHeadroomEnricher.CONTAINER_HEADROOM_PERCENTAGE);
-                    boolean headroomSet = (headroom != null && headroom > 0) || (headroomPercent != null && headroomPercent > 0d);
-                    Optional<Policy> policy = Iterables.tryFind(getOwner().getDockerHostCluster().policies(), Predicates.instanceOf(AutoScalerPolicy.class));
-                    if (headroomSet && policy.isPresent()) policy.get().suspend();
+                    Time.sleep(getConfig(PLACEMENT_BATCH_DELAY));
+                } finally {
+                    Tasks.resetBlockingDetails();
+                    synchronized (placementMutex) {
+                        placementBatches.remove(key);
+                        requests = ImmutableList.copyOf(batch.requests);
+                    }
+                }
+                place(batch, requests);
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                LOG.warn("Error placing " + requests.size() + " members of " + entity.getParent() + " together", e);
+            } finally {
+                batch.placed.countDown();
+            }
+        } else {
+            Tasks.setBlockingDetails("Waiting for placement with other members of " + entity.getParent());
+            try {
+                batch.placed.await();
+            } catch (InterruptedException ie) {
+                // Release anything placed for this request, as it will not create its container
+                batch.withdrawn.add(entity.getId());
+                release(batch, entity);
+                throw Exceptions.propagate(ie);
+            } finally {
+                Tasks.resetBlockingDetails();
+            }
+        }
 
+        return batch.placements.get(entity.getId());
+    }
+
+    private void place(PlacementBatch batch, List<Entity> requests) {
+        for (Entity entity : requests) {
+            Iterable<DockerAwarePlacementStrategy> allStrategies = getStrategies(entity);
+            List<DockerHostLocation> available;
+            try {
+                available = filterLocations(entity, allStrategies);
+            } finally {
+                releaseMutexes(entity, allStrategies);
+            }
+            if (available.isEmpty()) continue;
+
+            // Reserve capacity and index the placement, so the strategies see it when placing the next request
+            DockerHostLocation machine = available.get(0);
+            String hostId = machine.getOwner().getId();
+            Optional<Reservation> reservation = reserve(entity, hostId, machine, allStrategies);
+            if (!reservation.isPresent()) continue;
+            getOwner().getHostIndex().addPlacement(hostId, entity);
+            batch.placements.put(entity.getId(), new Placement(machine, reservation.get()));
+            if (batch.withdrawn.contains(entity.getId())) release(batch, entity);
+        }
+        LOG.info("Placed {} of {} requests on existing Docker hosts", batch.placements.size(), requests.size());
+    }
+
+    private void release(PlacementBatch batch, Entity entity) {
+        Placement placement = batch.placements.remove(entity.getId());
+        if (placement != null) {
+            placement.reservation.rollback();
+            getOwner().getHostIndex().removePlacement(entity);
+        }
+    }
+
+    /**
+     * Obtain a new Docker host for a request that could not be placed.
+     * <p>
+     * The first request to find no capacity collects concurrent requests for
+     * the {@link #PROVISIONING_BATCH_DELAY batch delay} and then resizes the host
+     * cluster once, by enough hosts to hold them all. Each request then claims one
+     * of the hosts added by that resize as soon as it is up, without waiting for the
+     * others, so a request fails only if no new host could be started for it.
+     *
+     * @return the new host, or {@code null} if all of the new hosts were claimed
+     */
+    protected DockerHost provisionHost() {
+        ProvisioningBatch batch;
+        boolean first = false;
+        synchronized (provisioningMutex) {
+            if (provisioningBatch == null) {
+                provisioningBatch = new ProvisioningBatch();
+                first = true;
+            }
+            batch = provisioningBatch;
+            batch.requests++;
+        }
+
+        if (first) {
+            // Always close the batch and either start the resize or fail the waiting requests
+            try {
+                Duration delay = getConfig(PROVISIONING_BATCH_DELAY);
+                if (delay != null && delay.isPositive()) {
+                    Tasks.setBlockingDetails("Waiting for requests for new Docker hosts");
                     try {
-                        // Resize the host cluster
-                        LOG.info("Provisioning new host");
-                        Entity added = Iterables.getOnlyElement(getOwner().getDockerHostCluster().resizeByDelta(1));
-                        dockerHost = (DockerHost) added;
-                        machine = dockerHost.getDynamicLocation();
-
-                        // Update autoscaler policy with new minimum size and resume
-                        if (headroomSet && policy.isPresent()) {
-                            int currentMin = policy.get().config().get(AutoScalerPolicy.MIN_POOL_SIZE);
-                            LOG.info("Updating autoscaler policy ({}) setting {} to {}",
-                                    new Object[] { policy.get(), AutoScalerPolicy.MIN_POOL_SIZE.getName(), currentMin + 1 });
-                            policy.get().config().set(AutoScalerPolicy.MIN_POOL_SIZE, currentMin + 1);
-                        }
+                        Time.sleep(delay);
                     } finally {
-                        if (policy.isPresent()) policy.get().resume();
+                        Tasks.resetBlockingDetails();
                     }
-                } finally {
-                    permit.release();
                 }
-            } else {
-                // Wait until whoever has the permit releases it, and try again
-                try {
-                    permit.acquire();
-                } catch (InterruptedException ie) {
-                    Exceptions.propagate(ie);
-                } finally {
-                    permit.release();
+                synchronized (provisioningMutex) {
+                    provisioningBatch = null;
+                }
+                synchronized (batch) {
+                    int capacity = getHostCapacity();
+                    int delta = (batch.requests + capacity - 1) / capacity;
+                    batch.capacity = capacity;
+                    batch.resize = Entities.submit(getOwner(), Tasks.<Collection<Entity>>builder()
+                            .displayName("Provisioning " + delta + " new Docker hosts")
+                            .body(new ResizeHostCluster(batch, delta))
+                            .build());
+                    LOG.info("Provisioning {} new hosts for {} requests", delta, batch.requests);
+                }
+            } finally {
+                synchronized (provisioningMutex) {
+                    if (provisioningBatch == batch) provisioningBatch = null;
+                }
+                synchronized (batch) {
+                    if (batch.resize == null) batch.abandoned = true;
+                    batch.notifyAll();
                 }
-                return obtain(flags);
             }
         }
 
-        // Now wait until the host has started up
-        Entities.waitForServiceUp(dockerHost);
+        return claimHost(batch);
+    }
 
-        // Obtain a new Docker container location, save and return it
+    private DockerHost claimHost(ProvisioningBatch batch) {
+        Tasks.setBlockingDetails("Waiting for new Docker hosts");
         try {
-            LOG.debug("Obtain a new container from {} for {}", machine, entity);
-            Map<?,?> hostFlags = MutableMap.copyOf(flags);
-            DockerContainerLocation container = machine.obtain(hostFlags);
-            containers.put(machine, container.getId());
-            return container;
+            synchronized (batch) {
+                while (batch.resize == null && !batch.abandoned) {
+                    batch.wait();
+                }
+                if (batch.abandoned) {
+                    throw new IllegalStateException("Provisioning new Docker hosts was interrupted");
+                }
+                // Claim the first new host with room as soon as it is up
+                while (true) {
+                    boolean done = batch.resize.isDone();
+                    for (Entity entity : getNewHosts(batch)) {
+                        if (!Boolean.TRUE.equals(entity.sensors().get(Startable.SERVICE_UP)) || isPullingImages((DockerHost) entity)) continue;
+                        int claims = batch.claims.count(entity.getId());
+                        if (claims < batch.capacity) {
+                            batch.claims.add(entity.getId());
+                            return (DockerHost) entity;
+                        }
+                    }
+                    if (done) break;
+                    batch.wait(CLAIM_POLL_PERIOD.toMilliseconds());
+                }
+            }
+            // No new host is left for this request, so report a failed resize or let placement try again
+            batch.resize.getUnchecked();
+            return null;
+        } catch (InterruptedException ie) {
+            throw Exceptions.propagate(ie);
         } finally {
-            // Release any placement strategy locks
-            for (DockerAwarePlacementStrategy strategy : Iterables.concat(strategies, entityStrategies)) {
-                if (strategy instanceof WithMutexes) {
-                    ((WithMutexes) strategy).releaseMutex(entity.getApplicationId());
+            Tasks.resetBlockingDetails();
+        }
+    }
+
+    /** The hosts added by the batch resize, or the members added since it started if it has not completed. */
+    private Iterable<Entity> getNewHosts(ProvisioningBatch batch) {
+        if (batch.resize.isDone() && !batch.resize.isError()) {
+            return batch.resize.getUnchecked();
+        }
+        if (batch.existing == null) {
+            return ImmutableList.of();
+        }
+        List<Entity> added = Lists.newArrayList();
+        for (Entity member : getOwner().getDockerHostCluster().getMembers()) {
+            if (!batch.existing.contains(member.getId())) added.add(member);
+        }
+        return added;
+    }
+
+    /** The number of containers that fit on a new host, from the {@link MaxContainersPlacementStrategy} if used, otherwise one. */
+    private int getHostCapacity() {
+        Optional<DockerAwarePlacementStrategy> lookup = Iterables.tryFind(strategies, Predicates.instanceOf(MaxContainersPlacementStrategy.class));
+        if (!lookup.isPresent()) return 1;
+        Integer maxContainers = getOwner().config().get(MaxContainersPlacementStrategy.DOCKER_CONTAINER_CLUSTER_MAX_SIZE);
+        if (maxContainers == null) {
+            maxContainers = ((MaxContainersPlacementStrategy) lookup.get()).config().get(MaxContainersPlacementStrategy.DOCKER_CONTAINER_CLUSTER_MAX_SIZE);
+        }
+        if (maxContainers == null) {
+            maxContainers = MaxContainersPlacementStrategy.DEFAULT_MAX_CONTAINERS;
+        }
+        return Math.max(1, maxContainers);
+    }
+
+    /** The resources requested by an entity, from the {@link BinPackingPlacementStrategy} if used. */
+    private Resources getRequest(Entity entity, Iterable<DockerAwarePlacementStrategy> strategies) {
+        Optional<DockerAwarePlacementStrategy> lookup = Iterables.tryFind(strategies, Predicates.instanceOf(BinPackingPlacementStrategy.class));
+        if (lookup.isPresent()) {
+            return ((BinPackingPlacementStrategy) lookup.get()).getRequest(entity);
+        }
+        Integer cpuShares = entity == null ? null : entity.config().get(DockerAttributes.DOCKER_CPU_SHARES);
+        Integer memory = entity == null ? null : entity.config().get(DockerAttributes.DOCKER_MEMORY);
+        return Resources.container(cpuShares != null ? cpuShares : 0, memory != null ? memory : 0);
+    }
+
+    /** Concurrent requests from members of a cluster that are placed together. */
+    private static class PlacementBatch {
+        private final List<Entity> requests = Lists.newArrayList();
+        private final Map<String, Placement> placements = Maps.newConcurrentMap();
+        private final Set<String> withdrawn = Sets.newConcurrentHashSet();
+        private final CountDownLatch placed = new CountDownLatch(1);
+    }
+
+    /** A host chosen for a request, with the capacity reserved there. */
+    protected static class Placement {
+        private final DockerHostLocation machine;
+        private final Reservation reservation;
+
+        private Placement(DockerHostLocation machine, Reservation reservation) {
+            this.machine = machine;
+            this.reservation = reservation;
+        }
+    }
+
+    /** Requests for new hosts that are served by the same resize of the host cluster. */
+    private static class ProvisioningBatch {
+        private final Multiset<String> claims = HashMultiset.create();
+        private int requests = 0;
+        private int capacity = 1;
+        private Task<Collection<Entity>> resize;
+        private Set<String> existing;
+        private boolean abandoned = false;
+    }
+
+    /** Resize the host cluster, keeping the headroom autoscaler minimum in step. */
+    private class ResizeHostCluster implements Callable<Collection<Entity>> {
+        private final ProvisioningBatch batch;
+        private final int delta;
+
+        private ResizeHostCluster(ProvisioningBatch batch, int delta) {
+            this.batch = batch;
+            this.delta = delta;
+        }
+
+        @Override
+        public Collection<Entity> call() {
+            // One resize at a time, so the members each batch sees as new were added by its own resize
+            synchronized (resizeMutex) {
+                return resize();
+            }
+        }
+
+        private Collection<Entity> resize() {
+            // Determine if headroom scaling policy is being used and suspend
+            Integer headroom = getOwner().config().get(ContainerHeadroomEnricher.CONTAINER_HEADROOM);
+            Double headroomPercent = getOwner().config().get(ContainerHeadroomEnricher.CONTAINER_HEADROOM_PERCENTAGE);
+            boolean headroomSet = (headroom != null && headroom > 0) || (headroomPercent != null && headroomPercent > 0d);
+            Optional<Policy> policy = Iterables.tryFind(getOwner().getDockerHostCluster().policies(), Predicates.instanceOf(AutoScalerPolicy.class));
+            if (headroomSet && policy.isPresent()) policy.get().suspend();
+
+            try {
+                // Record the current hosts, so requests can claim new ones as they come up
+                Set<String> existing = Sets.newHashSet();
+                for (Entity member : getOwner().getDockerHostCluster().getMembers()) {
+                    existing.add(member.getId());
+                }
+                synchronized (batch) {
+                    batch.existing = existing;
+                }
+
+                // Resize the host cluster
+                Collection<Entity> added = getOwner().getDockerHostCluster().resizeByDelta(delta);
+
+                // Update autoscaler policy with new minimum size and resume
+                if (headroomSet && policy.isPresent()) {
+                    int currentMin = policy.get().config().get(AutoScalerPolicy.MIN_POOL_SIZE);
+                    LOG.info("Updating autoscaler policy ({}) setting {} to {}",
+                            new Object[] { policy.get(), AutoScalerPolicy.MIN_POOL_SIZE.getName(), currentMin + delta });
+                    policy.get().config().set(AutoScalerPolicy.MIN_POOL_SIZE, currentMin + delta);
                 }
+                return added;
+            } finally {
+                if (policy.isPresent()) policy.get().resume();
             }
         }
     }
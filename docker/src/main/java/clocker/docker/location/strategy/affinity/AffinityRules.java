@@ -21,23 +21,27 @@ import java.util.Queue;
 
 import javax.annotation.Nullable;
 
+import clocker.docker.entity.util.DockerHostIndex;
 import clocker.docker.location.DockerHostLocation;
 
 import com.google.common.base.CharMatcher;
+import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
-import com.google.common.base.Predicates;
 import com.google.common.base.Splitter;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Queues;
 import com.google.common.reflect.TypeToken;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
 import org.apache.brooklyn.api.entity.Entity;
 import org.apache.brooklyn.config.ConfigKey;
 import org.apache.brooklyn.core.config.ConfigKeys;
-import org.apache.brooklyn.core.entity.EntityPredicates;
+import org.apache.brooklyn.util.exceptions.Exceptions;
 import org.apache.brooklyn.util.javalang.Reflections;
 
 /**
@@ -58,6 +62,12 @@ import org.apache.brooklyn.util.javalang.Reflections;
  * classpath, so ensure the appropriate Jar files are available. The <code>EMPTY</code> rule will treaty empty locations as allowable,
  * otherwise a new {@link DockerHostLocation} will be created for the container.
  * <p>
+ * Each rule is compiled once and cached by its text. Predicate classes are loaded and
+ * instantiated each time the rules are parsed, so their instances are never shared
+ * between entities, and are loaded by the class loader of the caller.
+ * Hosts are checked against the {@link DockerHostIndex.Summary summary} of the entities
+ * deployed there, using counts of matching entities where possible.
+ * <p>
  * To specify a rule that there must be no entities of the same type, an entity of type SolrServer, all in the same application,
  * use these rules:
  * <pre>
@@ -91,7 +101,17 @@ public class AffinityRules implements Predicate<Entity> {
     public static final String EMPTY = "EMPTY";
     public static final Iterable<String> VERBS = ImmutableList.of(TYPE, NAME, ID, APPLICATION, PREDICATE, EMPTY);
 
-    private Predicate<Entity> affinityRules = Predicates.alwaysTrue();
+    /** Compiled rules, keyed by the rule text. */
+    private static final LoadingCache<String, Rule> RULES = CacheBuilder.newBuilder()
+            .maximumSize(1024)
+            .build(new CacheLoader<String, Rule>() {
+                @Override
+                public Rule load(String rule) {
+                    return compile(rule);
+                }
+            });
+
+    private List<Rule> affinityRules = ImmutableList.of();
     private boolean allowEmpty = true;
 
     private final Entity entity;
@@ -113,28 +133,51 @@ public class AffinityRules implements Predicate<Entity> {
     }
 
     public AffinityRules parse(Iterable<String> rules) {
-        List<Predicate<Entity>> predicates = Lists.newArrayList();
+        ImmutableList.Builder<Rule> compiled = ImmutableList.builder();
         for (String rule : rules) {
-            Predicate<Entity> predicate = predicate(rule);
-            predicates.add(predicate);
+            Preconditions.checkNotNull(rule, "rule");
+            Rule predicate;
+            try {
+                predicate = RULES.getUnchecked(rule.trim());
+            } catch (UncheckedExecutionException e) {
+                throw Exceptions.propagate(e.getCause());
+            }
+            if (predicate.verb.equals(EMPTY)) {
+                allowEmpty = predicate.same;
+            } else if (predicate.verb.equals(PREDICATE)) {
+                compiled.add(predicate.withPredicate(instantiate(predicate.parameter)));
+            } else {
+                compiled.add(predicate);
+            }
         }
 
-        affinityRules = Predicates.and(predicates);
+        affinityRules = compiled.build();
         return this;
     }
 
-    private Predicate<Entity> predicate(String rule) {
-        Preconditions.checkNotNull(rule, "rule");
+    private static Predicate<Entity> instantiate(String predicateClass) {
+        try {
+            Class<?> clazz = Class.forName(predicateClass);
+            if (Reflections.hasNoArgConstructor(clazz)) {
+                return (Predicate<Entity>) Reflections.invokeConstructorWithArgs(clazz);
+            } else {
+                throw new IllegalStateException("Could not instantiate predicate: " + predicateClass);
+            }
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Could not find predicate: " + predicateClass);
+        }
+    }
+
+    private static Rule compile(String rule) {
         Queue<String> tokens = Queues.newArrayDeque(Splitter.on(CharMatcher.WHITESPACE)
                 .omitEmptyStrings()
                 .splitToList(rule));
 
         boolean same = true;
-        Predicate<Entity> predicate = Predicates.alwaysTrue();
 
         // Check first token for special values
         String first = tokens.peek();
-        if (first.equalsIgnoreCase(NOT)) {
+        if (first != null && first.equalsIgnoreCase(NOT)) {
             same = false;
             tokens.remove();
         }
@@ -144,72 +187,22 @@ public class AffinityRules implements Predicate<Entity> {
         if (verb == null) {
             throw new IllegalStateException("Affinity rule verb not specified: " + rule);
         } else {
-            if (Iterables.contains(VERBS, verb.toUpperCase(Locale.ENGLISH))) {
+            verb = verb.toUpperCase(Locale.ENGLISH);
+            if (Iterables.contains(VERBS, verb)) {
                 tokens.remove();
             } else {
                 throw new IllegalStateException("Affinity rule parser found unexpected verb token: " + verb);
             }
         }
 
-        // Check paramater and instantiate if required
-        final String parameter = tokens.peek();
+        // Check paramater; predicates are instantiated when parsed
+        String parameter = tokens.poll();
         if (parameter == null) {
-            if (verb.equalsIgnoreCase(EMPTY)) {
-                allowEmpty = same;
-                tokens.remove();
-                if (tokens.isEmpty()) {
-                    return predicate;
-                } else {
-                    throw new IllegalStateException("Affinity rule has extra tokens: " + rule);
-                }
-            } else if (verb.equalsIgnoreCase(TYPE)) {
-                predicate = new Predicate<Entity>() {
-                    @Override
-                    public boolean apply(@Nullable Entity input) {
-                        return input.getEntityType().getName().equalsIgnoreCase(entity.getEntityType().getName()) ||
-                                input.getEntityType().getSimpleName().equalsIgnoreCase(entity.getEntityType().getSimpleName());
-                    }
-                };
-            } else if (verb.equalsIgnoreCase(ID)) {
-                predicate = EntityPredicates.idEqualTo(entity.getId());
-            } else if (verb.equalsIgnoreCase(APPLICATION)) {
-                predicate = EntityPredicates.applicationIdEqualTo(entity.getApplicationId());
-            } else {
+            if (!(verb.equals(EMPTY) || verb.equals(TYPE) || verb.equals(ID) || verb.equals(APPLICATION))) {
                 throw new IllegalStateException("Affinity rule parameter not specified: " + rule);
             }
-        } else {
-            tokens.remove();
-            if (verb.equalsIgnoreCase(TYPE)) {
-                predicate = new Predicate<Entity>() {
-                    @Override
-                    public boolean apply(@Nullable Entity input) {
-                        return input.getEntityType().getName().equalsIgnoreCase(parameter) ||
-                                input.getEntityType().getSimpleName().equalsIgnoreCase(parameter);
-                    }
-                };
-            } else if (verb.equalsIgnoreCase(NAME)) {
-                predicate = new Predicate<Entity>() {
-                    @Override
-                    public boolean apply(@Nullable Entity input) {
-                        return input.getDisplayName().toLowerCase(Locale.ENGLISH).contains(parameter.toLowerCase(Locale.ENGLISH));
-                    }
-                };
-            } else if (verb.equalsIgnoreCase(ID)) {
-                predicate = EntityPredicates.idEqualTo(parameter);
-            } else if (verb.equalsIgnoreCase(APPLICATION)) {
-                predicate = EntityPredicates.applicationIdEqualTo(parameter);
-            } else if (verb.equalsIgnoreCase(PREDICATE)) {
-                try {
-                    Class<?> clazz = Class.forName(parameter);
-                    if (Reflections.hasNoArgConstructor(clazz)) {
-                        predicate = (Predicate<Entity>) Reflections.invokeConstructorWithArgs(clazz);
-                    } else {
-                        throw new IllegalStateException("Could not instantiate predicate: " + parameter);
-                    }
-                } catch (ClassNotFoundException e) {
-                    throw new IllegalStateException("Could not find predicate: " + parameter);
-                }
-            }
+        } else if (verb.equals(EMPTY)) {
+            throw new IllegalStateException("Affinity rule has extra tokens: " + rule);
         }
 
         // Check for left-over tokens
@@ -217,19 +210,103 @@ public class AffinityRules implements Predicate<Entity> {
             throw new IllegalStateException("Affinity rule has extra tokens: " + rule);
         }
 
-        // Create predicate and return
-        if (same) {
-            return predicate;
-        } else {
-            return Predicates.not(predicate);
-        }
+        return new Rule(same, verb, parameter, null);
     }
 
     @Override
     public boolean apply(@Nullable Entity input) {
-        return affinityRules.apply(input);
+        for (Rule rule : affinityRules) {
+            if (!rule.apply(entity, input)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Whether a host is acceptable, meaning all the entities deployed there satisfy
+     * the rules, or there are none and empty hosts are allowed.
+     */
+    public boolean apply(DockerHostIndex.Summary host) {
+        if (host.isEmpty()) return allowEmpty;
+        for (Rule rule : affinityRules) {
+            if (!rule.apply(entity, host)) return false;
+        }
+        return true;
     }
 
     public boolean allowEmptyLocations() { return allowEmpty; }
 
+    /**
+     * An immutable compiled rule. Rules without a parameter are applied using the
+     * properties of the entity being placed.
+     */
+    private static class Rule {
+        private final boolean same;
+        private final String verb;
+        private final String parameter;
+        private final Predicate<Entity> predicate;
+
+        private Rule(boolean same, String verb, @Nullable String parameter, @Nullable Predicate<Entity> predicate) {
+            this.same = same;
+            this.verb = verb;
+            this.parameter = parameter;
+            this.predicate = predicate;
+        }
+
+        /** A copy of a <code>PREDICATE</code> rule using the given instance. */
+        public Rule withPredicate(Predicate<Entity> instance) {
+            return new Rule(same, verb, parameter, instance);
+        }
+
+        /** Whether a single entity satisfies the rule. */
+        public boolean apply(Entity context, Entity input) {
+            return same == matches(context, input);
+        }
+
+        /** Whether every entity on a host satisfies the rule. */
+        public boolean apply(Entity context, DockerHostIndex.Summary host) {
+            int matches = count(context, host);
+            return same ? matches == host.size() : matches == 0;
+        }
+
+        private boolean matches(Entity context, Entity input) {
+            if (verb.equals(TYPE)) {
+                if (parameter == null) {
+                    return input.getEntityType().getName().equalsIgnoreCase(context.getEntityType().getName()) ||
+                            input.getEntityType().getSimpleName().equalsIgnoreCase(context.getEntityType().getSimpleName());
+                } else {
+                    return input.getEntityType().getName().equalsIgnoreCase(parameter) ||
+                            input.getEntityType().getSimpleName().equalsIgnoreCase(parameter);
+                }
+            } else if (verb.equals(NAME)) {
+                return input.getDisplayName().toLowerCase(Locale.ENGLISH).contains(parameter.toLowerCase(Locale.ENGLISH));
+            } else if (verb.equals(ID)) {
+                return input.getId().equals(parameter == null ? context.getId() : parameter);
+            } else if (verb.equals(APPLICATION)) {
+                return Objects.equal(input.getApplicationId(), parameter == null ? context.getApplicationId() : parameter);
+            } else if (verb.equals(PREDICATE)) {
+                return predicate.apply(input);
+            } else {
+                return true;
+            }
+        }
+
+        private int count(Entity context, DockerHostIndex.Summary host) {
+            if (verb.equals(TYPE)) {
+                // Entities of the same class as the context also share its simple name
+                return host.countType(parameter == null ? context.getEntityType().getSimpleName() : parameter);
+            } else if (verb.equals(NAME)) {
+                return host.countNameContaining(parameter);
+            } else if (verb.equals(ID)) {
+                return host.countId(parameter == null ? context.getId() : parameter);
+            } else if (verb.equals(APPLICATION)) {
+                String applicationId = parameter == null ? context.getApplicationId() : parameter;
+                return applicationId == null ? 0 : host.countApplication(applicationId);
+            } else if (verb.equals(PREDICATE)) {
+                return Iterables.size(Iterables.filter(host.getEntities(), predicate));
+            } else {
+                return host.size();
+            }
+        }
+    }
+
 }
@@ -21,6 +21,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import clocker.docker.entity.DockerHost;
+import clocker.docker.entity.util.DockerHostIndex;
 import clocker.docker.location.DockerHostLocation;
 import clocker.docker.location.strategy.AbstractDockerPlacementStrategy;
 
@@ -30,7 +31,6 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 
 import org.apache.brooklyn.api.entity.Entity;
-import org.apache.brooklyn.core.entity.EntityPredicates;
 
 /**
  * Docker host selection strategy using affinity rules to filter available hosts.
@@ -51,16 +51,9 @@ public class DockerAffinityRuleStrategy extends AbstractDockerPlacementStrategy
             Iterable<String> combined = Iterables.concat(Optional.presentInstances(ImmutableList.of(entityRules, hostRules, infrastructureRules)));
             AffinityRules rules = AffinityRules.rulesFor(entity).parse(combined);
 
-            Iterable<Entity> entities = getBrooklynManagementContext().getEntityManager().findEntities(EntityPredicates.locationsIncludes(machine));
-            if (Iterables.isEmpty(entities)) {
-                if (rules.allowEmptyLocations()) {
-                    available.add(machine);
-                }
-            } else {
-                Iterable<Entity> filtered = Iterables.filter(entities, rules);
-                if (Iterables.size(filtered) == Iterables.size(entities)) {
-                    available.add(machine);
-                }
+            DockerHostIndex.Summary summary = machine.getDockerInfrastructure().getHostIndex().getSummary(machine.getOwner().getId());
+            if (rules.apply(summary)) {
+                available.add(machine);
             }
         }
 
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2014-2016 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package clocker.docker.location.strategy.basic;
+
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import clocker.docker.entity.container.DockerContainer;
+import clocker.docker.entity.util.DockerAttributes;
+import clocker.docker.entity.util.DockerHostReservations.Resources;
+import clocker.docker.location.DockerHostLocation;
+import clocker.docker.location.strategy.AbstractDockerPlacementStrategy;
+
+import com.google.common.base.Functions;
+import com.google.common.base.Optional;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+
+import org.apache.brooklyn.api.entity.Entity;
+import org.apache.brooklyn.api.location.HardwareDetails;
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.core.config.ConfigKeys;
+import org.apache.brooklyn.util.core.flags.SetFromFlag;
+
+/**
+ * Placement strategy that packs containers onto Docker hosts by their CPU share
+ * and memory requests.
+ * <p>
+ * The capacity of a host is {@link #CPU_SHARES_PER_CORE} shares for each core,
+ * scaled by {@link #CPU_OVERCOMMIT}, and its total memory. A host is accepted if
+ * the resources requested by the containers already there, plus those reserved
+ * by placements in progress, leave room for the new container. Accepted hosts
+ * are ordered by the fraction of their capacity left after placement, least
+ * first for {@link FitPolicy#BEST_FIT best fit} and most first for
+ * {@link FitPolicy#WORST_FIT worst fit}.
+ * <p>
+ * Containers without a {@link DockerAttributes#DOCKER_CPU_SHARES} or
+ * {@link DockerAttributes#DOCKER_MEMORY} request are counted with the default
+ * requests configured here.
+ */
+public class BinPackingPlacementStrategy extends AbstractDockerPlacementStrategy {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BinPackingPlacementStrategy.class);
+
+    public enum FitPolicy {
+        /** Fill the fullest host that has room, leaving whole hosts free for large containers. */
+        BEST_FIT,
+        /** Spread containers onto the emptiest hosts. */
+        WORST_FIT
+    }
+
+    @SetFromFlag("fitPolicy")
+    public static final ConfigKey<FitPolicy> FIT_POLICY = ConfigKeys.newConfigKey(FitPolicy.class,
+            "docker.placement.binPacking.policy", "Bin-packing policy for choosing between hosts with room", FitPolicy.BEST_FIT);
+
+    @SetFromFlag("cpuSharesPerCore")
+    public static final ConfigKey<Integer> CPU_SHARES_PER_CORE = ConfigKeys.newIntegerConfigKey(
+            "docker.placement.binPacking.cpuSharesPerCore", "CPU shares available for each core on a host", 1024);
+
+    @SetFromFlag("cpuOvercommit")
+    public static final ConfigKey<Double> CPU_OVERCOMMIT = ConfigKeys.newDoubleConfigKey(
+            "docker.placement.binPacking.cpuOvercommit", "Ratio of CPU shares that may be allocated to the CPU shares available on a host", 1.0d);
+
+    @SetFromFlag("defaultCpuShares")
+    public static final ConfigKey<Integer> DEFAULT_CPU_SHARES = ConfigKeys.newIntegerConfigKey(
+            "docker.placement.binPacking.defaultCpuShares", "CPU shares counted for containers without a request", 256);
+
+    @SetFromFlag("defaultMemory")
+    public static final ConfigKey<Integer> DEFAULT_MEMORY = ConfigKeys.newIntegerConfigKey(
+            "docker.placement.binPacking.defaultMemory", "Memory (MB) counted for containers without a request", 256);
+
+    @Override
+    public List<DockerHostLocation> filterLocations(List<DockerHostLocation> locations, Entity context) {
+        if (locations == null || locations.isEmpty()) {
+            return ImmutableList.of();
+        }
+
+        Resources request = getRequest(context);
+        Map<DockerHostLocation, Double> free = Maps.newHashMap();
+        for (DockerHostLocation location : locations) {
+            Double remaining = getRemaining(location, request);
+            if (remaining != null) free.put(location, remaining);
+        }
+
+        Ordering<DockerHostLocation> ordering = Ordering.natural().onResultOf(Functions.forMap(free));
+        if (config().get(FIT_POLICY) == FitPolicy.WORST_FIT) ordering = ordering.reverse();
+        return ImmutableList.copyOf(ordering.sortedCopy(Iterables.filter(locations, Predicates.in(free.keySet()))));
+    }
+
+    /**
+     * The fraction of a host's capacity left after placing the request, averaged
+     * over CPU shares and memory, or {@code null} if the request does not fit.
+     */
+    protected Double getRemaining(DockerHostLocation location, Resources request) {
+        Optional<Resources> capacity = getCapacity(location);
+        if (!capacity.isPresent()) {
+            LOG.debug("Location {} hardware unknown, rejected", location);
+            return null;
+        }
+        long cpuCapacity = capacity.get().getCpuShares();
+        long memoryCapacity = capacity.get().getMemory();
+
+        Resources used = location.getDockerInfrastructure().getHostReservations().getReserved(location.getOwner().getId())
+                .plus(request)
+                .plus(getUsage(location));
+
+        long cpuFree = cpuCapacity - used.getCpuShares();
+        long memoryFree = memoryCapacity - used.getMemory();
+        boolean accept = cpuFree >= 0 && memoryFree >= 0;
+        LOG.debug("Location {} has {}/{} shares and {}/{} MB free after placement: {}",
+                new Object[] { location, cpuFree, cpuCapacity, memoryFree, memoryCapacity, accept ? "accepted" : "rejected" });
+        if (!accept) return null;
+        return ((double) cpuFree / (double) Math.max(1L, cpuCapacity) + (double) memoryFree / (double) Math.max(1L, memoryCapacity)) / 2d;
+    }
+
+    /**
+     * The most CPU shares and memory that may be reserved on a host, given the
+     * containers already there.
+     */
+    public Resources getLimit(DockerHostLocation location) {
+        Optional<Resources> capacity = getCapacity(location);
+        if (!capacity.isPresent()) return Resources.UNLIMITED;
+        Resources usage = getUsage(location);
+        return new Resources(Integer.MAX_VALUE,
+                Math.max(0L, capacity.get().getCpuShares() - usage.getCpuShares()),
+                Math.max(0L, capacity.get().getMemory() - usage.getMemory()));
+    }
+
+    /** The CPU shares and memory of a host, or absent if its hardware is unknown. */
+    private Optional<Resources> getCapacity(DockerHostLocation location) {
+        HardwareDetails hardware = location.getMachine().getMachineDetails().getHardwareDetails();
+        Integer cores = hardware.getCpuCount();
+        Integer ram = hardware.getRam();
+        if (cores == null || ram == null) return Optional.absent();
+        long cpuCapacity = (long) (cores * config().get(CPU_SHARES_PER_CORE) * config().get(CPU_OVERCOMMIT));
+        return Optional.of(new Resources(0, cpuCapacity, ram));
+    }
+
+    /** The resources used by the containers on a host. */
+    private Resources getUsage(DockerHostLocation location) {
+        Resources used = Resources.NONE;
+        for (Entity container : location.getOwner().getDockerContainerList()) {
+            used = used.plus(getUsage((DockerContainer) container));
+        }
+        return used;
+    }
+
+    /**
+     * The resources requested for an entity, using the defaults for any that
+     * are not configured.
+     */
+    public Resources getRequest(Entity entity) {
+        Integer cpuShares = entity == null ? null : entity.config().get(DockerAttributes.DOCKER_CPU_SHARES);
+        Integer memory = entity == null ? null : entity.config().get(DockerAttributes.DOCKER_MEMORY);
+        return Resources.container(
+                cpuShares != null ? cpuShares : config().get(DEFAULT_CPU_SHARES),
+                memory != null ? memory : config().get(DEFAULT_MEMORY));
+    }
+
+    /** The resources used by a container, as requested by its entity or the container itself. */
+    private Resources getUsage(DockerContainer container) {
+        Integer cpuShares = null, memory = null;
+        Entity entity = container.getRunningEntity();
+        if (entity != null) {
+            cpuShares = entity.config().get(DockerAttributes.DOCKER_CPU_SHARES);
+            memory = entity.config().get(DockerAttributes.DOCKER_MEMORY);
+        }
+        if (cpuShares == null) cpuShares = container.config().get(DockerContainer.DOCKER_CPU_SHARES);
+        if (memory == null) memory = container.config().get(DockerContainer.DOCKER_MEMORY);
+        return Resources.container(
+                cpuShares != null ? cpuShares : config().get(DEFAULT_CPU_SHARES),
+                memory != null ? memory : config().get(DEFAULT_MEMORY));
+    }
+
+}
@@ -21,19 +21,22 @@ import static clocker.docker.location.strategy.util.StrategyPredicates.nonEmpty;
 
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
 
 import javax.annotation.concurrent.ThreadSafe;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import clocker.docker.entity.util.DockerHostReservations;
+import clocker.docker.entity.util.DockerHostReservations.Claim;
 import clocker.docker.location.DockerHostLocation;
 import clocker.docker.location.strategy.AbstractDockerPlacementStrategy;
 import clocker.docker.location.strategy.DockerAwarePlacementStrategy;
 
 import com.google.common.annotations.Beta;
 import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.reflect.TypeToken;
@@ -43,11 +46,7 @@ import org.apache.brooklyn.api.entity.Entity;
 import org.apache.brooklyn.config.ConfigKey;
 import org.apache.brooklyn.core.config.ConfigKeys;
 import org.apache.brooklyn.util.collections.MutableList;
-import org.apache.brooklyn.util.collections.MutableMap;
 import org.apache.brooklyn.util.core.flags.SetFromFlag;
-import org.apache.brooklyn.util.core.mutex.WithMutexes;
-import org.apache.brooklyn.util.core.task.Tasks;
-import org.apache.brooklyn.util.exceptions.Exceptions;
 import org.apache.brooklyn.util.time.Duration;
 
 /**
@@ -58,15 +57,18 @@ import org.apache.brooklyn.util.time.Duration;
  * Can be configured to require exclusive use of the host with the
  * {@link #REQUIRE_EXCLUSIVE exclusive} ({@code docker.constraint.exclusive})
  * option set to {@code true}; normally {@code false}.
+ * <p>
+ * Concurrent placements are kept consistent by the {@link #getClaims(Entity, String) claims}
+ * held by their {@link DockerHostReservations reservations}, rather than by
+ * serialising all placements for an application.
  *
  * @since 1.1.0
  */
 @Beta
 @ThreadSafe
-public class GroupPlacementStrategy extends AbstractDockerPlacementStrategy implements WithMutexes {
+public class GroupPlacementStrategy extends AbstractDockerPlacementStrategy {
 
     private static final Logger LOG = LoggerFactory.getLogger(GroupPlacementStrategy.class);
-    private static final Object LOCK = new Object[0];
 
     @SetFromFlag("exclusive")
     public static final ConfigKey<Boolean> REQUIRE_EXCLUSIVE = ConfigKeys.newBooleanConfigKey(
@@ -74,113 +76,99 @@ public class GroupPlacementStrategy extends AbstractDockerPlacementStrategy impl
             "Whether the Docker host must be exclusive to this application; by default other applications can co-exist",
             Boolean.FALSE);
 
+    /** @deprecated since 1.2.0; placements are no longer serialised, see {@code DockerLocation#RESERVATION_TIMEOUT} */
+    @Deprecated
     @SetFromFlag("timeout")
     public static final ConfigKey<Duration> STRATEGY_TIMEOUT = ConfigKeys.newDurationConfigKey(
             "docker.strategy.timeout",
             "How long to wait for other entities using the strategy",
             Duration.minutes(20));
 
+    /** @deprecated since 1.2.0; no longer used */
+    @Deprecated
     public static final ConfigKey<Map<String, Monitor>> MONITOR_MAP = ConfigKeys.newConfigKey(
             new TypeToken<Map<String, Monitor>>() { },
             "groupPlacementStrategy.map.monitors",
             "A mapping from application IDs to monitors; used to synchronize threads during strategy execution.");
 
     @Override
-    public List<DockerHostLocation> filterLocations(List<DockerHostLocation> locations, Entity entity) {
+    public List<DockerHostLocation> filterLocations(List<DockerHostLocation> locations, final Entity entity) {
         if (locations == null || locations.isEmpty()) {
             return ImmutableList.of();
         }
         if (getDockerInfrastructure() == null) config().set(DOCKER_INFRASTRUCTURE, Iterables.getLast(locations).getDockerInfrastructure());
+        final DockerHostReservations reservations = getDockerInfrastructure().getHostReservations();
         List<DockerHostLocation> available = MutableList.copyOf(locations);
         boolean requireExclusive = config().get(REQUIRE_EXCLUSIVE);
 
-        try {
-            Tasks.setBlockingDetails("Waiting for access to Docker hosts for placement");
-            acquireMutex(entity.getApplicationId(), "Filtering locations for " + entity);
-        } catch (InterruptedException ie) {
-            Exceptions.propagate(ie); // Should never happen...
-        } finally {
-            Tasks.resetBlockingDetails();
+        // Find hosts with entities from our application deployed or being placed there
+        Predicate<DockerHostLocation> sameApplication = Predicates.or(hasApplicationId(entity.getApplicationId()),
+                new Predicate<DockerHostLocation>() {
+                    @Override
+                    public boolean apply(DockerHostLocation input) {
+                        return reservations.getOwner(hostKey(input.getOwner().getId(), entity)).isPresent();
+                    }
+                });
+
+        // Check if hosts have any deployed or reserved entities that share a parent with the input entity
+        Predicate<DockerHostLocation> sameParent = childrenOf(entity.getParent());
+        if (entity.getParent() != null) {
+            Optional<String> claimed = reservations.getOwner(groupKey(entity));
+            if (claimed.isPresent()) {
+                sameParent = Predicates.or(sameParent, hostIdEqualTo(claimed.get()));
+            }
         }
-
-        // Find hosts with entities from our application deployed there
-        Iterable<DockerHostLocation> sameApplication = Iterables.filter(available, hasApplicationId(entity.getApplicationId()));
-
-        // Check if hosts have any deployed entities that share a parent with the input entity
-        Optional<DockerHostLocation> sameParent = Iterables.tryFind(sameApplication, childrenOf(entity.getParent()));
-        if (sameParent.isPresent()) {
-            LOG.debug("Returning {} (same parent) for {} placement", sameParent.get(), entity);
-            return ImmutableList.copyOf(sameParent.asSet());
+        Optional<DockerHostLocation> parentHost = Iterables.tryFind(Iterables.filter(available, sameApplication), sameParent);
+        if (parentHost.isPresent()) {
+            LOG.debug("Returning {} (same parent) for {} placement", parentHost.get(), entity);
+            return ImmutableList.copyOf(parentHost.asSet());
         }
 
         // Remove hosts if they have any entities from our application deployed there
-        Iterables.removeIf(available, hasApplicationId(entity.getApplicationId()));
+        Iterables.removeIf(available, sameApplication);
         if (requireExclusive) {
-            Iterables.removeIf(available, nonEmpty());
+            Iterables.removeIf(available, Predicates.or(nonEmpty(), new Predicate<DockerHostLocation>() {
+                @Override
+                public boolean apply(DockerHostLocation input) {
+                    return reservations.getReserved(input.getOwner().getId()).getContainers() > 0;
+                }
+            }));
         }
         LOG.debug("Returning {} for {} placement", Iterables.toString(available), entity);
         return available;
     }
 
     /**
-     * Look up the {@link Monitor} for an application.
-     *
-     * @return {@code null} if the monitor has not been created yet
+     * The claims a reservation for an entity on a host must hold, so that
+     * concurrent placements with the same parent use one host, and with
+     * different parents in the same application use different hosts.
      */
-    protected Monitor lookupMonitor(String mutexId) {
-        synchronized (LOCK) {
-            Map<String, Monitor> map = getDockerInfrastructure().config().get(MONITOR_MAP);
-            return (map != null) ? map.get(mutexId) : null;
+    public List<Claim> getClaims(Entity entity, String hostId) {
+        if (entity.getParent() == null) return ImmutableList.of();
+        ImmutableList.Builder<Claim> claims = ImmutableList.builder();
+        claims.add(new Claim(groupKey(entity), hostId));
+        claims.add(new Claim(hostKey(hostId, entity), entity.getParent().getId()));
+        if (config().get(REQUIRE_EXCLUSIVE)) {
+            claims.add(new Claim("exclusive:" + hostId, entity.getApplicationId()));
         }
+        return claims.build();
     }
 
-    /**
-     * Create a new {@link Monitor} and optionally the {@link #MONITOR_MAP map}
-     * for an application. Uses existing monitor if it already exists.
-     *
-     * @return The monitor for the scope that is stored in the {@link Map map}.
-     */
-    protected Monitor createMonitor(String mutexId) {
-        synchronized (LOCK) {
-            Map<String, Monitor> map = getDockerInfrastructure().config().get(MONITOR_MAP);
-            if (map == null) {
-                map = MutableMap.<String, Monitor>of();
-            }
-
-            if (!map.containsKey(mutexId)) {
-                map.put(mutexId, new Monitor());
-                getDockerInfrastructure().config().set(MONITOR_MAP, map);
-            }
-            Monitor monitor = map.get(mutexId);
-
-            return monitor;
-        }
+    private static String groupKey(Entity entity) {
+        return "group:" + entity.getApplicationId() + ":" + entity.getParent().getId();
     }
 
-    @Override
-    public boolean hasMutex(String mutexId) { throw new UnsupportedOperationException(); }
-
-    @Override
-    public void acquireMutex(String mutexId, String description) throws InterruptedException {
-        LOG.debug("Enter monitor {}: {}", mutexId, description);
-        Monitor monitor = createMonitor(mutexId);
-        Duration timeout = config().get(STRATEGY_TIMEOUT);
-        monitor.enter(timeout.toMilliseconds(), TimeUnit.MILLISECONDS);
+    private static String hostKey(String hostId, Entity entity) {
+        return "host:" + hostId + ":" + entity.getApplicationId();
     }
 
-    @Override
-    public boolean tryAcquireMutex(String mutexId, String description) {
-        LOG.debug("Try to enter monitor {}: {}", mutexId, description);
-        Monitor monitor = createMonitor(mutexId);
-        return monitor.tryEnter();
+    private static Predicate<DockerHostLocation> hostIdEqualTo(final String hostId) {
+        return new Predicate<DockerHostLocation>() {
+            @Override
+            public boolean apply(DockerHostLocation input) {
+                return input.getOwner().getId().equals(hostId);
+            }
+        };
     }
 
-    @Override
-    public void releaseMutex(String mutexId) {
-        LOG.debug("Leaving monitor {}", mutexId);
-        Monitor monitor = lookupMonitor(mutexId);
-        if (monitor != null && monitor.isOccupiedByCurrentThread()) {
-            monitor.leave();
-        }
-    }
 }
@@ -28,11 +28,14 @@ public class LeastContainersPlacementStrategy extends BasicDockerPlacementStrate
 
     @Override
     public int compare(DockerHostLocation l1, DockerHostLocation l2) {
-        Integer size1 = l1.getOwner().sensors().get(DockerHost.DOCKER_CONTAINER_CLUSTER).sensors().get(BasicGroup.GROUP_SIZE);
-        if (size1 == null) size1 = 0;
-        Integer size2 = l2.getOwner().sensors().get(DockerHost.DOCKER_CONTAINER_CLUSTER).sensors().get(BasicGroup.GROUP_SIZE);
-        if (size2 == null) size2 = 0;
-        return size1.compareTo(size2);
+        return Integer.compare(getSize(l1), getSize(l2));
+    }
+
+    /** The containers on a host, including those reserved by placements in progress. */
+    private int getSize(DockerHostLocation location) {
+        Integer size = location.getOwner().sensors().get(DockerHost.DOCKER_CONTAINER_CLUSTER).sensors().get(BasicGroup.GROUP_SIZE);
+        int reserved = location.getDockerInfrastructure().getHostReservations().getReserved(location.getOwner().getId()).getContainers();
+        return (size == null ? 0 : size) + reserved;
     }
 
 }
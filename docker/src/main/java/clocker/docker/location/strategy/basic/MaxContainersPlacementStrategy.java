@@ -20,6 +20,7 @@ import org.slf4j.LoggerFactory;
 
 import clocker.docker.entity.DockerHost;
 import clocker.docker.entity.DockerInfrastructure;
+import clocker.docker.entity.util.DockerHostReservations.Resources;
 import clocker.docker.location.DockerHostLocation;
 import clocker.docker.location.strategy.BasicDockerPlacementStrategy;
 
@@ -33,6 +34,7 @@ import org.apache.brooklyn.util.core.flags.SetFromFlag;
  * <p>
  * Maximum is configured using {@link #DOCKER_CONTAINER_CLUSTER_MAX_SIZE} with settings on
  * the infrastructure overriding if set, if nothing is configured the default is used.
+ * Containers reserved on a host by placements in progress count towards the maximum.
  */
 public class MaxContainersPlacementStrategy extends BasicDockerPlacementStrategy {
 
@@ -47,18 +49,32 @@ public class MaxContainersPlacementStrategy extends BasicDockerPlacementStrategy
 
     @Override
     public boolean apply(DockerHostLocation input) {
+        int maxSize = getMaxSize();
+        int currentSize = getCurrentSize(input);
+        currentSize += input.getDockerInfrastructure().getHostReservations().getReserved(input.getOwner().getId()).getContainers();
+        boolean accept = currentSize < maxSize;
+        LOG.debug("Location {} size is {}/{}: {}", new Object[] { input, currentSize, maxSize, accept ? "accepted" : "rejected" });
+        return accept;
+    }
+
+    /** The most containers that may be reserved on a host, given those already there. */
+    public Resources getLimit(DockerHostLocation location) {
+        return new Resources(Math.max(0, getMaxSize() - getCurrentSize(location)), Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    private int getMaxSize() {
         Integer maxSize = config().get(DOCKER_CONTAINER_CLUSTER_MAX_SIZE);
         DockerInfrastructure infrastructure = config().get(DOCKER_INFRASTRUCTURE);
         if (infrastructure != null) {
             Integer infrastructureMax = infrastructure.config().get(DOCKER_CONTAINER_CLUSTER_MAX_SIZE);
             if (infrastructureMax != null) maxSize = infrastructureMax;
         }
-        if (maxSize == null) maxSize = DEFAULT_MAX_CONTAINERS;
+        return maxSize == null ? DEFAULT_MAX_CONTAINERS : maxSize;
+    }
 
-        Integer currentSize = input.getOwner().sensors().get(DockerHost.DOCKER_CONTAINER_CLUSTER).sensors().get(BasicGroup.GROUP_SIZE);
-        boolean accept = currentSize < maxSize;
-        LOG.debug("Location {} size is {}/{}: {}", new Object[] { input, currentSize, maxSize, accept ? "accepted" : "rejected" });
-        return accept;
+    private int getCurrentSize(DockerHostLocation location) {
+        Integer currentSize = location.getOwner().sensors().get(DockerHost.DOCKER_CONTAINER_CLUSTER).sensors().get(BasicGroup.GROUP_SIZE);
+        return currentSize == null ? 0 : currentSize;
     }
 
 }
@@ -18,17 +18,13 @@ package clocker.docker.location.strategy.util;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import clocker.docker.entity.container.DockerContainer;
+import clocker.docker.entity.util.DockerHostIndex;
 import clocker.docker.location.DockerHostLocation;
 
 import com.google.common.annotations.Beta;
 import com.google.common.base.Predicate;
-import com.google.common.base.Predicates;
-import com.google.common.collect.Iterables;
 
 import org.apache.brooklyn.api.entity.Entity;
-import org.apache.brooklyn.core.entity.EntityFunctions;
-import org.apache.brooklyn.core.entity.EntityPredicates;
 
 /**
  * A number of {@link Predicate predicates} that check for properties of
@@ -62,12 +58,8 @@ public class StrategyPredicates {
 
         @Override
         public boolean apply(DockerHostLocation input) {
-            Iterable<Entity> deployed = Iterables.filter(
-                    Iterables.transform(input.getDockerContainerList(), EntityFunctions.config(DockerContainer.ENTITY.getConfigKey())),
-                    Predicates.notNull());
-
-            Iterable<Entity> sameParent = Iterables.filter(deployed, EntityPredicates.isChildOf(parent));
-            if (Iterables.isEmpty(sameParent)) {
+            DockerHostIndex index = input.getDockerInfrastructure().getHostIndex();
+            if (parent == null || !index.hasChildrenOf(input.getOwner().getId(), parent.getId())) {
                 LOG.debug("No entities with parent {} on {}", parent, input );
                 return false;
             } else {
@@ -95,12 +87,8 @@ public class StrategyPredicates {
 
         @Override
         public boolean apply(DockerHostLocation input) {
-            Iterable<Entity> deployed = Iterables.filter(
-                    Iterables.transform(input.getDockerContainerList(), EntityFunctions.config(DockerContainer.ENTITY.getConfigKey())),
-                    Predicates.notNull());
-
-            Iterable<Entity> sameApplication = Iterables.filter(deployed, EntityPredicates.applicationIdEqualTo(applicationId));
-            if (Iterables.isEmpty(sameApplication)) {
+            DockerHostIndex index = input.getDockerInfrastructure().getHostIndex();
+            if (!index.hasApplication(input.getOwner().getId(), applicationId)) {
                 LOG.debug("No entities with application id {} on {}", applicationId, input);
                 return false;
             } else {
@@ -122,11 +110,8 @@ public class StrategyPredicates {
     public static class NonEmptyPredicate implements Predicate<DockerHostLocation> {
         @Override
         public boolean apply(DockerHostLocation input) {
-            Iterable<Entity> deployed = Iterables.filter(
-                    Iterables.transform(input.getDockerContainerList(), EntityFunctions.config(DockerContainer.ENTITY.getConfigKey())),
-                    Predicates.notNull());
-
-            return Iterables.size(deployed) > 0;
+            DockerHostIndex index = input.getDockerInfrastructure().getHostIndex();
+            return index.getEntities(input.getOwner().getId()).size() > 0;
         }
     }
 
@@ -66,6 +66,12 @@ public interface VirtualNetwork extends BasicStartable {
     AttributeSensor<Set<Entity>> CONNECTED_CONTAINERS = Sensors.newSensor(new TypeToken<Set<Entity>>() { },
             "network.connected.containers", "The set of containers that are connected to this network");
 
+    AttributeSensor<Integer> UNMANAGED_ENDPOINTS = Sensors.newIntegerSensor("network.endpoints.unmanaged",
+            "Number of endpoints on this network for containers not managed by Clocker, watched in etcd");
+
+    AttributeSensor<Boolean> NETWORK_DELETING = Sensors.newBooleanSensor("network.deleting",
+            "Set while the network is being deleted after its last container disconnected");
+
     RelationshipType<Entity, Entity> ATTACHED = RelationshipTypes.newRelationshipPair("network", "networks", Entity.class, "attached", "container", "containers", Entity.class, "conected");
     RelationshipType<Entity, Entity> CONNECTED = ATTACHED.getInverseRelationshipType();
 
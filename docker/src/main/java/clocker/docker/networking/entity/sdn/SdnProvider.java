@@ -44,13 +44,23 @@ public interface SdnProvider extends BasicStartable, NetworkProvisioningExtensio
     ConfigKey<Integer> CONTAINER_NETWORK_SIZE = ConfigKeys.newIntegerConfigKey("sdn.network.size", "Size of network subnets as CIDR length (e.g. 24 for 254 hosts)", 24);
 
     AttributeSensor<Integer> ALLOCATED_NETWORKS = Sensors.newIntegerSensor("sdn.networks.allocated", "Number of allocated networks");
+    AttributeSensor<String> SUBNET_CIDR_ALLOCATIONS = Sensors.newStringSensor("sdn.networks.cidrs", "Encoded list of subnet CIDRs allocated from the pool");
+    AttributeSensor<Double> SUBNET_UTILISATION = Sensors.newDoubleSensor("sdn.networks.utilisation", "Fraction of the pool CIDR allocated to subnets");
+    AttributeSensor<Double> SUBNET_UTILISATION_PEAK = Sensors.newDoubleSensor("sdn.networks.utilisation.peak", "Peak fraction of the pool CIDR allocated to subnets");
 
     AttributeSensor<Map<String, Cidr>> SUBNETS = Sensors.newSensor(
             new TypeToken<Map<String, Cidr>>() { }, "sdn.networks.addresses", "Map of network subnets that have been created");
     AttributeSensor<Map<String, VirtualNetwork>> SUBNET_ENTITIES = Sensors.newSensor(
             new TypeToken<Map<String, VirtualNetwork>>() { }, "sdn.networks.entities", "Map of managed network entities that have been created by this SDN");
-    AttributeSensor<Map<String, List<InetAddress>>> SUBNET_ADDRESS_ALLOCATIONS = Sensors.newSensor(
-            new TypeToken<Map<String, List<InetAddress>>>() { }, "sdn.networks.addresses.allocated", "Map of allocated address count on network subnets");
+    AttributeSensor<Map<String, String>> SUBNET_ADDRESS_ALLOCATIONS = Sensors.newSensor(
+            new TypeToken<Map<String, String>>() { }, "sdn.networks.addresses.bitmap", "Map of network subnets to their encoded address allocation bitmaps");
+
+    /**
+     * @deprecated since 1.2.0; use {@link #SUBNET_ADDRESS_ALLOCATIONS}, only read to restore the allocations persisted by earlier versions
+     */
+    @Deprecated
+    AttributeSensor<Map<String, List<InetAddress>>> ALLOCATED_SUBNET_ADDRESSES = Sensors.newSensor(
+            new TypeToken<Map<String, List<InetAddress>>>() { }, "sdn.networks.addresses.allocated", "Map of allocated addresses on network subnets");
 
     AttributeSensor<Multimap<String, InetAddress>> CONTAINER_ADDRESSES = Sensors.newSensor(
             new TypeToken<Multimap<String, InetAddress>>() { }, "sdn.container.addresses", "Map of container ID to IP addresses on network");
@@ -66,6 +76,11 @@ public interface SdnProvider extends BasicStartable, NetworkProvisioningExtensio
 
     void associateContainerAddress(String containerId, InetAddress address);
 
+    /**
+     * Return all addresses associated with a container to their subnets.
+     */
+    void releaseContainerAddresses(String containerId);
+
     /* Access for network subnet CIDRs this SDN provder manages. */
 
     Cidr getNextSubnetCidr(String subnetId);
@@ -74,6 +89,11 @@ public interface SdnProvider extends BasicStartable, NetworkProvisioningExtensio
 
     void recordSubnetCidr(String subnetId, Cidr subnetCidr);
 
+    /**
+     * Return the CIDR of a deleted subnet to the pool.
+     */
+    void releaseSubnetCidr(String subnetId);
+
     Cidr getSubnetCidr(String subnetId);
 
     Object getNetworkMutex();
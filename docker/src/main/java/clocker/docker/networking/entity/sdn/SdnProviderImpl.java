@@ -19,6 +19,7 @@ import java.net.InetAddress;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,12 +27,14 @@ import org.slf4j.LoggerFactory;
 import clocker.docker.entity.DockerHost;
 import clocker.docker.entity.DockerInfrastructure;
 import clocker.docker.networking.entity.VirtualNetwork;
+import clocker.docker.networking.entity.sdn.util.ContainerAddressAllocator;
+import clocker.docker.networking.entity.sdn.util.NetworkEndpointWatcher;
+import clocker.docker.networking.entity.sdn.util.SubnetCidrAllocator;
 import clocker.docker.networking.location.NetworkProvisioningExtension;
 
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Multimap;
 
 import org.apache.brooklyn.api.entity.Entity;
 import org.apache.brooklyn.api.entity.EntitySpec;
@@ -54,15 +57,24 @@ public abstract class SdnProviderImpl extends BasicStartableImpl implements Dock
 
     private static final Logger LOG = LoggerFactory.getLogger(SdnProvider.class);
 
-    /** Held while obtaining new IP addresses for containers. */
+    /** Held while obtaining new IP addresses for agents. */
     protected transient final Object addressMutex = new Object[0];
 
+    /** Allocates container addresses on each subnet. */
+    protected transient final ContainerAddressAllocator containerAddresses = new ContainerAddressAllocator(this);
+
     /** Held while adding or removing new {@link SdnAgent} entities on hosts. */
     protected transient final Object hostMutex = new Object[0];
 
     /** Mutex for provisioning new networks */
     protected transient final Object networkMutex = new Object[0];
 
+    /** Allocator for subnet CIDRs from the pool, guarded by the {@link #networkMutex}. */
+    protected transient SubnetCidrAllocator subnetAllocator;
+
+    /** Watchers for the endpoints attached to each managed network. */
+    protected transient final ConcurrentMap<String, NetworkEndpointWatcher> endpointWatchers = Maps.newConcurrentMap();
+
     @Override
     public void init() {
         LOG.info("Starting SDN provider id {}", getId());
@@ -86,12 +98,12 @@ public abstract class SdnProviderImpl extends BasicStartableImpl implements Dock
         synchronized (addressMutex) {
             sensors().set(ALLOCATED_IPS, 0);
             sensors().set(ALLOCATED_ADDRESSES, Maps.<String, InetAddress>newConcurrentMap());
-            sensors().set(SUBNET_ADDRESS_ALLOCATIONS, Maps.<String, List<InetAddress>>newConcurrentMap());
+            sensors().set(SUBNET_ADDRESS_ALLOCATIONS, Maps.<String, String>newConcurrentMap());
         }
 
         synchronized (networkMutex) {
-            sensors().set(ALLOCATED_NETWORKS, 0);
             sensors().set(SUBNETS, Maps.<String, Cidr>newConcurrentMap());
+            persistSubnetAllocator(getSubnetAllocator());
         }
 
         sensors().set(SUBNET_ENTITIES, Maps.<String, VirtualNetwork>newConcurrentMap());
@@ -114,48 +126,22 @@ public abstract class SdnProviderImpl extends BasicStartableImpl implements Dock
 
     @Override
     public InetAddress getNextContainerAddress(String subnetId) {
-        Cidr cidr = getSubnetCidr(subnetId);
-
-        synchronized (addressMutex) {
-            Map<String, List<InetAddress>> allocations = sensors().get(SUBNET_ADDRESS_ALLOCATIONS);
-            List<InetAddress> allocated = allocations.get(subnetId);
-            if (allocated == null) allocated = MutableList.of();
-            int size = 1 << (32 - cidr.getLength());
-            int next = allocated.size();
-            do {
-                InetAddress addr = cidr.addressAtOffset(next + 1);
-                if (allocated.contains(addr)) {
-                    next++;
-                } else {
-                    allocated.add(addr);
-                    allocations.put(subnetId, allocated);
-                    sensors().set(SUBNET_ADDRESS_ALLOCATIONS, allocations);
-                    return addr;
-                }
-            } while (next < size);
-            throw new IllegalStateException("No more addresses in subnet: " + subnetId);
-        }
+        return containerAddresses.allocate(subnetId);
     }
 
     @Override
     public void recordContainerAddress(String subnetId, InetAddress address) {
-        synchronized (addressMutex) {
-            Map<String, List<InetAddress>> allocations = sensors().get(SUBNET_ADDRESS_ALLOCATIONS);
-            List<InetAddress> allocated = allocations.get(subnetId);
-            if (allocated == null) allocated = MutableList.of();
-            allocated.add(address);
-            allocations.put(subnetId, allocated);
-            sensors().set(SUBNET_ADDRESS_ALLOCATIONS, allocations);
-        }
+        containerAddresses.record(subnetId, address);
     }
 
     @Override
     public void associateContainerAddress(String containerId, InetAddress address) {
-        synchronized (addressMutex) {
-            Multimap<String, InetAddress> allocations = sensors().get(CONTAINER_ADDRESSES);
-            allocations.put(containerId, address);
-            sensors().set(CONTAINER_ADDRESSES, allocations);
-        }
+        containerAddresses.associate(containerId, address);
+    }
+
+    @Override
+    public void releaseContainerAddresses(String containerId) {
+        containerAddresses.release(containerId);
     }
 
     @Override
@@ -170,13 +156,10 @@ public abstract class SdnProviderImpl extends BasicStartableImpl implements Dock
     @Override
     public Cidr getNextSubnetCidr() {
         synchronized (networkMutex) {
-            Cidr networkCidr = config().get(CONTAINER_NETWORK_CIDR);
-            Integer networkSize = config().get(CONTAINER_NETWORK_SIZE);
-            Integer allocated = sensors().get(ALLOCATED_NETWORKS);
-            InetAddress baseAddress = networkCidr.addressAtOffset(allocated * (1 << (32 - networkSize)));
-            Cidr subnetCidr = new Cidr(baseAddress.getHostAddress() + "/" + networkSize);
-            LOG.debug("Allocated {} from {} for subnet #{}", new Object[] { subnetCidr, networkCidr, allocated });
-            sensors().set(ALLOCATED_NETWORKS, allocated + 1);
+            SubnetCidrAllocator allocator = getSubnetAllocator();
+            Cidr subnetCidr = allocator.allocate(config().get(CONTAINER_NETWORK_SIZE));
+            LOG.debug("Allocated {} from {}", subnetCidr, allocator.getPool());
+            persistSubnetAllocator(allocator);
             return subnetCidr;
         }
     }
@@ -187,9 +170,65 @@ public abstract class SdnProviderImpl extends BasicStartableImpl implements Dock
             Map<String, Cidr> subnets = sensors().get(SdnProvider.SUBNETS);
             subnets.put(networkId, subnetCidr);
             sensors().set(SdnProvider.SUBNETS, subnets);
+
+            SubnetCidrAllocator allocator = getSubnetAllocator();
+            if (allocator.record(subnetCidr)) {
+                persistSubnetAllocator(allocator);
+            } else {
+                LOG.debug("Subnet {} for {} not allocated from {}", new Object[] { subnetCidr, networkId, allocator.getPool() });
+            }
         }
     }
 
+    @Override
+    public void releaseSubnetCidr(String networkId) {
+        synchronized (networkMutex) {
+            Map<String, Cidr> subnets = sensors().get(SdnProvider.SUBNETS);
+            Cidr subnetCidr = subnets.remove(networkId);
+            if (subnetCidr == null) return;
+            sensors().set(SdnProvider.SUBNETS, subnets);
+
+            SubnetCidrAllocator allocator = getSubnetAllocator();
+            if (allocator.release(subnetCidr)) {
+                LOG.debug("Released {} for {} to {}", new Object[] { subnetCidr, networkId, allocator.getPool() });
+                persistSubnetAllocator(allocator);
+            }
+        }
+        containerAddresses.remove(networkId);
+    }
+
+    /**
+     * Returns the subnet CIDR allocator, restoring it from the persisted list
+     * of subnets if necessary. Must be called holding the {@link #networkMutex}.
+     */
+    protected SubnetCidrAllocator getSubnetAllocator() {
+        if (subnetAllocator == null) {
+            Cidr networkCidr = config().get(CONTAINER_NETWORK_CIDR);
+            String encoded = sensors().get(SUBNET_CIDR_ALLOCATIONS);
+            subnetAllocator = SubnetCidrAllocator.decode(networkCidr, encoded);
+            if (encoded == null) {
+                // Subnets were allocated in sequence before the allocator was persisted
+                Integer allocated = sensors().get(ALLOCATED_NETWORKS);
+                Integer networkSize = config().get(CONTAINER_NETWORK_SIZE);
+                for (int i = 0; allocated != null && i < allocated; i++) {
+                    InetAddress baseAddress = networkCidr.addressAtOffset(i * (1 << (32 - networkSize)));
+                    subnetAllocator.record(new Cidr(baseAddress.getHostAddress() + "/" + networkSize));
+                }
+            }
+        }
+        return subnetAllocator;
+    }
+
+    /** Must be called holding the {@link #networkMutex}. */
+    private void persistSubnetAllocator(SubnetCidrAllocator allocator) {
+        double utilisation = allocator.getUtilisation();
+        Double peak = sensors().get(SUBNET_UTILISATION_PEAK);
+        sensors().set(SUBNET_CIDR_ALLOCATIONS, allocator.encode());
+        sensors().set(ALLOCATED_NETWORKS, allocator.getAllocatedCount());
+        sensors().set(SUBNET_UTILISATION, utilisation);
+        sensors().set(SUBNET_UTILISATION_PEAK, Math.max(utilisation, peak == null ? 0d : peak));
+    }
+
     @Override
     public Cidr getSubnetCidr(String networkId) {
         synchronized (networkMutex) {
@@ -237,6 +276,12 @@ public abstract class SdnProviderImpl extends BasicStartableImpl implements Dock
     @Override
     public void stop() {
         sensors().set(SERVICE_UP, Boolean.FALSE);
+        containerAddresses.persist();
+
+        for (NetworkEndpointWatcher watcher : endpointWatchers.values()) {
+            watcher.stop();
+        }
+        endpointWatchers.clear();
 
         super.stop();
     }
@@ -245,6 +290,27 @@ public abstract class SdnProviderImpl extends BasicStartableImpl implements Dock
     public void rebind() {
         super.rebind();
         // TODO implement custom SDN provider rebind logic
+
+        // Index networks provisioned before they were recorded by ID
+        synchronized (networkMutex) {
+            Map<String, VirtualNetwork> networks = sensors().get(SUBNET_ENTITIES);
+            if (networks == null) networks = Maps.newConcurrentMap();
+            for (Entity member : sensors().get(SDN_NETWORKS).getMembers()) {
+                String networkId = member.sensors().get(VirtualNetwork.NETWORK_ID);
+                if (networkId != null && !networks.containsKey(networkId)) {
+                    networks.put(networkId, (VirtualNetwork) member);
+                }
+            }
+            sensors().set(SUBNET_ENTITIES, networks);
+        }
+
+        // Resume watching network endpoints
+        if (getAgents() != null && !getAgents().getMembers().isEmpty()) {
+            SdnAgent agent = (SdnAgent) (getAgents().getMembers().iterator().next());
+            for (VirtualNetwork network : sensors().get(SUBNET_ENTITIES).values()) {
+                watchEndpoints(network, agent);
+            }
+        }
     }
 
     protected void addHostTrackerPolicy() {
@@ -302,17 +368,42 @@ public abstract class SdnProviderImpl extends BasicStartableImpl implements Dock
         String networkId = agent.provisionNetwork(network);
         LOG.info("Provisioned network {} at {}", networkId, agent);
         sensors().get(SDN_NETWORKS).addMember(network);
+
+        // Publish the network, signalling anything waiting for it to be ready
+        synchronized (networkMutex) {
+            Map<String, VirtualNetwork> networks = sensors().get(SUBNET_ENTITIES);
+            networks.put(network.sensors().get(VirtualNetwork.NETWORK_ID), network);
+            sensors().set(SUBNET_ENTITIES, networks);
+        }
+        watchEndpoints(network, agent);
     }
 
     @Override
     public void deallocateNetwork(VirtualNetwork network) {
         String networkId = network.sensors().get(VirtualNetwork.NETWORK_ID);
         sensors().get(SDN_NETWORKS).removeMember(network);
+        synchronized (networkMutex) {
+            Map<String, VirtualNetwork> networks = sensors().get(SUBNET_ENTITIES);
+            networks.remove(networkId);
+            sensors().set(SUBNET_ENTITIES, networks);
+        }
+        NetworkEndpointWatcher watcher = endpointWatchers.remove(networkId);
+        if (watcher != null) watcher.stop();
         SdnAgent agent = (SdnAgent) (getAgents().getMembers().iterator().next());
         agent.deallocateNetwork(network);
+        releaseSubnetCidr(networkId);
         LOG.info("Deallocated network {} at {}", networkId, agent);
     }
 
+    /** Keep the count of containers attached to the network that Clocker does not manage. */
+    private void watchEndpoints(VirtualNetwork network, SdnAgent agent) {
+        String networkId = network.sensors().get(VirtualNetwork.NETWORK_ID);
+        NetworkEndpointWatcher watcher = new NetworkEndpointWatcher(network, agent.getDockerHost());
+        if (endpointWatchers.putIfAbsent(networkId, watcher) == null) {
+            watcher.start(getExecutionContext());
+        }
+    }
+
     static {
         RendererHints.register(SDN_AGENTS, RendererHints.openWithUrl(DelegateEntity.EntityUrl.entityUrl()));
         RendererHints.register(SDN_NETWORKS, RendererHints.openWithUrl(DelegateEntity.EntityUrl.entityUrl()));
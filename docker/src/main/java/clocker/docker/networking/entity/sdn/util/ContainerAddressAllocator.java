@@ -0,0 +1,242 @@
+/*
+ * Copyright 2014-2016 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package clocker.docker.networking.entity.sdn.util;
+
+import java.net.InetAddress;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import clocker.docker.networking.entity.sdn.SdnProvider;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
+
+import org.apache.brooklyn.api.mgmt.Task;
+import org.apache.brooklyn.core.entity.EntityInternal;
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.core.task.ScheduledTask;
+import org.apache.brooklyn.util.core.task.Tasks;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.net.Cidr;
+import org.apache.brooklyn.util.time.Duration;
+
+/**
+ * Allocates container addresses on the subnets of an {@link SdnProvider}.
+ * <p>
+ * Keeps a {@link SubnetAddressAllocator} for each subnet, restored from
+ * {@link SdnProvider#SUBNET_ADDRESS_ALLOCATIONS} when first used. Changed
+ * subnets are marked dirty and only those bitmaps are encoded and written
+ * back, at most once every {@link #PERSIST_DELAY}. The subnet each address
+ * was allocated from is remembered, so releasing the addresses of a container
+ * only touches the subnets it was attached to.
+ */
+public class ContainerAddressAllocator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ContainerAddressAllocator.class);
+
+    /** How long changes are collected before the allocations are persisted. */
+    public static final Duration PERSIST_DELAY = Duration.ONE_SECOND;
+
+    private final SdnProvider provider;
+    private final Object mutex = new Object[0];
+
+    /* Guarded by the mutex. */
+    private final Map<String, SubnetAddressAllocator> allocators = Maps.newHashMap();
+    private final Map<InetAddress, String> addressSubnets = Maps.newHashMap();
+    private final Set<String> dirty = Sets.newHashSet();
+    private boolean persistPending;
+
+    public ContainerAddressAllocator(SdnProvider provider) {
+        this.provider = Preconditions.checkNotNull(provider, "provider");
+    }
+
+    public InetAddress allocate(String subnetId) {
+        synchronized (mutex) {
+            InetAddress address = getAllocator(subnetId).allocate();
+            addressSubnets.put(address, subnetId);
+            changed(subnetId);
+            return address;
+        }
+    }
+
+    public void record(String subnetId, InetAddress address) {
+        synchronized (mutex) {
+            SubnetAddressAllocator allocator = getAllocator(subnetId);
+            if (allocator.record(address)) {
+                addressSubnets.put(address, subnetId);
+                changed(subnetId);
+            } else {
+                LOG.warn("Address {} is not in subnet {} ({})", new Object[] { address.getHostAddress(), subnetId, allocator.getCidr() });
+            }
+        }
+    }
+
+    public void associate(String containerId, InetAddress address) {
+        synchronized (mutex) {
+            Multimap<String, InetAddress> allocations = provider.sensors().get(SdnProvider.CONTAINER_ADDRESSES);
+            allocations.put(containerId, address);
+            provider.sensors().set(SdnProvider.CONTAINER_ADDRESSES, allocations);
+        }
+    }
+
+    /** Return all addresses associated with a container to the subnets they were allocated from. */
+    public void release(String containerId) {
+        synchronized (mutex) {
+            Multimap<String, InetAddress> allocations = provider.sensors().get(SdnProvider.CONTAINER_ADDRESSES);
+            Collection<InetAddress> addresses = allocations.removeAll(containerId);
+            if (addresses.isEmpty()) return;
+            for (InetAddress address : addresses) {
+                String subnetId = addressSubnets.remove(address);
+                if (subnetId == null) {
+                    subnetId = lookupSubnet(address);
+                }
+                if (subnetId != null && getAllocator(subnetId).release(address)) {
+                    changed(subnetId);
+                }
+            }
+            provider.sensors().set(SdnProvider.CONTAINER_ADDRESSES, allocations);
+            LOG.debug("Released addresses {} for container {}", addresses, containerId);
+        }
+    }
+
+    /** Forget a deleted subnet and its address allocations. */
+    public void remove(String subnetId) {
+        synchronized (mutex) {
+            allocators.remove(subnetId);
+            dirty.remove(subnetId);
+            addressSubnets.values().removeAll(Collections.singleton(subnetId));
+            Map<String, String> allocations = provider.sensors().get(SdnProvider.SUBNET_ADDRESS_ALLOCATIONS);
+            if (allocations != null && allocations.remove(subnetId) != null) {
+                provider.sensors().set(SdnProvider.SUBNET_ADDRESS_ALLOCATIONS, allocations);
+            }
+        }
+    }
+
+    /** Write the bitmaps of the subnets changed since they were last persisted. */
+    public void persist() {
+        synchronized (mutex) {
+            persistPending = false;
+            if (dirty.isEmpty()) return;
+            Map<String, String> allocations = provider.sensors().get(SdnProvider.SUBNET_ADDRESS_ALLOCATIONS);
+            if (allocations == null) allocations = Maps.newConcurrentMap();
+            for (String subnetId : dirty) {
+                allocations.put(subnetId, allocators.get(subnetId).encode());
+            }
+            dirty.clear();
+            provider.sensors().set(SdnProvider.SUBNET_ADDRESS_ALLOCATIONS, allocations);
+        }
+    }
+
+    /**
+     * Returns the allocator for a subnet, restoring it from the persisted
+     * bitmap if necessary. Must be called holding the mutex.
+     */
+    private SubnetAddressAllocator getAllocator(String subnetId) {
+        SubnetAddressAllocator allocator = allocators.get(subnetId);
+        if (allocator == null) {
+            Cidr cidr = provider.getSubnetCidr(subnetId);
+            if (cidr == null) {
+                throw new IllegalStateException("No CIDR recorded for subnet: " + subnetId);
+            }
+            Map<String, String> allocations = provider.sensors().get(SdnProvider.SUBNET_ADDRESS_ALLOCATIONS);
+            String encoded = allocations == null ? null : allocations.get(subnetId);
+            if (encoded != null) {
+                allocator = SubnetAddressAllocator.decode(cidr, encoded);
+            } else {
+                allocator = seedAllocator(subnetId, cidr);
+                dirty.add(subnetId);
+            }
+            allocators.put(subnetId, allocator);
+        }
+        return allocator;
+    }
+
+    /**
+     * Creates an allocator for a subnet with no persisted bitmap, such as after rebind
+     * from an earlier version, marking the addresses still held by containers and any
+     * recorded in the old list of allocated addresses.
+     */
+    @SuppressWarnings("deprecation")
+    private SubnetAddressAllocator seedAllocator(String subnetId, Cidr cidr) {
+        SubnetAddressAllocator allocator = new SubnetAddressAllocator(cidr);
+        Multimap<String, InetAddress> containers = provider.sensors().get(SdnProvider.CONTAINER_ADDRESSES);
+        if (containers != null) {
+            for (InetAddress address : containers.values()) {
+                allocator.record(address);
+            }
+        }
+        Map<String, List<InetAddress>> allocated = provider.sensors().get(SdnProvider.ALLOCATED_SUBNET_ADDRESSES);
+        if (allocated != null && allocated.containsKey(subnetId)) {
+            for (InetAddress address : allocated.get(subnetId)) {
+                allocator.record(address);
+            }
+        }
+        return allocator;
+    }
+
+    /**
+     * Finds the subnet containing an address allocated before the last rebind,
+     * comparing it with the subnet CIDRs rather than restoring every allocator.
+     */
+    private String lookupSubnet(InetAddress address) {
+        Map<String, Cidr> subnets = provider.sensors().get(SdnProvider.SUBNETS);
+        if (subnets == null) return null;
+        for (Map.Entry<String, Cidr> subnet : subnets.entrySet()) {
+            if (SubnetAddressAllocator.contains(subnet.getValue(), address)) {
+                return subnet.getKey();
+            }
+        }
+        return null;
+    }
+
+    /** Mark a subnet dirty and schedule a write if none is pending. Must be called holding the mutex. */
+    private void changed(String subnetId) {
+        dirty.add(subnetId);
+        if (persistPending) return;
+        persistPending = true;
+        Callable<Task<?>> factory = new Callable<Task<?>>() {
+            @Override
+            public Task<?> call() {
+                return Tasks.builder()
+                        .displayName("Persist address allocations")
+                        .body(new Runnable() {
+                            @Override
+                            public void run() {
+                                try {
+                                    persist();
+                                } catch (Exception e) {
+                                    Exceptions.propagateIfFatal(e);
+                                    LOG.warn("Error persisting address allocations for {}: {}", provider, e.getMessage());
+                                }
+                            }
+                        })
+                        .build();
+            }
+        };
+        ((EntityInternal) provider).getExecutionContext().submit(
+                new ScheduledTask(MutableMap.of("displayName", "Address allocations"), factory).delay(PERSIST_DELAY));
+    }
+
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2014-2016 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package clocker.docker.networking.entity.sdn.util;
+
+import io.brooklyn.entity.nosql.etcd.EtcdNode;
+
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.entity.ContentType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import clocker.docker.entity.DockerHost;
+import clocker.docker.entity.container.DockerContainer;
+import clocker.docker.networking.entity.VirtualNetwork;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+import com.google.common.net.HostAndPort;
+import com.google.common.net.HttpHeaders;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.apache.brooklyn.api.entity.Entity;
+import org.apache.brooklyn.api.mgmt.ExecutionContext;
+import org.apache.brooklyn.api.mgmt.Task;
+import org.apache.brooklyn.core.entity.Attributes;
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.http.HttpTool;
+import org.apache.brooklyn.util.http.HttpToolResponse;
+import org.apache.brooklyn.util.text.Strings;
+import org.apache.brooklyn.util.time.Duration;
+import org.apache.brooklyn.util.time.Time;
+
+/**
+ * Watches the endpoints of a Docker network in the etcd cluster store, using the etcd HTTP API.
+ * <p>
+ * Lists the endpoints that libnetwork stores under {@code /docker/network/v1.0/endpoint/<id>}
+ * and publishes the number belonging to containers not managed by Clocker as
+ * {@link VirtualNetwork#UNMANAGED_ENDPOINTS}, then long-polls for the next change to
+ * the endpoints and lists them again. Containers managed by Clocker are counted in
+ * memory as they {@link VirtualNetwork#CONNECTED_CONTAINERS connect}, so together
+ * these give the attachment count without running any remote commands.
+ */
+public class NetworkEndpointWatcher implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NetworkEndpointWatcher.class);
+
+    private static final String ENDPOINT_KEYS = "/v2/keys/docker/network/v1.0/endpoint/";
+    private static final Map<String, String> HEADERS = ImmutableMap.of(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.getMimeType());
+    private static final Duration WATCH_TIMEOUT = Duration.minutes(5);
+
+    private final VirtualNetwork network;
+    private final DockerHost host;
+    private volatile boolean watching;
+    private volatile HttpClient client;
+    private Task<?> task;
+
+    public NetworkEndpointWatcher(VirtualNetwork network, DockerHost host) {
+        this.network = Preconditions.checkNotNull(network, "network");
+        this.host = Preconditions.checkNotNull(host, "host");
+    }
+
+    public synchronized void start(ExecutionContext context) {
+        if (task != null) return;
+        watching = true;
+        task = context.submit(MutableMap.of("displayName", "Watch endpoints on " + network.sensors().get(VirtualNetwork.NETWORK_ID)), this);
+    }
+
+    public synchronized void stop() {
+        watching = false;
+        if (task != null) {
+            task.cancel(true);
+            task = null;
+        }
+        // Abort any long-poll in progress
+        HttpClient current = client;
+        if (current != null) {
+            current.getConnectionManager().shutdown();
+        }
+    }
+
+    @Override
+    public void run() {
+        String networkId = network.sensors().get(VirtualNetwork.NETWORK_ID);
+        String fullNetworkId = null;
+        while (watching) {
+            try {
+                if (fullNetworkId == null) {
+                    fullNetworkId = Strings.trim(host.runDockerCommand(String.format("network inspect --format=\"{{ .ID }}\" %s", networkId)));
+                }
+                EtcdNode etcd = host.sensors().get(DockerHost.ETCD_NODE);
+                HostAndPort authority = HostAndPort.fromParts(etcd.sensors().get(Attributes.SUBNET_ADDRESS), etcd.sensors().get(EtcdNode.ETCD_CLIENT_PORT));
+                String keys = "http://" + authority + ENDPOINT_KEYS + fullNetworkId;
+                client = HttpTool.httpClientBuilder()
+                        .uri(keys)
+                        .socketTimeout(WATCH_TIMEOUT)
+                        .build();
+
+                while (watching) {
+                    long index = update(keys);
+                    try {
+                        HttpTool.httpGet(client, URI.create(keys + "?wait=true&recursive=true&waitIndex=" + (index + 1)), HEADERS);
+                    } catch (Exception e) {
+                        if (Exceptions.getFirstThrowableOfType(e, SocketTimeoutException.class) == null) throw e;
+                    }
+                }
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                if (watching) {
+                    LOG.debug("Error watching endpoints on {}: {}", network, e.getMessage());
+                    Time.sleep(Duration.FIVE_SECONDS);
+                }
+            } finally {
+                if (client != null) {
+                    client.getConnectionManager().shutdown();
+                    client = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Lists the endpoints and publishes the number that are unmanaged.
+     *
+     * @return the etcd index the listing was made at
+     */
+    private long update(String keys) {
+        HttpToolResponse response = HttpTool.httpGet(client, URI.create(keys + "?recursive=true"), HEADERS);
+        Set<String> names = Sets.newHashSet();
+        if (HttpTool.isStatusCodeHealthy(response.getResponseCode())) {
+            JsonObject node = new JsonParser().parse(response.getContentAsString()).getAsJsonObject().getAsJsonObject("node");
+            if (node.has("nodes")) {
+                for (JsonElement child : node.getAsJsonArray("nodes")) {
+                    JsonObject endpoint = new JsonParser().parse(child.getAsJsonObject().get("value").getAsString()).getAsJsonObject();
+                    if (endpoint.has("name")) names.add(endpoint.get("name").getAsString());
+                }
+            }
+        } else if (response.getResponseCode() != 404) {
+            throw new IllegalStateException("Failed listing endpoints: " + response.getResponseCode());
+        }
+
+        // Endpoints of Clocker containers are counted as they connect and disconnect
+        for (Entity container : host.getInfrastructure().getDockerContainerList()) {
+            if (Boolean.TRUE.equals(container.config().get(DockerContainer.MANAGED))) {
+                names.remove(container.sensors().get(DockerContainer.DOCKER_CONTAINER_NAME));
+            }
+        }
+        LOG.trace("Unmanaged endpoints on {}: {}", network, names);
+        network.sensors().set(VirtualNetwork.UNMANAGED_ENDPOINTS, names.size());
+
+        List<String> index = response.getHeaderLists().get("X-Etcd-Index");
+        return index == null || index.isEmpty() ? 0L : Long.parseLong(index.get(0));
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("network", network)
+                .add("host", host)
+                .toString();
+    }
+
+}
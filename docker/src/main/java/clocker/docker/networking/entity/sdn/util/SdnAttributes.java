@@ -53,6 +53,9 @@ public class SdnAttributes {
     public static final AttributeSensor<String> BRIDGE_NETWORK_ID = Sensors.newStringSensor(
             "sdn.networks.bridge", "The bridge network that an entity is attached to");
 
+    public static final ConfigKey<Integer> NETWORK_ATTACH_PARALLELISM = ConfigKeys.newIntegerConfigKey(
+            "sdn.networks.attach.parallelism", "Maximum number of networks attached to a container concurrently", 4);
+
     public static final ConfigKey<Boolean> CREATE_APPLICATION_NETWORK = ConfigKeys.newBooleanConfigKey("sdn.applicationNetwork.create", "Create a new network for each application using its ID", Boolean.TRUE);
 
 }
@@ -16,7 +16,10 @@
 package clocker.docker.networking.entity.sdn.util;
 
 import java.util.List;
-import java.util.concurrent.Callable;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
 
 import javax.annotation.Nullable;
 
@@ -30,18 +33,19 @@ import clocker.docker.networking.entity.sdn.SdnProvider;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
-import com.google.common.collect.Iterables;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
 
 import org.apache.brooklyn.api.entity.Entity;
 import org.apache.brooklyn.api.entity.EntitySpec;
 import org.apache.brooklyn.api.mgmt.Task;
 import org.apache.brooklyn.core.entity.Entities;
-import org.apache.brooklyn.core.entity.EntityPredicates;
+import org.apache.brooklyn.core.sensor.DependentConfiguration;
 import org.apache.brooklyn.entity.software.base.SoftwareProcess;
 import org.apache.brooklyn.util.core.task.DynamicTasks;
-import org.apache.brooklyn.util.core.task.TaskBuilder;
+import org.apache.brooklyn.util.core.task.Tasks;
+import org.apache.brooklyn.util.exceptions.Exceptions;
 import org.apache.brooklyn.util.net.Cidr;
-import org.apache.brooklyn.util.repeat.Repeater;
 import org.apache.brooklyn.util.text.Strings;
 import org.apache.brooklyn.util.time.Duration;
 
@@ -65,13 +69,24 @@ public class SdnUtils {
         boolean createNetwork = false;
         Cidr subnetCidr = null;
         VirtualNetwork network = null;
+        VirtualNetwork deleting = null;
         synchronized (provider.getNetworkMutex()) {
-            subnetCidr = provider.getSubnetCidr(networkId);
-            if (subnetCidr == null) {
+            Map<String, VirtualNetwork> networks = provider.sensors().get(SdnProvider.SUBNET_ENTITIES);
+            if (networks != null && isDeleting(networks.get(networkId))) {
+                deleting = networks.get(networkId);
+            } else {
+                subnetCidr = provider.getSubnetCidr(networkId);
+            }
+            if (deleting == null && subnetCidr == null) {
                 subnetCidr = provider.getNextSubnetCidr(networkId);
                 createNetwork = true;
             }
         }
+        if (deleting != null) {
+            // Wait for the old network to be removed and then create a fresh one
+            waitUntilDeleted(deleting);
+            return createNetwork(provider, networkId);
+        }
         if (createNetwork) {
             // Get a CIDR for the subnet from the availabkle pool and create a virtual network
             EntitySpec<VirtualNetwork> networkSpec = EntitySpec.create(VirtualNetwork.class)
@@ -90,35 +105,70 @@ public class SdnUtils {
         return network;
     }
 
+    /**
+     * Returns the virtual network with the given ID, waiting until it has been provisioned.
+     * <p>
+     * Networks are looked up in the {@link SdnProvider#SUBNET_ENTITIES} map, and if not
+     * yet present we wait for the sensor event published when the network is added.
+     */
     public static final VirtualNetwork lookupNetwork(final SdnProvider provider, final String networkId) {
-        Task<Boolean> lookup = TaskBuilder.<Boolean> builder()
-                .displayName("Waiting until virtual network is available")
-                .body(new Callable<Boolean>() {
+        Map<String, VirtualNetwork> networks = provider.sensors().get(SdnProvider.SUBNET_ENTITIES);
+        if (networks != null && networks.containsKey(networkId)) {
+            return networks.get(networkId);
+        }
+
+        Task<Map<String, VirtualNetwork>> lookup = DependentConfiguration.attributeWhenReady(provider, SdnProvider.SUBNET_ENTITIES,
+                new Predicate<Map<String, VirtualNetwork>>() {
                     @Override
-                    public Boolean call() throws Exception {
-                        return Repeater.create()
-                                .every(Duration.TEN_SECONDS)
-                                .until(new Callable<Boolean>() {
-                                    public Boolean call() {
-                                        Optional<Entity> found = Iterables.tryFind(provider.sensors().get(SdnProvider.SDN_NETWORKS).getMembers(),
-                                                EntityPredicates.attributeEqualTo(VirtualNetwork.NETWORK_ID, networkId));
-                                        return found.isPresent();
-                                    }
-                                })
-                                .limitTimeTo(Duration.ONE_MINUTE)
-                                .run();
+                    public boolean apply(@Nullable Map<String, VirtualNetwork> input) {
+                        return input != null && input.containsKey(networkId);
                     }
-                })
-                .build();
-        Boolean result = DynamicTasks.queueIfPossible(lookup)
-                .orSubmitAndBlock()
-                .andWaitForSuccess();
-        if (!result) {
-            throw new IllegalStateException(String.format("Cannot find virtual network entity for %s", networkId));
+                });
+        // Submit without blocking when there is no queueing context, so the timeout applies
+        Task<Map<String, VirtualNetwork>> task = DynamicTasks.queueIfPossible(lookup)
+                .orSubmitAsync(provider)
+                .asTask();
+        try {
+            Tasks.setBlockingDetails("Waiting until virtual network " + networkId + " is available");
+            networks = task.get(Duration.ONE_MINUTE);
+        } catch (TimeoutException te) {
+            task.cancel(true);
+            throw new IllegalStateException(String.format("Cannot find virtual network entity for %s", networkId), te);
+        } catch (InterruptedException | ExecutionException e) {
+            throw Exceptions.propagate(e);
+        } finally {
+            Tasks.resetBlockingDetails();
+        }
+        return networks.get(networkId);
+    }
+
+    /** Whether the network has been marked as {@link VirtualNetwork#NETWORK_DELETING deleting}. */
+    public static final boolean isDeleting(@Nullable VirtualNetwork network) {
+        return network != null && Boolean.TRUE.equals(network.sensors().get(VirtualNetwork.NETWORK_DELETING));
+    }
+
+    private static final void waitUntilDeleted(final VirtualNetwork network) {
+        Task<Boolean> waiting = DependentConfiguration.attributeWhenReady(network, VirtualNetwork.NETWORK_DELETING,
+                new Predicate<Boolean>() {
+                    @Override
+                    public boolean apply(@Nullable Boolean input) {
+                        return !Boolean.TRUE.equals(input);
+                    }
+                });
+        Task<Boolean> task = DynamicTasks.queueIfPossible(waiting)
+                .orSubmitAsync(network)
+                .asTask();
+        try {
+            Tasks.setBlockingDetails("Waiting until virtual network " + network.sensors().get(VirtualNetwork.NETWORK_ID) + " is deleted");
+            task.get(Duration.FIVE_MINUTES);
+        } catch (TimeoutException te) {
+            task.cancel(true);
+            throw new IllegalStateException(String.format("Virtual network %s was not deleted", network), te);
+        } catch (InterruptedException | ExecutionException e) {
+            throw Exceptions.propagate(e);
+        } finally {
+            Tasks.resetBlockingDetails();
         }
-        VirtualNetwork network = (VirtualNetwork) Iterables.find(provider.sensors().get(SdnProvider.SDN_NETWORKS).getMembers(),
-                EntityPredicates.attributeEqualTo(VirtualNetwork.NETWORK_ID, networkId));
-        return network;
     }
 
     public static final Cidr provisionNetwork(final SdnProvider provider, final VirtualNetwork network) {
@@ -160,6 +210,22 @@ public class SdnUtils {
         }
     }
 
+    /**
+     * Counts the containers other than the given one that are attached to a network.
+     * <p>
+     * Uses the {@link VirtualNetwork#CONNECTED_CONTAINERS connected containers} maintained
+     * on connect and disconnect, plus any {@link VirtualNetwork#UNMANAGED_ENDPOINTS unmanaged
+     * endpoints} seen by the {@link NetworkEndpointWatcher}, so makes no remote calls.
+     */
+    public static final int countAttached(VirtualNetwork network, Entity container) {
+        Set<Entity> connected = network.sensors().get(VirtualNetwork.CONNECTED_CONTAINERS);
+        int attached = connected == null ? 0 : Sets.difference(connected, ImmutableSet.of(container)).size();
+        Integer unmanaged = network.sensors().get(VirtualNetwork.UNMANAGED_ENDPOINTS);
+        return attached + (unmanaged == null ? 0 : unmanaged);
+    }
+
+    /** @deprecated since 1.2.0; use {@link #countAttached(VirtualNetwork, Entity)} */
+    @Deprecated
     public static final Optional<Integer> countAttached(DockerHost dockerHost, String networkId) {
         Entity etcd = dockerHost.sensors().get(DockerHost.ETCD_NODE);
         String installDir = etcd.sensors().get(SoftwareProcess.EXPANDED_INSTALL_DIR);
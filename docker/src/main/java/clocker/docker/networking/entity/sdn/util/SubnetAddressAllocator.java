@@ -0,0 +1,163 @@
+/*
+ * Copyright 2014-2016 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package clocker.docker.networking.entity.sdn.util;
+
+import java.net.InetAddress;
+import java.util.BitSet;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.io.BaseEncoding;
+
+import org.apache.brooklyn.util.net.Cidr;
+import org.apache.brooklyn.util.text.Strings;
+
+/**
+ * Allocates host addresses in a subnet using a bitmap.
+ * <p>
+ * The network and broadcast addresses are never allocated. Allocation
+ * continues from the last allocated offset, wrapping around to find
+ * addresses that have been released, so allocate and release are both
+ * constant time in the common case. The bitmap can be encoded as a short
+ * string for persistence.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public class SubnetAddressAllocator {
+
+    private final Cidr cidr;
+    private final int first;
+    private final int last;
+    private final BitSet allocated;
+    private int next;
+
+    public SubnetAddressAllocator(Cidr cidr) {
+        this(cidr, new BitSet());
+    }
+
+    /**
+     * Restore an allocator from the output of {@link #encode()}.
+     */
+    public static SubnetAddressAllocator decode(Cidr cidr, String encoded) {
+        if (Strings.isBlank(encoded)) {
+            return new SubnetAddressAllocator(cidr);
+        } else {
+            return new SubnetAddressAllocator(cidr, BitSet.valueOf(BaseEncoding.base64().decode(encoded)));
+        }
+    }
+
+    private SubnetAddressAllocator(Cidr cidr, BitSet allocated) {
+        this.cidr = Preconditions.checkNotNull(cidr, "cidr");
+        int size = 1 << (32 - cidr.getLength());
+        this.first = size > 2 ? 1 : 0;
+        this.last = size > 2 ? size - 2 : size - 1;
+        this.allocated = allocated;
+        this.next = first;
+    }
+
+    public Cidr getCidr() {
+        return cidr;
+    }
+
+    /**
+     * Allocate the next free address.
+     *
+     * @throws IllegalStateException if all addresses in the subnet are allocated
+     */
+    public InetAddress allocate() {
+        int offset = allocated.nextClearBit(next);
+        if (offset > last) {
+            offset = allocated.nextClearBit(first);
+        }
+        if (offset > last) {
+            throw new IllegalStateException("No more addresses in subnet: " + cidr);
+        }
+        allocated.set(offset);
+        next = offset + 1;
+        return cidr.addressAtOffset(offset);
+    }
+
+    /**
+     * Mark an address that was assigned elsewhere as allocated.
+     *
+     * @return {@code false} if the address is outside the subnet
+     */
+    public boolean record(InetAddress address) {
+        int offset = offsetOf(address);
+        if (offset < 0) return false;
+        allocated.set(offset);
+        return true;
+    }
+
+    /**
+     * Return an address to the pool.
+     *
+     * @return {@code true} if the address was allocated in this subnet
+     */
+    public boolean release(InetAddress address) {
+        int offset = offsetOf(address);
+        if (offset < 0 || !allocated.get(offset)) return false;
+        allocated.clear(offset);
+        return true;
+    }
+
+    public boolean contains(InetAddress address) {
+        return offsetOf(address) >= 0;
+    }
+
+    /** Whether an address is one of the host addresses in a subnet. */
+    public static boolean contains(Cidr cidr, InetAddress address) {
+        return new SubnetAddressAllocator(cidr).contains(address);
+    }
+
+    public int getAllocatedCount() {
+        return allocated.cardinality();
+    }
+
+    public int getCapacity() {
+        return last - first + 1;
+    }
+
+    /** A compact base64 representation of the allocation bitmap. */
+    public String encode() {
+        return BaseEncoding.base64().encode(allocated.toByteArray());
+    }
+
+    private int offsetOf(InetAddress address) {
+        byte[] bytes = address.getAddress();
+        if (bytes.length != 4) return -1;
+        long offset = toUnsigned(bytes) - toUnsigned(cidr.addressAtOffset(0).getAddress());
+        return (offset < first || offset > last) ? -1 : (int) offset;
+    }
+
+    private static long toUnsigned(byte[] bytes) {
+        long value = 0L;
+        for (byte b : bytes) {
+            value = (value << 8) | (b & 0xff);
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("cidr", cidr)
+                .add("allocated", getAllocatedCount())
+                .add("capacity", getCapacity())
+                .toString();
+    }
+
+}
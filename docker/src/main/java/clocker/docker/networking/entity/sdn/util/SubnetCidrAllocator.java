@@ -0,0 +1,228 @@
+/*
+ * Copyright 2014-2016 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package clocker.docker.networking.entity.sdn.util;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import org.apache.brooklyn.util.net.Cidr;
+import org.apache.brooklyn.util.text.Strings;
+
+/**
+ * Allocates subnet CIDRs from a pool CIDR using a buddy allocator.
+ * <p>
+ * Free blocks are kept in a list for each prefix length. A request takes the
+ * lowest free block of the requested length, splitting a larger block in half
+ * repeatedly if necessary, and a released subnet is merged with its buddy
+ * while the buddy is also free. Subnets of different lengths can therefore
+ * share the pool, and released subnets are reused. The allocated subnets can
+ * be encoded as a string for persistence.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public class SubnetCidrAllocator {
+
+    private final Cidr pool;
+    private final long base;
+    private final Map<Integer, NavigableSet<Long>> free = Maps.newHashMap();
+    private final Map<Long, Integer> allocated = Maps.newTreeMap();
+
+    public SubnetCidrAllocator(Cidr pool) {
+        this.pool = Preconditions.checkNotNull(pool, "pool");
+        this.base = toUnsigned(pool.addressAtOffset(0).getAddress());
+        for (int length = pool.getLength(); length <= 32; length++) {
+            free.put(length, Sets.<Long>newTreeSet());
+        }
+        free.get(pool.getLength()).add(0L);
+    }
+
+    /**
+     * Restore an allocator from the output of {@link #encode()}.
+     */
+    public static SubnetCidrAllocator decode(Cidr pool, String encoded) {
+        SubnetCidrAllocator allocator = new SubnetCidrAllocator(pool);
+        if (Strings.isNonBlank(encoded)) {
+            for (String subnet : Splitter.on(',').omitEmptyStrings().trimResults().split(encoded)) {
+                allocator.record(new Cidr(subnet));
+            }
+        }
+        return allocator;
+    }
+
+    public Cidr getPool() {
+        return pool;
+    }
+
+    /**
+     * Allocate the lowest free subnet with the given prefix length.
+     *
+     * @throws IllegalStateException if there is no free subnet of that length
+     */
+    public Cidr allocate(int length) {
+        Preconditions.checkArgument(length >= pool.getLength() && length <= 32, "Subnet length %s outside pool %s", length, pool);
+
+        // Find the smallest free block that can hold the subnet
+        int size = length;
+        while (size >= pool.getLength() && free.get(size).isEmpty()) size--;
+        if (size < pool.getLength()) {
+            throw new IllegalStateException("No more /" + length + " subnets in pool: " + pool);
+        }
+
+        // Split it in half until it is the requested size, freeing the upper halves
+        long offset = free.get(size).pollFirst();
+        while (size < length) {
+            size++;
+            free.get(size).add(offset + blockSize(size));
+        }
+        allocated.put(offset, length);
+        return toCidr(offset, length);
+    }
+
+    /**
+     * Mark a subnet that was assigned elsewhere as allocated.
+     *
+     * @return {@code false} if the subnet is outside the pool or overlaps another allocated subnet
+     */
+    public boolean record(Cidr subnet) {
+        long offset = offsetOf(subnet);
+        int length = subnet.getLength();
+        if (offset < 0) return false;
+        Integer existing = allocated.get(offset);
+        if (existing != null) return existing == length;
+
+        // Find the free block containing the subnet
+        int size = length;
+        long block = offset;
+        while (size >= pool.getLength() && !free.get(size).contains(block)) {
+            size--;
+            block = block & ~(blockSize(size) - 1);
+        }
+        if (size < pool.getLength()) return false;
+
+        // Split it down to the subnet, freeing the halves that do not contain it
+        free.get(size).remove(block);
+        while (size < length) {
+            size++;
+            long half = blockSize(size);
+            if ((offset & half) == 0) {
+                free.get(size).add(block + half);
+            } else {
+                free.get(size).add(block);
+                block += half;
+            }
+        }
+        allocated.put(offset, length);
+        return true;
+    }
+
+    /**
+     * Return a subnet to the pool, merging it with its free buddies.
+     *
+     * @return {@code true} if the subnet was allocated from this pool
+     */
+    public boolean release(Cidr subnet) {
+        long offset = offsetOf(subnet);
+        if (offset < 0) return false;
+        Integer length = allocated.get(offset);
+        if (length == null || length != subnet.getLength()) return false;
+        allocated.remove(offset);
+
+        int size = length;
+        while (size > pool.getLength()) {
+            long buddy = offset ^ blockSize(size);
+            if (!free.get(size).remove(buddy)) break;
+            offset = Math.min(offset, buddy);
+            size--;
+        }
+        free.get(size).add(offset);
+        return true;
+    }
+
+    public boolean contains(Cidr subnet) {
+        Integer length = allocated.get(offsetOf(subnet));
+        return length != null && length == subnet.getLength();
+    }
+
+    /** The number of allocated subnets. */
+    public int getAllocatedCount() {
+        return allocated.size();
+    }
+
+    /** The number of addresses in allocated subnets. */
+    public long getAllocatedAddresses() {
+        long total = 0L;
+        for (Integer length : allocated.values()) {
+            total += blockSize(length);
+        }
+        return total;
+    }
+
+    /** The fraction of the pool addresses in allocated subnets. */
+    public double getUtilisation() {
+        return (double) getAllocatedAddresses() / (double) blockSize(pool.getLength());
+    }
+
+    /** A comma separated list of the allocated subnets. */
+    public String encode() {
+        List<String> subnets = Lists.newArrayList();
+        for (Map.Entry<Long, Integer> entry : allocated.entrySet()) {
+            subnets.add(toCidr(entry.getKey(), entry.getValue()).toString());
+        }
+        return Joiner.on(',').join(subnets);
+    }
+
+    private Cidr toCidr(long offset, int length) {
+        return new Cidr(pool.addressAtOffset((int) offset).getHostAddress() + "/" + length);
+    }
+
+    private long offsetOf(Cidr subnet) {
+        if (subnet.getLength() < pool.getLength()) return -1L;
+        long offset = toUnsigned(subnet.addressAtOffset(0).getAddress()) - base;
+        if (offset < 0 || offset >= blockSize(pool.getLength())) return -1L;
+        return offset & ~(blockSize(subnet.getLength()) - 1);
+    }
+
+    private static long blockSize(int length) {
+        return 1L << (32 - length);
+    }
+
+    private static long toUnsigned(byte[] bytes) {
+        long value = 0L;
+        for (byte b : bytes) {
+            value = (value << 8) | (b & 0xff);
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("pool", pool)
+                .add("allocated", getAllocatedCount())
+                .add("utilisation", getUtilisation())
+                .toString();
+    }
+
+}
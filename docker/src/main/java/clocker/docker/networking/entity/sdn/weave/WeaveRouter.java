@@ -23,6 +23,7 @@ import org.apache.brooklyn.core.config.ConfigKeys;
 import org.apache.brooklyn.core.sensor.BasicAttributeSensorAndConfigKey;
 import org.apache.brooklyn.entity.software.base.SoftwareProcess;
 import org.apache.brooklyn.util.core.flags.SetFromFlag;
+import org.apache.brooklyn.util.time.Duration;
 
 /**
  * The Weave container.
@@ -36,6 +37,13 @@ public interface WeaveRouter extends SdnAgent {
     @SetFromFlag("weavePort")
     ConfigKey<Integer> WEAVE_PORT = ConfigKeys.newIntegerConfigKey("weave.port", "Weave port", 6783);
 
+    @SetFromFlag("statusPort")
+    ConfigKey<Integer> WEAVE_STATUS_PORT = ConfigKeys.newIntegerConfigKey("weave.status.port", "Weave router local HTTP status port", 6784);
+
+    @SetFromFlag("statusPeriod")
+    ConfigKey<Duration> WEAVE_STATUS_PERIOD = ConfigKeys.newDurationConfigKey("weave.status.period",
+            "How long the result of a Weave router status check is reused", Duration.THIRTY_SECONDS);
+
     @SetFromFlag("downloadUrl")
     BasicAttributeSensorAndConfigKey<String> DOWNLOAD_URL = new BasicAttributeSensorAndConfigKey<String>(
             SoftwareProcess.DOWNLOAD_URL, "https://raw.githubusercontent.com/weaveworks/weave/v${version}/weave");
@@ -24,10 +24,12 @@ import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import clocker.docker.entity.DockerHost;
 import clocker.docker.networking.entity.sdn.DockerNetworkAgentSshDriver;
 import clocker.docker.networking.entity.sdn.SdnAgent;
 import clocker.docker.networking.entity.sdn.SdnProvider;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 
@@ -37,13 +39,22 @@ import org.apache.brooklyn.core.entity.Attributes;
 import org.apache.brooklyn.entity.group.AbstractGroup;
 import org.apache.brooklyn.location.ssh.SshMachineLocation;
 import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.exceptions.Exceptions;
 import org.apache.brooklyn.util.os.Os;
 import org.apache.brooklyn.util.ssh.BashCommands;
+import org.apache.brooklyn.util.time.Duration;
 
 public class WeaveRouterSshDriver extends DockerNetworkAgentSshDriver implements WeaveRouterDriver {
 
     private static final Logger LOG = LoggerFactory.getLogger(WeaveRouter.class);
 
+    /** Time allowed for the router to answer a status probe. */
+    private static final Duration STATUS_TIMEOUT = Duration.FIVE_SECONDS;
+
+    private volatile boolean running;
+    private volatile Boolean curlInstalled;
+    private volatile long statusCheckedAt;
+
     public WeaveRouterSshDriver(EntityLocal entity, SshMachineLocation machine) {
         super(entity, machine);
     }
@@ -91,23 +102,69 @@ public class WeaveRouterSshDriver extends DockerNetworkAgentSshDriver implements
                 .failOnNonZeroResultCode()
                 .uniqueSshConnection()
                 .execute();
+        statusCheckedAt = 0L;
     }
 
+    /**
+     * Probes the local HTTP status endpoint of the router over a pooled SSH connection.
+     * <p>
+     * Unlike {@code weave status} this does not start a helper container, so the host
+     * lock is not needed. A successful probe is reused for {@link WeaveRouter#WEAVE_STATUS_PERIOD},
+     * but a failed one is not, so a router that has just started is seen immediately.
+     * Hosts without {@code curl} fall back to {@code weave status}.
+     */
     @Override
     public boolean isRunning() {
+        long now = System.currentTimeMillis();
+        Duration period = entity.config().get(WeaveRouter.WEAVE_STATUS_PERIOD);
+        if (statusCheckedAt > 0 && now - statusCheckedAt < period.toMilliseconds()) {
+            return running;
+        }
+
+        DockerHost host = getEntity().sensors().get(SdnAgent.DOCKER_HOST);
+        try {
+            if (isCurlInstalled(host)) {
+                String probe = String.format("curl -sf -m %d -o /dev/null http://127.0.0.1:%d/status",
+                        STATUS_TIMEOUT.toSeconds(), entity.config().get(WeaveRouter.WEAVE_STATUS_PORT));
+                running = host.execPooledCommands(MutableMap.<String, Object>of(), "Check Weave router status", ImmutableList.of(probe), getShellEnvironment()) == 0;
+            } else {
+                running = isWeaveStatusOk(host);
+            }
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            LOG.debug("Error checking Weave router status on {}: {}", host, e.getMessage());
+            running = false;
+        }
+        statusCheckedAt = running ? now : 0L;
+        return running;
+    }
+
+    /** Whether {@code curl} is on the path of the host, checked once. */
+    private boolean isCurlInstalled(DockerHost host) {
+        if (curlInstalled == null) {
+            curlInstalled = host.execPooledCommands(MutableMap.<String, Object>of(), "Check for curl", ImmutableList.of("command -v curl"), getShellEnvironment()) == 0;
+            if (!curlInstalled) {
+                LOG.info("No curl on {}, using weave status to check router", host);
+            }
+        }
+        return curlInstalled;
+    }
+
+    private boolean isWeaveStatusOk(DockerHost host) {
         // Spawns a container for duration of command, so take the host lock
-        getEntity().sensors().get(SdnAgent.DOCKER_HOST).getDynamicLocation().getLock().lock();
+        host.getDynamicLocation().getLock().lock();
         try {
             return newScript(MutableMap.of(USE_PID_FILE, false), CHECK_RUNNING)
                     .body.append(BashCommands.sudo(getWeaveCommand() + " status"))
                     .execute() == 0;
         } finally {
-            getEntity().sensors().get(SdnAgent.DOCKER_HOST).getDynamicLocation().getLock().unlock();
+            host.getDynamicLocation().getLock().unlock();
         }
     }
 
     @Override
     public void stop() {
+        statusCheckedAt = 0L;
         newScript(MutableMap.of(USE_PID_FILE, false), STOPPING)
                 .body.append(BashCommands.sudo(getWeaveCommand() + " stop"))
                 .execute();
@@ -15,8 +15,10 @@
  */
 package clocker.docker.policy;
 
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,8 +32,11 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Queues;
 
 import org.apache.brooklyn.api.entity.EntityLocal;
+import org.apache.brooklyn.api.entity.Group;
+import org.apache.brooklyn.api.mgmt.Task;
 import org.apache.brooklyn.api.sensor.AttributeSensor;
 import org.apache.brooklyn.api.sensor.Enricher;
 import org.apache.brooklyn.api.sensor.SensorEvent;
@@ -41,11 +46,18 @@ import org.apache.brooklyn.core.config.ConfigKeys;
 import org.apache.brooklyn.core.config.render.RendererHints;
 import org.apache.brooklyn.core.enricher.AbstractEnricher;
 import org.apache.brooklyn.core.entity.AbstractEntity;
+import org.apache.brooklyn.core.entity.EntityInternal;
+import org.apache.brooklyn.core.entity.trait.Startable;
 import org.apache.brooklyn.core.sensor.BasicNotificationSensor;
 import org.apache.brooklyn.core.sensor.Sensors;
 import org.apache.brooklyn.policy.autoscaling.AutoScalerPolicy;
+import org.apache.brooklyn.util.collections.MutableMap;
 import org.apache.brooklyn.util.core.flags.SetFromFlag;
+import org.apache.brooklyn.util.core.task.ScheduledTask;
+import org.apache.brooklyn.util.core.task.Tasks;
+import org.apache.brooklyn.util.exceptions.Exceptions;
 import org.apache.brooklyn.util.math.MathFunctions;
+import org.apache.brooklyn.util.time.Duration;
 
 /**
  * An {@link Enricher} that emits {@link #DOCKER_CONTAINER_CLUSTER_HOT hot} or {@link #DOCKER_CONTAINER_CLUSTER_COLD cold}
@@ -60,6 +72,13 @@ import org.apache.brooklyn.util.math.MathFunctions;
  * {@link MaxContainersPlacementStrategy#DOCKER_CONTAINER_CLUSTER_MAX_SIZE maxContainers} configuration on the
  * infrastructure entity. Workrate thresholds are calculated based on cluster utilisation with the specific headroom
  * available, and the cluster will be resized as appropriate.
+ * <p>
+ * In {@link #PREDICTIVE predictive} mode the enricher also tracks the rates at which containers arrive
+ * and depart, as exponentially weighted moving averages over the {@link #FORECAST_WINDOW forecast window}.
+ * The net arrival rate is projected over the time taken to start a new Docker host, measured from recent
+ * host starts, and the projected containers are added to the headroom required. The cluster is therefore
+ * reported hot early enough for new hosts to be running before the capacity is needed. The forecast is
+ * also recalculated every {@link #RECALCULATE_PERIOD period}, as it decays while the counts are unchanged.
  */
 public class ContainerHeadroomEnricher extends AbstractEnricher {
 
@@ -78,6 +97,39 @@ public class ContainerHeadroomEnricher extends AbstractEnricher {
             "Whether to emit too-cold events (which can trigger auto-scaling down)",
             false);
 
+    @SetFromFlag("predictive")
+    public static final ConfigKey<Boolean> PREDICTIVE = ConfigKeys.newBooleanConfigKey(
+            "docker.container.cluster.headroom.predictive",
+            "Whether to add the containers expected to arrive while a new host starts to the required headroom",
+            Boolean.FALSE);
+
+    @SetFromFlag("forecastWindow")
+    public static final ConfigKey<Duration> FORECAST_WINDOW = ConfigKeys.newDurationConfigKey(
+            "docker.container.cluster.headroom.forecastWindow",
+            "Time constant for the moving averages of container arrival and departure rates",
+            Duration.minutes(10));
+
+    @SetFromFlag("hostStartTime")
+    public static final ConfigKey<Duration> DEFAULT_HOST_START_TIME = ConfigKeys.newDurationConfigKey(
+            "docker.container.cluster.headroom.hostStartTime",
+            "Time taken to start a new Docker host, used until host starts have been measured",
+            Duration.minutes(5));
+
+    @SetFromFlag("recalculatePeriod")
+    public static final ConfigKey<Duration> RECALCULATE_PERIOD = ConfigKeys.newDurationConfigKey(
+            "docker.container.cluster.headroom.recalculatePeriod",
+            "Interval between recalculations of the forecast in predictive mode, when the counts have not changed",
+            Duration.THIRTY_SECONDS);
+
+    public static final AttributeSensor<Double> CONTAINER_ARRIVAL_RATE = Sensors.newDoubleSensor(
+            "docker.container.cluster.arrivalRate", "Average rate of containers arriving (per minute)");
+    public static final AttributeSensor<Double> CONTAINER_DEPARTURE_RATE = Sensors.newDoubleSensor(
+            "docker.container.cluster.departureRate", "Average rate of containers departing (per minute)");
+    public static final AttributeSensor<Duration> HOST_START_TIME = Sensors.newSensor(Duration.class,
+            "docker.container.cluster.hostStartTime", "Average time taken to start recent Docker hosts");
+    public static final AttributeSensor<Integer> CONTAINERS_FORECAST = Sensors.newIntegerSensor(
+            "docker.container.cluster.forecast", "Number of containers expected to arrive while a new Docker host starts");
+
     public static final AttributeSensor<Integer> CONTAINERS_NEEDED = Sensors.newIntegerSensor(
             "docker.container.cluster.needed", "Number of containers needed to give requierd headroom");
     public static final AttributeSensor<Double> DOCKER_CONTAINER_UTILISATION = Sensors.newDoubleSensor(
@@ -94,8 +146,18 @@ public class ContainerHeadroomEnricher extends AbstractEnricher {
         RendererHints.register(DOCKER_CONTAINER_UTILISATION, RendererHints.displayValue(MathFunctions.percent(3)));
     }
 
+    /** The number of recent host starts averaged for the host start time. */
+    private static final int HOST_STARTS = 5;
+
     private BasicNotificationSensor lastPublished = null;
 
+    private Integer lastCount = null;
+    private long lastChange = 0L;
+    private double arrivalRate = 0d;
+    private double departureRate = 0d;
+    private final Deque<Long> hostStarts = Queues.newArrayDeque();
+    private transient Task<?> recalculation;
+
     @Override
     public void setEntity(EntityLocal entity) {
         Preconditions.checkArgument(entity instanceof DockerInfrastructure, "Entity must be a DockerInfrastructure: %s", entity);
@@ -113,16 +175,115 @@ public class ContainerHeadroomEnricher extends AbstractEnricher {
 
         subscriptions().subscribe(entity, DockerInfrastructure.DOCKER_CONTAINER_COUNT, new Listener());
         subscriptions().subscribe(entity, DockerInfrastructure.DOCKER_HOST_COUNT, new Listener());
+
+        if (Boolean.TRUE.equals(config().get(PREDICTIVE))) {
+            Group hosts = entity.sensors().get(DockerInfrastructure.DOCKER_HOST_CLUSTER);
+            if (hosts != null) {
+                subscriptions().subscribeToMembers(hosts, Startable.SERVICE_UP, new HostStartListener());
+            }
+        }
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (recalculation != null) {
+            recalculation.cancel(true);
+            recalculation = null;
+        }
+        super.destroy();
     }
 
     private class Listener implements SensorEventListener<Object> {
         @Override
         public void onEvent(SensorEvent<Object> event) {
+            if (Boolean.TRUE.equals(config().get(PREDICTIVE))) scheduleRecalculation();
             recalculate();
         }
     }
 
-    private void recalculate() {
+    /** Start recalculating periodically, once the entity is publishing events. */
+    private synchronized void scheduleRecalculation() {
+        if (recalculation != null || isDestroyed()) return;
+        Callable<Task<?>> factory = new Callable<Task<?>>() {
+            @Override
+            public Task<?> call() {
+                return Tasks.builder()
+                        .displayName("Recalculate headroom forecast")
+                        .body(new Runnable() {
+                            @Override
+                            public void run() {
+                                // Do not throw, or the scheduled task stops
+                                try {
+                                    recalculate();
+                                } catch (Exception e) {
+                                    Exceptions.propagateIfFatal(e);
+                                    LOG.debug("Error recalculating headroom for {}: {}", entity, e.getMessage());
+                                }
+                            }
+                        })
+                        .build();
+            }
+        };
+        recalculation = ((EntityInternal) entity).getExecutionContext().submit(
+                new ScheduledTask(MutableMap.of("displayName", "Headroom forecast"), factory).period(config().get(RECALCULATE_PERIOD)));
+    }
+
+    private class HostStartListener implements SensorEventListener<Boolean> {
+        @Override
+        public void onEvent(SensorEvent<Boolean> event) {
+            if (Boolean.TRUE.equals(event.getValue())) {
+                recordHostStart(event.getTimestamp() - event.getSource().getCreationTime());
+            }
+        }
+    }
+
+    private synchronized void recordHostStart(long millis) {
+        // Ignore hosts that were restarted or rebound, long after they were created
+        if (millis <= 0L || millis > config().get(DEFAULT_HOST_START_TIME).toMilliseconds() * 10L) return;
+        hostStarts.addLast(millis);
+        while (hostStarts.size() > HOST_STARTS) hostStarts.removeFirst();
+        emit(HOST_START_TIME, getHostStartTime());
+    }
+
+    private synchronized Duration getHostStartTime() {
+        if (hostStarts.isEmpty()) return config().get(DEFAULT_HOST_START_TIME);
+        long total = 0L;
+        for (Long start : hostStarts) total += start;
+        return Duration.millis(total / hostStarts.size());
+    }
+
+    /**
+     * Update the moving averages of the container arrival and departure rates,
+     * weighting the rate since the last change by the time it covers.
+     */
+    private synchronized void recordContainers(int containers, long now) {
+        if (lastCount != null) {
+            int delta = containers - lastCount;
+            if (delta == 0) return;
+            double seconds = Math.max(1d, (now - lastChange) / 1000d);
+            double alpha = 1d - Math.exp(-seconds / (config().get(FORECAST_WINDOW).toMilliseconds() / 1000d));
+            arrivalRate += alpha * (Math.max(0, delta) / seconds - arrivalRate);
+            departureRate += alpha * (Math.max(0, -delta) / seconds - departureRate);
+        }
+        lastCount = containers;
+        lastChange = now;
+    }
+
+    /**
+     * The containers expected to arrive while a new host starts, from the net
+     * arrival rate, decayed over the time since containers last changed.
+     */
+    private synchronized int forecast(long now) {
+        double seconds = Math.max(0d, (now - lastChange) / 1000d);
+        double decay = Math.exp(-seconds / (config().get(FORECAST_WINDOW).toMilliseconds() / 1000d));
+        emit(CONTAINER_ARRIVAL_RATE, arrivalRate * decay * 60d);
+        emit(CONTAINER_DEPARTURE_RATE, departureRate * decay * 60d);
+        double net = (arrivalRate - departureRate) * decay;
+        // Round rather than ceil, so the forecast returns to zero once arrivals stop
+        return (int) Math.max(0L, Math.round(net * getHostStartTime().toMilliseconds() / 1000d));
+    }
+
+    private synchronized void recalculate() {
         Integer maxContainers = null;
         List<DockerAwarePlacementStrategy> strategies = entity.config().get(DockerInfrastructure.PLACEMENT_STRATEGIES);
         Optional<DockerAwarePlacementStrategy> lookup = Iterables.tryFind(strategies, Predicates.instanceOf(MaxContainersPlacementStrategy.class));
@@ -151,6 +312,15 @@ public class ContainerHeadroomEnricher extends AbstractEnricher {
             headroom = (int) Math.ceil(percent * possible);
         }
 
+        // Add the containers expected before a new host could start
+        if (Boolean.TRUE.equals(config().get(PREDICTIVE))) {
+            long now = System.currentTimeMillis();
+            recordContainers(containers, now);
+            int forecast = forecast(now);
+            emit(CONTAINERS_FORECAST, forecast);
+            headroom += forecast;
+        }
+
         // Calculate requirements
         int needed = headroom - available;
         double utilisation = (double) containers / (double) possible;
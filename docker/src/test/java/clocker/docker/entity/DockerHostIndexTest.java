@@ -0,0 +1,121 @@
+/*
+ * Copyright 2014-2016 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package clocker.docker.entity;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import clocker.docker.entity.util.DockerHostIndex;
+
+import com.google.common.collect.ImmutableSet;
+
+import org.apache.brooklyn.api.entity.EntitySpec;
+import org.apache.brooklyn.core.test.BrooklynAppUnitTestSupport;
+import org.apache.brooklyn.core.test.entity.TestEntity;
+import org.apache.brooklyn.entity.stock.BasicEntity;
+
+public class DockerHostIndexTest extends BrooklynAppUnitTestSupport {
+
+    private BasicEntity cluster;
+    private TestEntity web;
+    private TestEntity webBackup;
+    private BasicEntity database;
+    private DockerHostIndex index;
+
+    @BeforeMethod(alwaysRun=true)
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        cluster = app.createAndManageChild(EntitySpec.create(BasicEntity.class));
+        web = cluster.addChild(EntitySpec.create(TestEntity.class).displayName("web"));
+        webBackup = cluster.addChild(EntitySpec.create(TestEntity.class).displayName("web-backup"));
+        database = app.createAndManageChild(EntitySpec.create(BasicEntity.class).displayName("database"));
+        index = new DockerHostIndex();
+    }
+
+    @Test
+    public void testPlacementsIndexed() {
+        index.addPlacement("host1", web);
+        index.addPlacement("host1", database);
+        index.addPlacement("host2", webBackup);
+
+        Assert.assertEquals(index.getContainerCount("host1"), 2);
+        Assert.assertEquals(index.getContainerCount("host2"), 1);
+        Assert.assertEquals(index.getContainerCount("host3"), 0);
+        Assert.assertEquals(index.getEntities("host1"), ImmutableSet.of(web, database));
+        Assert.assertEquals(index.getHostsWithApplication(app.getId()), ImmutableSet.of("host1", "host2"));
+        Assert.assertEquals(index.getHostsWithChildrenOf(cluster.getId()), ImmutableSet.of("host1", "host2"));
+        Assert.assertTrue(index.hasChildrenOf("host2", cluster.getId()));
+        Assert.assertFalse(index.hasChildrenOf("host2", app.getId()));
+    }
+
+    @Test
+    public void testTypesMatchedIgnoringCase() {
+        index.addPlacement("host1", web);
+        index.addPlacement("host2", database);
+
+        Assert.assertEquals(index.getHostsWithType(TestEntity.class.getName()), ImmutableSet.of("host1"));
+        Assert.assertEquals(index.getHostsWithType("basicentity"), ImmutableSet.of("host2"));
+        Assert.assertTrue(index.hasType("host1", "TestEntity"));
+        Assert.assertFalse(index.hasType("host1", "BasicEntity"));
+    }
+
+    @Test
+    public void testRemovePlacement() {
+        index.addPlacement("host1", web);
+        index.addPlacement("host1", webBackup);
+        index.removePlacement(web);
+
+        Assert.assertEquals(index.getContainerCount("host1"), 1);
+        Assert.assertEquals(index.getEntities("host1"), ImmutableSet.of(webBackup));
+        Assert.assertTrue(index.hasApplication("host1", app.getId()));
+
+        index.removePlacement(webBackup);
+        Assert.assertEquals(index.getContainerCount("host1"), 0);
+        Assert.assertFalse(index.hasApplication("host1", app.getId()));
+        Assert.assertTrue(index.getHostsWithType("TestEntity").isEmpty());
+    }
+
+    @Test
+    public void testPlacementMovesHost() {
+        index.addPlacement("host1", web);
+        index.addPlacement("host2", web);
+
+        Assert.assertEquals(index.getContainerCount("host1"), 0);
+        Assert.assertEquals(index.getContainerCount("host2"), 1);
+        Assert.assertEquals(index.getHostsWithChildrenOf(cluster.getId()), ImmutableSet.of("host2"));
+    }
+
+    @Test
+    public void testSummaryUpdatedWhenHostChanges() {
+        index.addPlacement("host1", web);
+        DockerHostIndex.Summary summary = index.getSummary("host1");
+        Assert.assertSame(index.getSummary("host1"), summary);
+        Assert.assertEquals(summary.countType("TestEntity"), 1);
+        Assert.assertEquals(summary.countNameContaining("WEB"), 1);
+        Assert.assertEquals(summary.countId(web.getId()), 1);
+        Assert.assertEquals(summary.countApplication(app.getId()), 1);
+
+        index.addPlacement("host1", webBackup);
+        summary = index.getSummary("host1");
+        Assert.assertEquals(summary.size(), 2);
+        Assert.assertEquals(summary.countType(TestEntity.class.getName()), 2);
+        Assert.assertEquals(summary.countNameContaining("backup"), 1);
+        Assert.assertTrue(index.getSummary("empty").isEmpty());
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2014-2016 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package clocker.docker.entity;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import clocker.docker.entity.util.DockerHostReservations;
+import clocker.docker.entity.util.DockerHostReservations.Claim;
+import clocker.docker.entity.util.DockerHostReservations.Reservation;
+import clocker.docker.entity.util.DockerHostReservations.Resources;
+import clocker.docker.entity.util.DockerHostReservations.State;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+import org.apache.brooklyn.util.time.Duration;
+
+public class DockerHostReservationsTest {
+
+    private static final Resources CONTAINER = Resources.container(512L, 1024L);
+    private static final Resources LIMIT = new Resources(Integer.MAX_VALUE, 1024L, Long.MAX_VALUE);
+
+    @Test
+    public void testReservationsWithinLimit() {
+        DockerHostReservations reservations = new DockerHostReservations();
+        Optional<Reservation> first = reservations.tryReserve("host", CONTAINER, LIMIT, ImmutableList.<Claim>of(), Duration.ONE_MINUTE);
+        Optional<Reservation> second = reservations.tryReserve("host", CONTAINER, LIMIT, ImmutableList.<Claim>of(), Duration.ONE_MINUTE);
+        Optional<Reservation> third = reservations.tryReserve("host", CONTAINER, LIMIT, ImmutableList.<Claim>of(), Duration.ONE_MINUTE);
+        Assert.assertTrue(first.isPresent());
+        Assert.assertTrue(second.isPresent());
+        Assert.assertFalse(third.isPresent());
+        Assert.assertEquals(reservations.getReserved("host").getContainers(), 2);
+
+        first.get().commit();
+        first.get().rollback();
+        Assert.assertEquals(first.get().getState(), State.COMMITTED);
+        Assert.assertEquals(reservations.getReserved("host").getCpuShares(), 512L);
+    }
+
+    @Test
+    public void testClaimsExcludeOtherOwners() {
+        DockerHostReservations reservations = new DockerHostReservations();
+        Optional<Reservation> first = reservations.tryReserve("host", CONTAINER, Resources.UNLIMITED, ImmutableList.of(new Claim("key", "a")), Duration.ONE_MINUTE);
+        Optional<Reservation> same = reservations.tryReserve("host", CONTAINER, Resources.UNLIMITED, ImmutableList.of(new Claim("key", "a")), Duration.ONE_MINUTE);
+        Optional<Reservation> other = reservations.tryReserve("host", CONTAINER, Resources.UNLIMITED, ImmutableList.of(new Claim("key", "b")), Duration.ONE_MINUTE);
+        Assert.assertTrue(first.isPresent());
+        Assert.assertTrue(same.isPresent());
+        Assert.assertFalse(other.isPresent());
+
+        first.get().rollback();
+        Assert.assertEquals(reservations.getOwner("key").orNull(), "a");
+        same.get().rollback();
+        Assert.assertFalse(reservations.getOwner("key").isPresent());
+        Assert.assertEquals(reservations.getReserved("host").getContainers(), 0);
+    }
+
+    @Test
+    public void testExpiredReservationsRolledBack() {
+        DockerHostReservations reservations = new DockerHostReservations();
+        Optional<Reservation> reservation = reservations.tryReserve("host", CONTAINER, Resources.UNLIMITED, ImmutableList.of(new Claim("key", "a")), Duration.millis(-1));
+        Assert.assertTrue(reservation.isPresent());
+        Assert.assertEquals(reservations.getReserved("host").getContainers(), 0);
+        Assert.assertEquals(reservation.get().getState(), State.EXPIRED);
+        Assert.assertFalse(reservations.getOwner("key").isPresent());
+    }
+
+    @Test
+    public void testRenewedReservationKept() {
+        DockerHostReservations reservations = new DockerHostReservations();
+        Optional<Reservation> reservation = reservations.tryReserve("host", CONTAINER, Resources.UNLIMITED, ImmutableList.<Claim>of(), Duration.ONE_MINUTE);
+        reservation.get().renew();
+        Assert.assertEquals(reservations.getReserved("host").getContainers(), 1);
+        reservation.get().rollback();
+        reservation.get().renew();
+        Assert.assertEquals(reservation.get().getState(), State.ROLLED_BACK);
+        Assert.assertEquals(reservations.getReserved("host").getContainers(), 0);
+    }
+
+}
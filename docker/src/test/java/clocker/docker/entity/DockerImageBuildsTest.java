@@ -0,0 +1,88 @@
+/*
+ * Copyright 2014-2016 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package clocker.docker.entity;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import clocker.docker.entity.util.DockerImageBuilds;
+import clocker.docker.entity.util.DockerImageBuilds.Build;
+
+import com.google.common.base.Optional;
+
+import org.apache.brooklyn.util.time.Duration;
+
+public class DockerImageBuildsTest {
+
+    private static final String IMAGE = "registry:5000/abcdef:latest";
+
+    @Test
+    public void testFirstClaimBuilds() {
+        DockerImageBuilds builds = new DockerImageBuilds();
+        Build first = builds.claim(IMAGE, "first");
+        Build second = builds.claim(IMAGE, "second");
+        Assert.assertSame(second, first);
+        Assert.assertTrue(first.isBuilder("first"));
+        Assert.assertFalse(second.isBuilder("second"));
+        Assert.assertEquals(second.getBuilderId(), "first");
+    }
+
+    @Test
+    public void testAwaitReturnsPushedImage() {
+        DockerImageBuilds builds = new DockerImageBuilds();
+        Build build = builds.claim(IMAGE, "first");
+        Build waiting = builds.claim(IMAGE, "second");
+        builds.complete(build, IMAGE);
+        Assert.assertEquals(waiting.await(Duration.ONE_SECOND), Optional.of(IMAGE));
+    }
+
+    @Test
+    public void testAwaitTimesOut() {
+        DockerImageBuilds builds = new DockerImageBuilds();
+        builds.claim(IMAGE, "first");
+        Build waiting = builds.claim(IMAGE, "second");
+        Assert.assertFalse(waiting.await(Duration.millis(10)).isPresent());
+    }
+
+    @Test
+    public void testFailedBuildIsForgotten() {
+        DockerImageBuilds builds = new DockerImageBuilds();
+        Build build = builds.claim(IMAGE, "first");
+        Build waiting = builds.claim(IMAGE, "second");
+        builds.complete(build, null);
+        Assert.assertFalse(waiting.await(Duration.ONE_SECOND).isPresent());
+        Build retry = builds.claim(IMAGE, "third");
+        Assert.assertNotSame(retry, build);
+        Assert.assertTrue(retry.isBuilder("third"));
+    }
+
+    @Test
+    public void testCompletedBuildForgottenAfterWaitersRelease() {
+        DockerImageBuilds builds = new DockerImageBuilds();
+        Build build = builds.claim(IMAGE, "first");
+        Build waiting = builds.claim(IMAGE, "second");
+        builds.complete(build, IMAGE);
+        Assert.assertEquals(builds.size(), 1);
+        Build third = builds.claim(IMAGE, "third");
+        Assert.assertSame(third, build);
+        builds.release(waiting);
+        Assert.assertEquals(builds.size(), 1);
+        builds.release(third);
+        Assert.assertEquals(builds.size(), 0);
+        Assert.assertTrue(builds.claim(IMAGE, "fourth").isBuilder("fourth"));
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2014-2016 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package clocker.docker.entity;
+
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import clocker.docker.entity.util.DockerImageCollector;
+import clocker.docker.entity.util.DockerImageCollector.Image;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+public class DockerImageCollectorTest {
+
+    private static final Image OLD = new Image("sha256:old", ImmutableList.of("old:latest"), 100L, 1000L);
+    private static final Image MIDDLE = new Image("sha256:middle", ImmutableList.of("registry:5000/middle:1.0"), 100L, 2000L);
+    private static final Image NEW = new Image("sha256:new", ImmutableList.<String>of(), 100L, 3000L);
+
+    @Test
+    public void testSelectsLeastRecentlyCreatedFirst() {
+        DockerImageCollector collector = new DockerImageCollector();
+        List<Image> selected = collector.select(ImmutableList.of(NEW, OLD, MIDDLE), ImmutableSet.<String>of(), ImmutableSet.<String>of(), 150L);
+        Assert.assertEquals(selected, ImmutableList.of(OLD, MIDDLE));
+    }
+
+    @Test
+    public void testRecentlyUsedImageSelectedLast() {
+        DockerImageCollector collector = new DockerImageCollector();
+        collector.touch(OLD.getId());
+        List<Image> selected = collector.select(ImmutableList.of(NEW, OLD, MIDDLE), ImmutableSet.<String>of(), ImmutableSet.<String>of(), 300L);
+        Assert.assertEquals(selected, ImmutableList.of(MIDDLE, NEW, OLD));
+    }
+
+    @Test
+    public void testSkipsImagesInUseAndPinned() {
+        DockerImageCollector collector = new DockerImageCollector();
+        List<Image> selected = collector.select(ImmutableList.of(NEW, OLD, MIDDLE),
+                ImmutableSet.of(NEW.getId()), ImmutableSet.of("registry:5000/middle"), 300L);
+        Assert.assertEquals(selected, ImmutableList.of(OLD));
+    }
+
+    @Test
+    public void testSkipsImagesUsedWithinGracePeriod() {
+        DockerImageCollector collector = new DockerImageCollector();
+        collector.touch(OLD.getId());
+        List<Image> selected = collector.select(ImmutableList.of(NEW, OLD, MIDDLE), ImmutableSet.<String>of(), ImmutableSet.<String>of(), 300L, 2500L);
+        Assert.assertEquals(selected, ImmutableList.of(MIDDLE));
+    }
+
+    @Test
+    public void testImageUsedByTag() {
+        DockerImageCollector collector = new DockerImageCollector();
+        collector.touch("old:latest");
+        List<Image> selected = collector.select(ImmutableList.of(NEW, OLD, MIDDLE), ImmutableSet.<String>of(), ImmutableSet.<String>of(), 300L);
+        Assert.assertEquals(selected, ImmutableList.of(MIDDLE, NEW, OLD));
+    }
+
+    @Test
+    public void testRestoredUsage() {
+        DockerImageCollector saved = new DockerImageCollector();
+        saved.touch(OLD.getId());
+        DockerImageCollector collector = new DockerImageCollector();
+        collector.restore(saved.getUsage());
+        List<Image> selected = collector.select(ImmutableList.of(NEW, OLD, MIDDLE), ImmutableSet.<String>of(), ImmutableSet.<String>of(), 300L);
+        Assert.assertEquals(selected, ImmutableList.of(MIDDLE, NEW, OLD));
+    }
+
+    @Test
+    public void testPinnedByTag() {
+        DockerImageCollector collector = new DockerImageCollector();
+        List<Image> selected = collector.select(ImmutableList.of(OLD, MIDDLE),
+                ImmutableSet.<String>of(), ImmutableSet.of("old:latest", "sha256:middle"), 300L);
+        Assert.assertTrue(selected.isEmpty());
+    }
+
+}
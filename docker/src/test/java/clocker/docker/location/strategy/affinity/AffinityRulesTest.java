@@ -0,0 +1,173 @@
+/*
+ * Copyright 2014-2016 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package clocker.docker.location.strategy.affinity;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import clocker.docker.entity.util.DockerHostIndex;
+
+import com.google.common.base.Predicate;
+
+import org.apache.brooklyn.api.entity.Entity;
+import org.apache.brooklyn.api.entity.EntitySpec;
+import org.apache.brooklyn.core.test.BrooklynAppUnitTestSupport;
+import org.apache.brooklyn.core.test.entity.TestEntity;
+import org.apache.brooklyn.entity.stock.BasicEntity;
+
+public class AffinityRulesTest extends BrooklynAppUnitTestSupport {
+
+    private TestEntity entity;
+    private TestEntity sameType;
+    private BasicEntity otherType;
+
+    @BeforeMethod(alwaysRun=true)
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        entity = app.createAndManageChild(EntitySpec.create(TestEntity.class).displayName("web"));
+        sameType = app.createAndManageChild(EntitySpec.create(TestEntity.class).displayName("web-backup"));
+        otherType = app.createAndManageChild(EntitySpec.create(BasicEntity.class).displayName("database"));
+    }
+
+    @Test
+    public void testType() {
+        AffinityRules rules = AffinityRules.rulesFor(entity).parse("TYPE");
+        Assert.assertTrue(rules.apply(sameType));
+        Assert.assertFalse(rules.apply(otherType));
+    }
+
+    @Test
+    public void testTypeWithParameter() {
+        AffinityRules rules = AffinityRules.rulesFor(entity).parse("TYPE " + BasicEntity.class.getName());
+        Assert.assertFalse(rules.apply(sameType));
+        Assert.assertTrue(rules.apply(otherType));
+        Assert.assertTrue(AffinityRules.rulesFor(entity).parse("TYPE BasicEntity").apply(otherType));
+    }
+
+    @Test
+    public void testNameWithParameter() {
+        AffinityRules rules = AffinityRules.rulesFor(entity).parse("NAME web");
+        Assert.assertTrue(rules.apply(sameType));
+        Assert.assertFalse(rules.apply(otherType));
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testNameRequiresParameter() {
+        AffinityRules.rulesFor(entity).parse("NAME");
+    }
+
+    @Test
+    public void testId() {
+        AffinityRules rules = AffinityRules.rulesFor(entity).parse("ID");
+        Assert.assertTrue(rules.apply(entity));
+        Assert.assertFalse(rules.apply(sameType));
+    }
+
+    @Test
+    public void testIdWithParameter() {
+        AffinityRules rules = AffinityRules.rulesFor(entity).parse("ID " + otherType.getId());
+        Assert.assertFalse(rules.apply(sameType));
+        Assert.assertTrue(rules.apply(otherType));
+    }
+
+    @Test
+    public void testApplication() {
+        AffinityRules rules = AffinityRules.rulesFor(entity).parse("APPLICATION");
+        Assert.assertTrue(rules.apply(sameType));
+        Assert.assertTrue(rules.apply(otherType));
+    }
+
+    @Test
+    public void testApplicationWithParameter() {
+        Assert.assertTrue(AffinityRules.rulesFor(entity).parse("APPLICATION " + app.getId()).apply(otherType));
+        Assert.assertFalse(AffinityRules.rulesFor(entity).parse("APPLICATION other").apply(otherType));
+    }
+
+    @Test
+    public void testPredicateWithParameter() {
+        AffinityRules rules = AffinityRules.rulesFor(entity).parse("PREDICATE " + WebPredicate.class.getName());
+        Assert.assertTrue(rules.apply(sameType));
+        Assert.assertFalse(rules.apply(otherType));
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testPredicateRequiresParameter() {
+        AffinityRules.rulesFor(entity).parse("PREDICATE");
+    }
+
+    @Test
+    public void testPredicateInstantiatedPerParse() {
+        int before = WebPredicate.INSTANCES.get();
+        AffinityRules.rulesFor(entity).parse("PREDICATE " + WebPredicate.class.getName());
+        AffinityRules.rulesFor(sameType).parse("PREDICATE " + WebPredicate.class.getName());
+        Assert.assertEquals(WebPredicate.INSTANCES.get(), before + 2);
+    }
+
+    @Test
+    public void testNot() {
+        AffinityRules rules = AffinityRules.rulesFor(entity).parse("NOT TYPE");
+        Assert.assertFalse(rules.apply(sameType));
+        Assert.assertTrue(rules.apply(otherType));
+
+        rules = AffinityRules.rulesFor(entity).parse("NOT ID " + otherType.getId());
+        Assert.assertTrue(rules.apply(sameType));
+        Assert.assertFalse(rules.apply(otherType));
+    }
+
+    @Test
+    public void testEmpty() {
+        Assert.assertTrue(AffinityRules.rulesFor(entity).parse("TYPE").allowEmptyLocations());
+        Assert.assertTrue(AffinityRules.rulesFor(entity).parse("EMPTY").allowEmptyLocations());
+        Assert.assertFalse(AffinityRules.rulesFor(entity).parse("NOT EMPTY").allowEmptyLocations());
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testEmptyRejectsParameter() {
+        AffinityRules.rulesFor(entity).parse("EMPTY host");
+    }
+
+    @Test
+    public void testHostSummary() {
+        DockerHostIndex index = new DockerHostIndex();
+        index.addPlacement("web", sameType);
+        index.addPlacement("database", otherType);
+
+        AffinityRules rules = AffinityRules.rulesFor(entity).parse("NOT TYPE", "NOT EMPTY");
+        Assert.assertFalse(rules.apply(index.getSummary("web")));
+        Assert.assertTrue(rules.apply(index.getSummary("database")));
+        Assert.assertFalse(rules.apply(index.getSummary("empty")));
+    }
+
+    public static class WebPredicate implements Predicate<Entity> {
+        static final AtomicInteger INSTANCES = new AtomicInteger();
+
+        public WebPredicate() {
+            INSTANCES.incrementAndGet();
+        }
+
+        @Override
+        public boolean apply(@Nullable Entity input) {
+            return input != null && input.getDisplayName().startsWith("web");
+        }
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014-2016 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package clocker.docker.networking;
+
+import java.net.InetAddress;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import clocker.docker.networking.entity.sdn.util.SubnetAddressAllocator;
+
+import org.apache.brooklyn.util.net.Cidr;
+import org.apache.brooklyn.util.net.Networking;
+
+public class SubnetAddressAllocatorTest {
+
+    @Test
+    public void testAllocateSkipsNetworkAddress() {
+        SubnetAddressAllocator allocator = new SubnetAddressAllocator(new Cidr("10.1.0.0/24"));
+        Assert.assertEquals(allocator.allocate().getHostAddress(), "10.1.0.1");
+        Assert.assertEquals(allocator.allocate().getHostAddress(), "10.1.0.2");
+        Assert.assertEquals(allocator.getAllocatedCount(), 2);
+        Assert.assertEquals(allocator.getCapacity(), 254);
+    }
+
+    @Test
+    public void testReleasedAddressIsReused() {
+        SubnetAddressAllocator allocator = new SubnetAddressAllocator(new Cidr("10.1.0.0/30"));
+        InetAddress first = allocator.allocate();
+        allocator.allocate();
+        Assert.assertTrue(allocator.release(first));
+        Assert.assertFalse(allocator.release(first));
+        Assert.assertEquals(allocator.allocate(), first);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testSubnetExhausted() {
+        SubnetAddressAllocator allocator = new SubnetAddressAllocator(new Cidr("10.1.0.0/30"));
+        allocator.allocate();
+        allocator.allocate();
+        allocator.allocate();
+    }
+
+    @Test
+    public void testRecordIgnoresAddressOutsideSubnet() {
+        SubnetAddressAllocator allocator = new SubnetAddressAllocator(new Cidr("10.1.0.0/24"));
+        Assert.assertTrue(allocator.record(Networking.getInetAddressWithFixedName("10.1.0.7")));
+        Assert.assertFalse(allocator.record(Networking.getInetAddressWithFixedName("10.1.1.7")));
+        Assert.assertFalse(allocator.record(Networking.getInetAddressWithFixedName("10.1.0.255")));
+        Assert.assertEquals(allocator.getAllocatedCount(), 1);
+    }
+
+    @Test
+    public void testEncodeAndDecode() {
+        Cidr cidr = new Cidr("10.1.0.0/24");
+        SubnetAddressAllocator allocator = new SubnetAddressAllocator(cidr);
+        allocator.allocate();
+        allocator.record(Networking.getInetAddressWithFixedName("10.1.0.200"));
+
+        SubnetAddressAllocator restored = SubnetAddressAllocator.decode(cidr, allocator.encode());
+        Assert.assertEquals(restored.getAllocatedCount(), 2);
+        Assert.assertTrue(restored.release(Networking.getInetAddressWithFixedName("10.1.0.200")));
+        Assert.assertEquals(SubnetAddressAllocator.decode(cidr, null).getAllocatedCount(), 0);
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2014-2016 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package clocker.docker.networking;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import clocker.docker.networking.entity.sdn.util.SubnetCidrAllocator;
+
+import org.apache.brooklyn.util.net.Cidr;
+
+public class SubnetCidrAllocatorTest {
+
+    @Test
+    public void testAllocateInOrder() {
+        SubnetCidrAllocator allocator = new SubnetCidrAllocator(new Cidr("10.0.0.0/22"));
+        Assert.assertEquals(allocator.allocate(24).toString(), "10.0.0.0/24");
+        Assert.assertEquals(allocator.allocate(24).toString(), "10.0.1.0/24");
+        Assert.assertEquals(allocator.getAllocatedCount(), 2);
+        Assert.assertEquals(allocator.getUtilisation(), 0.5d, 0.0001d);
+    }
+
+    @Test
+    public void testReleasedSubnetIsReused() {
+        SubnetCidrAllocator allocator = new SubnetCidrAllocator(new Cidr("10.0.0.0/22"));
+        Cidr first = allocator.allocate(24);
+        allocator.allocate(24);
+        Assert.assertTrue(allocator.release(first));
+        Assert.assertFalse(allocator.release(first));
+        Assert.assertEquals(allocator.allocate(24), first);
+    }
+
+    @Test
+    public void testVariableLengthsAndMerge() {
+        SubnetCidrAllocator allocator = new SubnetCidrAllocator(new Cidr("10.0.0.0/22"));
+        Cidr small = allocator.allocate(25);
+        Cidr large = allocator.allocate(23);
+        Assert.assertEquals(small.toString(), "10.0.0.0/25");
+        Assert.assertEquals(large.toString(), "10.0.2.0/23");
+
+        // The whole pool is only free again once both subnets are released
+        Assert.assertTrue(allocator.release(small));
+        Assert.assertTrue(allocator.release(large));
+        Assert.assertEquals(allocator.allocate(22).toString(), "10.0.0.0/22");
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testPoolExhausted() {
+        SubnetCidrAllocator allocator = new SubnetCidrAllocator(new Cidr("10.0.0.0/23"));
+        allocator.allocate(24);
+        allocator.allocate(24);
+        allocator.allocate(24);
+    }
+
+    @Test
+    public void testRecordAndEncode() {
+        Cidr pool = new Cidr("10.0.0.0/22");
+        SubnetCidrAllocator allocator = new SubnetCidrAllocator(pool);
+        Assert.assertTrue(allocator.record(new Cidr("10.0.2.0/24")));
+        Assert.assertTrue(allocator.record(new Cidr("10.0.2.0/24")));
+        Assert.assertFalse(allocator.record(new Cidr("10.0.2.0/25")));
+        Assert.assertFalse(allocator.record(new Cidr("10.1.0.0/24")));
+        Assert.assertEquals(allocator.allocate(23).toString(), "10.0.0.0/23");
+
+        SubnetCidrAllocator restored = SubnetCidrAllocator.decode(pool, allocator.encode());
+        Assert.assertEquals(restored.getAllocatedCount(), 2);
+        Assert.assertEquals(restored.allocate(24).toString(), "10.0.3.0/24");
+        Assert.assertEquals(SubnetCidrAllocator.decode(pool, null).getAllocatedCount(), 0);
+    }
+
+}
@@ -25,6 +25,9 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import clocker.docker.entity.DockerInfrastructure;
+import clocker.docker.entity.util.DockerHostIndex;
+import clocker.docker.entity.util.DockerHostReservations;
+import clocker.docker.entity.util.DockerImageBuilds;
 import clocker.docker.location.DockerLocation;
 import clocker.docker.location.strategy.basic.MaxContainersPlacementStrategy;
 import clocker.docker.policy.ContainerHeadroomEnricher;
@@ -201,6 +204,44 @@ public class ContainerHeadroomEnricherTest extends BrooklynAppUnitTestSupport {
         assertNoEventsContinually();
     }
 
+    // Integration because takes several seconds, and because time-sensitive:
+    // the forecast depends on the interval between the container count changes.
+    @Test(groups="integration")
+    public void testPredictiveTooHotBeforeHeadroomExceeded() throws Exception {
+        entity.enrichers().add(EnricherSpec.create(ContainerHeadroomEnricher.class)
+                .configure(ContainerHeadroomEnricher.CONTAINER_HEADROOM, 4)
+                .configure(ContainerHeadroomEnricher.PREDICTIVE, true)
+                .configure(ContainerHeadroomEnricher.FORECAST_WINDOW, Duration.ONE_SECOND)
+                .configure(ContainerHeadroomEnricher.DEFAULT_HOST_START_TIME, Duration.ONE_MINUTE)
+                .configure(ContainerHeadroomEnricher.RECALCULATE_PERIOD, Duration.millis(100)));
+
+        entity.sensors().set(DockerInfrastructure.DOCKER_HOST_COUNT, 2);
+        entity.sensors().set(DockerInfrastructure.DOCKER_CONTAINER_COUNT, 8);
+
+        assertNoEventsContinually();
+
+        // Still within the headroom (6 available), but arriving fast enough to
+        // fill a host before a new one could start
+        entity.sensors().set(DockerInfrastructure.DOCKER_CONTAINER_COUNT, 10);
+
+        Asserts.succeedsEventually(assertMap, new Runnable() {
+            public void run() {
+                List<SensorEvent<Object>> events = listener.getEvents();
+                assertTrue(events.size() > 0, "events="+events);
+                assertEquals(events.get(0).getSensor(), ContainerHeadroomEnricher.DOCKER_CONTAINER_CLUSTER_HOT);
+                assertTrue(entity.sensors().get(ContainerHeadroomEnricher.CONTAINERS_FORECAST) > 0);
+            }});
+
+        // With no further arrivals the forecast decays on the timer, and becomes ok again
+        Asserts.succeedsEventually(ImmutableMap.of("timeout", Duration.TEN_SECONDS), new Runnable() {
+            public void run() {
+                List<SensorEvent<Object>> events = listener.getEvents();
+                assertEquals(events.get(events.size() - 1).getSensor(), ContainerHeadroomEnricher.DOCKER_CONTAINER_CLUSTER_OK);
+                assertEquals(entity.sensors().get(ContainerHeadroomEnricher.CONTAINERS_FORECAST), Integer.valueOf(0));
+            }});
+        assertEquals(entity.sensors().get(ContainerHeadroomEnricher.CONTAINERS_NEEDED), Integer.valueOf(4 - (16 - 10)));
+    }
+
     private void assertNoEventsContinually() {
         Asserts.succeedsContinually(new Runnable() {
             public void run() {
@@ -321,6 +362,31 @@ public class ContainerHeadroomEnricherTest extends BrooklynAppUnitTestSupport {
             throw new UnsupportedOperationException();
         }
 
+        @Override
+        public DockerHostIndex getHostIndex() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public DockerImageBuilds getImageBuilds() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void recordImageUsage(String fullyQualifiedImageName) {
+            // no-op
+        }
+
+        @Override
+        public List<String> getFrequentImages(int count) {
+            return ImmutableList.of();
+        }
+
+        @Override
+        public DockerHostReservations getHostReservations() {
+            throw new UnsupportedOperationException();
+        }
+
         @Override
         public Object getInfrastructureMutex() {
             return new Object[0];
@@ -16,10 +16,13 @@
 package org.apache.brooklyn.entity.proxy.haproxy;
 
 import org.apache.brooklyn.api.entity.ImplementedBy;
+import org.apache.brooklyn.api.sensor.AttributeSensor;
 import org.apache.brooklyn.config.ConfigKey;
 import org.apache.brooklyn.core.config.ConfigKeys;
+import org.apache.brooklyn.core.sensor.Sensors;
 import org.apache.brooklyn.entity.proxy.AbstractController;
 import org.apache.brooklyn.util.core.flags.SetFromFlag;
+import org.apache.brooklyn.util.time.Duration;
 
 @ImplementedBy(HAProxyControllerImpl.class)
 public interface HAProxyController extends AbstractController {
@@ -43,4 +46,29 @@ public interface HAProxyController extends AbstractController {
             "haproxy.frontend.bind.address", "The address frontend should bind to. If unset all" +
                     "IPv4 addresses on the server will be listened on.");
 
+    @SetFromFlag("runtimeUpdates")
+    ConfigKey<Boolean> RUNTIME_UPDATES = ConfigKeys.newBooleanConfigKey(
+            "haproxy.runtime.enabled",
+            "Apply server pool changes through the HAProxy stats socket where possible, instead of rewriting the configuration and reloading; "
+                    + "requires HAProxy 1.8 or later and socat on the host",
+            Boolean.FALSE);
+
+    @SetFromFlag("serverSlots")
+    ConfigKey<Integer> SERVER_SLOTS = ConfigKeys.newIntegerConfigKey(
+            "haproxy.backend.slots",
+            "Minimum number of server slots in the backend, used to add servers at runtime; grows as the pool grows",
+            16);
+
+    @SetFromFlag("updateDelay")
+    ConfigKey<Duration> UPDATE_DELAY = ConfigKeys.newDurationConfigKey(
+            "haproxy.update.delay",
+            "Time to collect server pool changes before updating HAProxy",
+            Duration.ONE_SECOND);
+
+    /** Optional sensor on server pool members giving their HAProxy weight. */
+    AttributeSensor<Integer> SERVER_WEIGHT = Sensors.newIntegerSensor("haproxy.server.weight", "Weight of this server in the HAProxy backend");
+
+    AttributeSensor<Integer> RUNTIME_UPDATE_COUNT = Sensors.newIntegerSensor("haproxy.updates.runtime", "Number of server pool updates applied through the stats socket");
+    AttributeSensor<Integer> RELOAD_COUNT = Sensors.newIntegerSensor("haproxy.updates.reload", "Number of server pool updates that rewrote the configuration and reloaded");
+
 }
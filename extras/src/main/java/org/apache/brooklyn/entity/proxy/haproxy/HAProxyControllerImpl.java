@@ -15,13 +15,73 @@
  */
 package org.apache.brooklyn.entity.proxy.haproxy;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.brooklyn.core.entity.Entities;
 import org.apache.brooklyn.entity.proxy.AbstractControllerImpl;
+import org.apache.brooklyn.util.core.task.Tasks;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.time.Duration;
+import org.apache.brooklyn.util.time.Time;
 
 public class HAProxyControllerImpl extends AbstractControllerImpl implements HAProxyController {
 
+    private static final Logger LOG = LoggerFactory.getLogger(HAProxyController.class);
+
+    private transient AtomicBoolean updatePending = new AtomicBoolean(false);
+
+    /**
+     * Schedules an update of the server pool.
+     * <p>
+     * Changes arriving within the {@link #UPDATE_DELAY update delay} of the
+     * first are applied together, once.
+     */
     @Override
     protected void reconfigureService() {
-        getDriver().reconfigureService();
+        Duration delay = config().get(UPDATE_DELAY);
+        if (delay == null || !delay.isPositive()) {
+            getDriver().updateServerPool();
+        } else if (updatePending.compareAndSet(false, true)) {
+            Entities.submit(this, Tasks.builder()
+                    .displayName("Update HAProxy server pool")
+                    .body(new UpdateServerPool(delay))
+                    .build());
+        }
+    }
+
+    private class UpdateServerPool implements Runnable {
+        private final Duration delay;
+
+        private UpdateServerPool(Duration delay) {
+            this.delay = delay;
+        }
+
+        @Override
+        public void run() {
+            Time.sleep(delay);
+            updatePending.set(false);
+            HAProxyDriver driver = getDriver();
+            if (driver == null) {
+                LOG.debug("No driver for {}, skipping server pool update", HAProxyControllerImpl.this);
+                return;
+            }
+            // Nothing waits for this task, so log failures here and reload to apply the whole batch
+            try {
+                driver.updateServerPool();
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                LOG.warn("Error updating server pool for " + HAProxyControllerImpl.this + ", reloading", e);
+                try {
+                    driver.reconfigureService();
+                } catch (Exception e2) {
+                    Exceptions.propagateIfFatal(e2);
+                    LOG.warn("Error reloading " + HAProxyControllerImpl.this + " after failed server pool update", e2);
+                }
+            }
+        }
     }
 
     @Override
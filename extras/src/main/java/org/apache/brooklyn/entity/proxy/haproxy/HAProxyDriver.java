@@ -21,4 +21,10 @@ public interface HAProxyDriver extends SoftwareProcessDriver {
 
     void reconfigureService();
 
+    /**
+     * Bring HAProxy up to date with the current server pool, using the
+     * runtime API where possible and {@link #reconfigureService()} otherwise.
+     */
+    void updateServerPool();
+
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2014-2016 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.brooklyn.entity.proxy.haproxy;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.net.HostAndPort;
+import com.google.common.net.InetAddresses;
+
+/**
+ * The backend servers assigned to numbered slots in the HAProxy configuration.
+ * <p>
+ * Spare slots are disabled in the configuration, so that servers can be added
+ * through the runtime API without a reload.
+ */
+public class HAProxyServerSlots {
+
+    /** The backend name used in the configuration template. */
+    public static final String BACKEND = "servers";
+
+    private final List<String> slots;
+    private final Map<String, Integer> weights;
+
+    /**
+     * Assign the servers to slots in order, leaving the rest free.
+     *
+     * @param servers the server addresses and their weights
+     * @param size the minimum number of slots; at least twice the number of servers are created
+     */
+    public static HAProxyServerSlots assign(Map<String, Integer> servers, int size) {
+        List<String> slots = Lists.newArrayList(servers.keySet());
+        int total = Math.max(size, 2 * servers.size());
+        slots.addAll(Collections.<String>nCopies(total - slots.size(), null));
+        return new HAProxyServerSlots(slots, servers);
+    }
+
+    private HAProxyServerSlots(List<String> slots, Map<String, Integer> weights) {
+        this.slots = Collections.unmodifiableList(slots);
+        this.weights = ImmutableMap.copyOf(weights);
+    }
+
+    /**
+     * The runtime API commands that change the slots to hold a new server pool.
+     * <p>
+     * Removed servers are put into maintenance and their slots freed, new
+     * servers are given a free slot, and weight changes are set directly.
+     *
+     * @return the commands and the new slots, or absent if the configuration must be
+     *         rewritten because there are no free slots or an address is not an IP address and port
+     */
+    public Optional<Update> update(Map<String, Integer> servers) {
+        List<String> updated = Lists.newArrayList(slots);
+        List<String> commands = Lists.newArrayList();
+        for (int i = 0; i < updated.size(); i++) {
+            String address = updated.get(i);
+            if (address != null && !servers.containsKey(address)) {
+                commands.add(String.format("set server %s/%s state maint", BACKEND, slotName(i)));
+                updated.set(i, null);
+            }
+        }
+        for (Map.Entry<String, Integer> server : servers.entrySet()) {
+            String address = server.getKey();
+            int weight = server.getValue();
+            int slot = updated.indexOf(address);
+            if (slot >= 0) {
+                if (!Objects.equal(weights.get(address), weight)) {
+                    commands.add(String.format("set weight %s/%s %d", BACKEND, slotName(slot), weight));
+                }
+            } else {
+                slot = updated.indexOf(null);
+                HostAndPort hostAndPort = HostAndPort.fromString(address);
+                if (slot < 0 || !hostAndPort.hasPort() || !InetAddresses.isInetAddress(hostAndPort.getHostText())) {
+                    return Optional.absent();
+                }
+                updated.set(slot, address);
+                commands.add(String.format("set server %s/%s addr %s port %d", BACKEND, slotName(slot), hostAndPort.getHostText(), hostAndPort.getPort()));
+                commands.add(String.format("set weight %s/%s %d", BACKEND, slotName(slot), weight));
+                commands.add(String.format("set server %s/%s state ready", BACKEND, slotName(slot)));
+            }
+        }
+        return Optional.of(new Update(commands, new HAProxyServerSlots(updated, servers)));
+    }
+
+    /** The backend server lines, one per slot, with spare slots disabled. */
+    public List<String> getServerLines() {
+        List<String> lines = Lists.newArrayList();
+        for (int i = 0; i < slots.size(); i++) {
+            String address = slots.get(i);
+            if (address == null) {
+                lines.add(String.format("%s 0.0.0.0:80 disabled", slotName(i)));
+            } else {
+                lines.add(String.format("%s %s weight %d", slotName(i), address, weights.get(address)));
+            }
+        }
+        return lines;
+    }
+
+    public List<String> getSlots() {
+        return slots;
+    }
+
+    private static String slotName(int slot) {
+        return "slot" + slot;
+    }
+
+    /** Runtime API commands, and the slots once they have been applied. */
+    public static class Update {
+        private final List<String> commands;
+        private final HAProxyServerSlots slots;
+
+        private Update(List<String> commands, HAProxyServerSlots slots) {
+            this.commands = ImmutableList.copyOf(commands);
+            this.slots = slots;
+        }
+
+        public List<String> getCommands() { return commands; }
+
+        public HAProxyServerSlots getSlots() { return slots; }
+    }
+
+}
@@ -15,28 +15,45 @@
  */
 package org.apache.brooklyn.entity.proxy.haproxy;
 
+import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 
 import org.apache.brooklyn.api.entity.Entity;
 import org.apache.brooklyn.api.entity.EntityLocal;
-import org.apache.brooklyn.core.location.Machines;
+import org.apache.brooklyn.api.sensor.AttributeSensor;
 import org.apache.brooklyn.entity.proxy.LoadBalancer;
 import org.apache.brooklyn.entity.software.base.AbstractSoftwareProcessSshDriver;
+import org.apache.brooklyn.entity.software.base.lifecycle.ScriptHelper;
 import org.apache.brooklyn.location.ssh.SshMachineLocation;
 import org.apache.brooklyn.util.collections.MutableMap;
-import org.apache.brooklyn.util.guava.Maybe;
 import org.apache.brooklyn.util.os.Os;
 
 public class HAProxySshDriver extends AbstractSoftwareProcessSshDriver implements HAProxyDriver {
 
     private static final Logger LOG = LoggerFactory.getLogger(HAProxySshDriver.class);
 
+    /** The backend name used in the configuration template. */
+    public static final String BACKEND = HAProxyServerSlots.BACKEND;
+    public static final int DEFAULT_WEIGHT = 1;
+
+    private static final Pattern RUNTIME_ERROR = Pattern.compile("(No such|Unknown|Require|Permission denied|Invalid|not allowed|failed)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern VERSION = Pattern.compile("version (\\d+)\\.(\\d+)");
+
+    private final Object updateMutex = new Object[0];
+    private HAProxyServerSlots slots;
+    private Boolean runtimeSupported;
+
     public HAProxySshDriver(EntityLocal entity, SshMachineLocation machine) {
         super(entity, machine);
     }
@@ -79,28 +96,148 @@ public class HAProxySshDriver extends AbstractSoftwareProcessSshDriver implement
         return Os.mergePathsUnix(getRunDir(), "pid");
     }
 
+    /**
+     * Rewrite the configuration with the current server pool and reload HAProxy.
+     * <p>
+     * Servers are assigned to numbered slots in the backend. Spare slots are
+     * left disabled, so that {@link #updateServerPool()} can fill them at runtime.
+     */
     @Override
     public void reconfigureService() {
-        Map<Entity, String> targets = getEntity().sensors().get(HAProxyController.SERVER_POOL_TARGETS);
-        LOG.info("Reconfiguring {} with: {}", getEntity(), targets.values());
-        for (Entity server : targets.keySet()) {
-            Maybe<SshMachineLocation> machine = Machines.findUniqueMachineLocation(server.getLocations(), SshMachineLocation.class);
-            if (machine.isPresentAndNonNull()) {
+        synchronized (updateMutex) {
+            Map<String, Integer> servers = getServerPool();
+            LOG.info("Reconfiguring {} with: {}", getEntity(), servers.keySet());
+
+            slots = HAProxyServerSlots.assign(servers, getEntity().config().get(HAProxyController.SERVER_SLOTS));
+            writeConfig();
+            launch();
+            increment(HAProxyController.RELOAD_COUNT);
+            LOG.debug("HAProxy re-configured on: {}", getEntity());
+        }
+    }
+
+    /**
+     * Apply server pool changes through the stats socket.
+     * <p>
+     * The configuration file is then rewritten to match, without a reload, so a
+     * later restart or reload keeps the changes. Falls back to
+     * {@link #reconfigureService()} when there are no free slots, a server address
+     * is not an IP address and port, or the update fails.
+     *
+     * @see HAProxyServerSlots#update(Map)
+     */
+    @Override
+    public void updateServerPool() {
+        synchronized (updateMutex) {
+            if (slots == null || !isRuntimeUpdates()) {
+                reconfigureService();
+                return;
+            }
+
+            Map<String, Integer> servers = getServerPool();
+            Optional<HAProxyServerSlots.Update> update = slots.update(servers);
+            if (!update.isPresent()) {
+                LOG.debug("Cannot update {} at runtime with {}, reconfiguring", getEntity(), servers.keySet());
+                reconfigureService();
+                return;
+            }
+            if (update.get().getCommands().isEmpty()) {
+                LOG.debug("No server pool changes for {}", getEntity());
+                return;
+            }
+
+            if (sendRuntimeCommands(update.get().getCommands())) {
+                LOG.info("Updated {} at runtime with: {}", getEntity(), servers.keySet());
+                slots = update.get().getSlots();
+                writeConfig();
+                increment(HAProxyController.RUNTIME_UPDATE_COUNT);
+            } else {
+                reconfigureService();
             }
         }
+    }
+
+    /** Render the configuration template with the current slots and upload it. */
+    private void writeConfig() {
         Map<String, Object> substitutions = ImmutableMap.<String, Object>builder()
                 .put("port", getEntity().config().get(LoadBalancer.PROXY_HTTP_PORT))
                 .build();
         String template = getEntity().config().get(HAProxyController.HAPROXY_CONFIG_TEMPLATE_URL);
         copyTemplate(template, getConfigFileLocation(), true, substitutions);
-        launch();
-        LOG.debug("HAProxy re-configured on: {}", getEntity());
+    }
+
+    private boolean sendRuntimeCommands(List<String> commands) {
+        String command = String.format("echo '%s' | socat stdio unix-connect:%s", Joiner.on("; ").join(commands), getStatsSocket());
+        ScriptHelper script = newScript("updating")
+                .body.append(command)
+                .gatherOutput();
+        int result = script.execute();
+        String output = script.getResultStdout() == null ? "" : script.getResultStdout();
+        if (result != 0 || RUNTIME_ERROR.matcher(output).find()) {
+            LOG.warn("Failed runtime update of {} ({}): {}", new Object[] { getEntity(), result, output.trim() });
+            return false;
+        }
+        return true;
+    }
+
+    /** The current server pool addresses and their weights. */
+    private Map<String, Integer> getServerPool() {
+        Map<Entity, String> targets = getEntity().sensors().get(HAProxyController.SERVER_POOL_TARGETS);
+        Map<String, Integer> servers = Maps.newLinkedHashMap();
+        if (targets != null) {
+            for (Map.Entry<Entity, String> target : targets.entrySet()) {
+                Integer weight = target.getKey().sensors().get(HAProxyController.SERVER_WEIGHT);
+                servers.put(target.getValue(), weight == null ? DEFAULT_WEIGHT : weight);
+            }
+        }
+        return servers;
+    }
+
+    private void increment(AttributeSensor<Integer> sensor) {
+        Integer count = getEntity().sensors().get(sensor);
+        getEntity().sensors().set(sensor, count == null ? 1 : count + 1);
     }
 
     private String getConfigFileLocation() {
         return Os.mergePathsUnix(getRunDir(), "haproxy.cfg");
     }
 
+    // For use in templates
+    public String getStatsSocket() {
+        return Os.mergePathsUnix(getRunDir(), "haproxy.sock");
+    }
+
+    public boolean isRuntimeUpdates() {
+        return Boolean.TRUE.equals(getEntity().config().get(HAProxyController.RUNTIME_UPDATES)) && isRuntimeSupported();
+    }
+
+    /**
+     * Whether the host has socat and HAProxy 1.8 or later, which is needed to
+     * set server addresses through the stats socket. Checked once per driver.
+     */
+    private synchronized boolean isRuntimeSupported() {
+        if (runtimeSupported == null) {
+            ScriptHelper script = newScript("checking runtime updates")
+                    .body.append("command -v socat > /dev/null && " + Os.mergePathsUnix(getInstallDir(), "haproxy") + " -v")
+                    .gatherOutput();
+            int result = script.execute();
+            Matcher version = VERSION.matcher(script.getResultStdout() == null ? "" : script.getResultStdout());
+            runtimeSupported = result == 0 && version.find() &&
+                    (Integer.parseInt(version.group(1)) > 1 || Integer.parseInt(version.group(2)) >= 8);
+            if (!runtimeSupported) {
+                LOG.warn("Runtime updates disabled for {}: requires socat and HAProxy 1.8 or later", getEntity());
+            }
+        }
+        return runtimeSupported;
+    }
+
+    /** The backend server lines, one per slot, with spare slots disabled. */
+    public List<String> getServerLines() {
+        synchronized (updateMutex) {
+            return slots == null ? ImmutableList.<String>of() : slots.getServerLines();
+        }
+    }
+
     // For use in templates
     public String getFrontendMode() {
         return getEntity().config().get(HAProxyController.FRONTEND_MODE);
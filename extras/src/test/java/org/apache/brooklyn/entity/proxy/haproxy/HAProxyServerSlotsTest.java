@@ -0,0 +1,85 @@
+/*
+ * Copyright 2014-2016 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.brooklyn.entity.proxy.haproxy;
+
+import java.util.Arrays;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class HAProxyServerSlotsTest {
+
+    private static final String A = "10.0.0.1:8080";
+    private static final String B = "10.0.0.2:8080";
+    private static final String C = "10.0.0.3:8080";
+
+    @Test
+    public void testAssignLeavesSpareSlots() {
+        HAProxyServerSlots slots = HAProxyServerSlots.assign(ImmutableMap.of(A, 1, B, 2), 3);
+        Assert.assertEquals(slots.getSlots(), Arrays.asList(A, B, null, null));
+        Assert.assertEquals(slots.getServerLines(), ImmutableList.of(
+                "slot0 10.0.0.1:8080 weight 1",
+                "slot1 10.0.0.2:8080 weight 2",
+                "slot2 0.0.0.0:80 disabled",
+                "slot3 0.0.0.0:80 disabled"));
+    }
+
+    @Test
+    public void testUnchangedPoolHasNoCommands() {
+        HAProxyServerSlots slots = HAProxyServerSlots.assign(ImmutableMap.of(A, 1), 2);
+        Optional<HAProxyServerSlots.Update> update = slots.update(ImmutableMap.of(A, 1));
+        Assert.assertTrue(update.isPresent());
+        Assert.assertTrue(update.get().getCommands().isEmpty());
+    }
+
+    @Test
+    public void testReplaceServerReusesSlot() {
+        HAProxyServerSlots slots = HAProxyServerSlots.assign(ImmutableMap.of(A, 1, B, 1), 2);
+        HAProxyServerSlots.Update update = slots.update(ImmutableMap.of(B, 1, C, 3)).get();
+        Assert.assertEquals(update.getCommands(), ImmutableList.of(
+                "set server servers/slot0 state maint",
+                "set server servers/slot0 addr 10.0.0.3 port 8080",
+                "set weight servers/slot0 3",
+                "set server servers/slot0 state ready"));
+        Assert.assertEquals(update.getSlots().getSlots(), Arrays.asList(C, B, null, null));
+        Assert.assertEquals(update.getSlots().getServerLines().get(0), "slot0 10.0.0.3:8080 weight 3");
+    }
+
+    @Test
+    public void testWeightChange() {
+        HAProxyServerSlots slots = HAProxyServerSlots.assign(ImmutableMap.of(A, 1), 2);
+        HAProxyServerSlots.Update update = slots.update(ImmutableMap.of(A, 5)).get();
+        Assert.assertEquals(update.getCommands(), ImmutableList.of("set weight servers/slot0 5"));
+        Assert.assertEquals(update.getSlots().getServerLines().get(0), "slot0 10.0.0.1:8080 weight 5");
+    }
+
+    @Test
+    public void testNoFreeSlotNeedsReload() {
+        HAProxyServerSlots slots = HAProxyServerSlots.assign(ImmutableMap.of(A, 1), 1);
+        Assert.assertFalse(slots.update(ImmutableMap.of(A, 1, B, 1, C, 1)).isPresent());
+    }
+
+    @Test
+    public void testHostnameNeedsReload() {
+        HAProxyServerSlots slots = HAProxyServerSlots.assign(ImmutableMap.of(A, 1), 4);
+        Assert.assertFalse(slots.update(ImmutableMap.of(A, 1, "web.example.org:8080", 1)).isPresent());
+    }
+
+}
@@ -23,6 +23,7 @@ import clocker.mesos.entity.framework.MesosFramework;
 import clocker.mesos.entity.framework.marathon.MarathonFramework;
 import clocker.mesos.location.MesosLocation;
 
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.reflect.TypeToken;
 
@@ -63,6 +64,12 @@ public interface MesosCluster extends StartableApplication, LocationOwner<MesosL
     ConfigKey<String> MESOS_USERNAME = ConfigKeys.newStringConfigKey("mesos.username", "Username for authenticating to the Mesos instance");
     ConfigKey<String> MESOS_PASSWORD = ConfigKeys.newStringConfigKey("mesos.password", "Password for authenticating to the Mesos instance");
 
+    @SetFromFlag("httpMaxConnections")
+    ConfigKey<Integer> HTTP_MAX_CONNECTIONS = ConfigKeys.newIntegerConfigKey("mesos.http.maxConnections", "Maximum number of pooled HTTP connections to each Mesos or Marathon endpoint", 20);
+
+    @SetFromFlag("httpTimeout")
+    ConfigKey<Duration> HTTP_TIMEOUT = ConfigKeys.newDurationConfigKey("mesos.http.timeout", "Connection and socket timeout for HTTP requests to Mesos and Marathon", Duration.THIRTY_SECONDS);
+
     @SetFromFlag("slaveAccessible")
     ConfigKey<Boolean> MESOS_SLAVE_ACCESSIBLE = MesosSlave.SLAVE_ACCESSIBLE;
 
@@ -90,10 +97,20 @@ public interface MesosCluster extends StartableApplication, LocationOwner<MesosL
     AttributeSensor<Double> LOAD_15MIN = Sensors.newDoubleSensor("mesos.load.15min", "Average system load for last 15 minutes in uptime(1) style");
     AttributeSensor<Long> START_TIME = Sensors.newLongSensor("mesos.started", "Time cluster started");
 
+    AttributeSensor<Integer> HTTP_CONNECTIONS_LEASED = Sensors.newIntegerSensor("mesos.http.connections.leased", "Pooled HTTP connections currently in use");
+    AttributeSensor<Integer> HTTP_CONNECTIONS_AVAILABLE = Sensors.newIntegerSensor("mesos.http.connections.available", "Pooled HTTP connections idle and available for reuse");
+    AttributeSensor<Integer> HTTP_CONNECTIONS_PENDING = Sensors.newIntegerSensor("mesos.http.connections.pending", "Requests waiting for a pooled HTTP connection");
+
     @SetFromFlag("scanInterval")
     ConfigKey<Duration> SCAN_INTERVAL = ConfigKeys.newConfigKey(Duration.class,
             "mesos.scanInterval", "Interval between scans of Mesos tasks and frameworks", Duration.ONE_MINUTE);
 
+    @SetFromFlag("stateInterval")
+    ConfigKey<Duration> STATE_INTERVAL = ConfigKeys.newConfigKey(Duration.class,
+            "mesos.stateInterval", "Interval between fetches of the shared Mesos master state", Duration.THIRTY_SECONDS);
+
+    AttributeSensor<Long> MESOS_STATE_UPDATED = Sensors.newLongSensor("mesos.state.updated", "Time the Mesos master state was last fetched");
+
     AttributeSensor<List<String>> MESOS_FRAMEWORK_LIST = Sensors.newSensor(new TypeToken<List<String>>() { }, "mesos.frameworks.list", "List of Mesos frameworks");
     AttributeSensor<List<String>> MESOS_SLAVE_LIST = Sensors.newSensor(new TypeToken<List<String>>() { }, "mesos.slaves.list", "List of Mesos slaves");
 
@@ -105,4 +122,13 @@ public interface MesosCluster extends StartableApplication, LocationOwner<MesosL
 
     MesosSlave getMesosSlave(String hostname);
 
+    /**
+     * The most recent snapshot of the master state, shared by the slaves,
+     * frameworks and tasks in the cluster.
+     * <p>
+     * Absent if the last poll failed or the snapshot is older than a few
+     * {@link #STATE_INTERVAL state intervals}.
+     */
+    Optional<MesosMasterState> getMasterState();
+
 }
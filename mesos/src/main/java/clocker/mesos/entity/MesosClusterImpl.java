@@ -22,10 +22,12 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nullable;
 
+import org.apache.http.pool.PoolStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -78,10 +80,11 @@ import org.apache.brooklyn.entity.group.BasicGroup;
 import org.apache.brooklyn.entity.group.DynamicGroup;
 import org.apache.brooklyn.entity.group.DynamicMultiGroup;
 import org.apache.brooklyn.entity.stock.DelegateEntity;
+import org.apache.brooklyn.feed.function.FunctionFeed;
+import org.apache.brooklyn.feed.function.FunctionPollConfig;
 import org.apache.brooklyn.feed.http.HttpFeed;
 import org.apache.brooklyn.feed.http.HttpPollConfig;
 import org.apache.brooklyn.feed.http.HttpValueFunctions;
-import org.apache.brooklyn.feed.http.JsonFunctions;
 import org.apache.brooklyn.location.ssh.SshMachineLocation;
 import org.apache.brooklyn.util.collections.MutableList;
 import org.apache.brooklyn.util.collections.MutableMap;
@@ -104,8 +107,14 @@ public class MesosClusterImpl extends AbstractApplication implements MesosCluste
 
     private static final Logger LOG = LoggerFactory.getLogger(MesosCluster.class);
 
+    /** Number of state polls after which a master state snapshot is too old to use. */
+    private static final int STATE_STALE_INTERVALS = 3;
+
     private transient HttpFeed httpFeed;
-    private transient HttpFeed scanner;
+    private transient HttpFeed stateFeed;
+    private transient FunctionFeed scanner;
+    private transient volatile MesosMasterState masterState;
+    private transient volatile long masterStateUpdated;
 
     @Override
     public void init() {
@@ -320,18 +329,6 @@ public class MesosClusterImpl extends AbstractApplication implements MesosCluste
                         .suburl("/master/health")
                         .onSuccess(HttpValueFunctions.responseCodeEquals(200))
                         .onFailureOrException(Functions.constant(Boolean.FALSE)))
-                .poll(HttpPollConfig.forSensor(CLUSTER_NAME)
-                        .suburl("/master/state.json")
-                        .onSuccess(HttpValueFunctions.jsonContents("cluster", String.class))
-                        .onFailureOrException(Functions.constant("")))
-                .poll(HttpPollConfig.forSensor(CLUSTER_ID)
-                        .suburl("/master/state.json")
-                        .onSuccess(HttpValueFunctions.jsonContents("id", String.class))
-                        .onFailureOrException(Functions.constant("")))
-                .poll(HttpPollConfig.forSensor(MESOS_VERSION)
-                        .suburl("/master/state.json")
-                        .onSuccess(HttpValueFunctions.jsonContents("version", String.class))
-                        .onFailureOrException(Functions.constant("")))
                 .poll(HttpPollConfig.forSensor(CPUS_TOTAL)
                         .suburl("/system/stats.json")
                         .onSuccess(HttpValueFunctions.jsonContents("cpus_total", Integer.class))
@@ -358,39 +355,89 @@ public class MesosClusterImpl extends AbstractApplication implements MesosCluste
                         .onFailureOrException(Functions.constant(-1L)));
         httpFeed = httpFeedBuilder.build();
 
-        Duration scanInterval = config().get(SCAN_INTERVAL);
-        HttpFeed.Builder scanBuilder = HttpFeed.builder()
+        HttpFeed.Builder stateBuilder = HttpFeed.builder()
                 .entity(this)
-                .period(scanInterval)
+                .period(config().get(STATE_INTERVAL))
                 .baseUri(sensors().get(Attributes.MAIN_URI))
                 .credentialsIfNotNull(config().get(MESOS_USERNAME), config().get(MESOS_PASSWORD))
-                .poll(HttpPollConfig.forSensor(MESOS_SLAVE_LIST)
-                        .description("Scan Cluster Slaves")
+                .poll(HttpPollConfig.forSensor(MESOS_STATE_UPDATED)
+                        .description("Fetch Master State")
                         .suburl("/master/state.json")
-                        .onSuccess(Functionals.chain(HttpValueFunctions.jsonContents(), JsonFunctions.walk("slaves"), new Function<JsonElement, List<String>>() {
+                        .onSuccess(Functionals.chain(HttpValueFunctions.jsonContents(), new Function<JsonElement, Long>() {
                             @Override
-                            public List<String> apply(JsonElement slaves) {
-                                try {
-                                    return scanSlaves(slaves.getAsJsonArray());
-                                } catch (UnknownHostException e) {
-                                    throw Exceptions.propagate(e);
-                                }
+                            public Long apply(JsonElement json) {
+                                return updateMasterState(MesosMasterState.of(json));
                             }
                         }))
+                        .onFailureOrException(new Function<Object, Long>() {
+                            @Override
+                            public Long apply(Object input) {
+                                // Do not let slaves and frameworks act on the last state once the master is unreachable
+                                masterState = null;
+                                return null;
+                            }
+                        }));
+        stateFeed = stateBuilder.build();
+
+        Duration scanInterval = config().get(SCAN_INTERVAL);
+        FunctionFeed.Builder scanBuilder = FunctionFeed.builder()
+                .entity(this)
+                .period(scanInterval)
+                .poll(new FunctionPollConfig<Object, List<String>>(MESOS_SLAVE_LIST)
+                        .description("Scan Cluster Slaves")
+                        .callable(new Callable<List<String>>() {
+                            @Override
+                            public List<String> call() throws Exception {
+                                return scanSlaves(getMasterState().get().getSlaves());
+                            }
+                        })
                         .onFailureOrException(Functions.<List<String>>constant(null)))
-                .poll(HttpPollConfig.forSensor(MESOS_FRAMEWORK_LIST)
+                .poll(new FunctionPollConfig<Object, List<String>>(MESOS_FRAMEWORK_LIST)
                         .description("Scan Cluster Frameworks")
-                        .suburl("/master/state.json")
-                        .onSuccess(Functionals.chain(HttpValueFunctions.jsonContents(), JsonFunctions.walk("frameworks"), new Function<JsonElement, List<String>>() {
+                        .callable(new Callable<List<String>>() {
                             @Override
-                            public List<String> apply(JsonElement frameworks) {
-                                return scanFrameworks(frameworks.getAsJsonArray());
+                            public List<String> call() throws Exception {
+                                return scanFrameworks(getMasterState().get().getFrameworks());
                             }
-                        }))
-                        .onFailureOrException(Functions.<List<String>>constant(null)));
+                        })
+                        .onFailureOrException(Functions.<List<String>>constant(null)))
+                .poll(new FunctionPollConfig<Object, Integer>(HTTP_CONNECTIONS_LEASED)
+                        .period(Duration.TEN_SECONDS)
+                        .callable(new Callable<Integer>() {
+                            @Override
+                            public Integer call() throws Exception {
+                                MesosUtils.closeIdleConnections(MesosClusterImpl.this);
+                                PoolStats stats = MesosUtils.getConnectionStats(MesosClusterImpl.this);
+                                sensors().set(HTTP_CONNECTIONS_AVAILABLE, stats.getAvailable());
+                                sensors().set(HTTP_CONNECTIONS_PENDING, stats.getPending());
+                                return stats.getLeased();
+                            }
+                        })
+                        .onFailureOrException(Functions.<Integer>constant(null)));
         scanner = scanBuilder.build();
     }
 
+    private Long updateMasterState(MesosMasterState state) {
+        masterState = state;
+        masterStateUpdated = System.currentTimeMillis();
+        sensors().set(CLUSTER_NAME, state.getString("cluster").or(""));
+        sensors().set(CLUSTER_ID, state.getString("id").or(""));
+        sensors().set(MESOS_VERSION, state.getString("version").or(""));
+        return state.getTimestamp();
+    }
+
+    @Override
+    public Optional<MesosMasterState> getMasterState() {
+        MesosMasterState state = masterState;
+        if (state == null) return Optional.absent();
+        Duration interval = config().get(STATE_INTERVAL);
+        if (interval != null && Duration.sinceUtc(masterStateUpdated).isLongerThan(interval.multiply(STATE_STALE_INTERVALS))) {
+            LOG.debug("Ignoring master state for {} last updated {} ago", this, Duration.sinceUtc(masterStateUpdated));
+            return Optional.absent();
+        }
+        return Optional.of(state);
+    }
+
     public List<String> scanFrameworks(JsonArray frameworks) {
         List<String> frameworkNames = MutableList.<String>of();
         for (int i = 0; i < frameworks.size(); i++) {
@@ -516,7 +563,10 @@ public class MesosClusterImpl extends AbstractApplication implements MesosCluste
 
     public void disconnectSensors() {
         if (httpFeed != null && httpFeed.isActivated()) httpFeed.destroy();
+        if (stateFeed != null && stateFeed.isActivated()) stateFeed.destroy();
         if (scanner != null && scanner.isActivated()) scanner.destroy();
+        masterState = null;
+        MesosUtils.closeClients(this);
     }
 
     static {
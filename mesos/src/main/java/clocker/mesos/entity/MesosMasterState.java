@@ -0,0 +1,107 @@
+/*
+ * Copyright 2014-2016 by Cloudsoft Corporation Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package clocker.mesos.entity;
+
+import java.util.Map;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * A timestamped snapshot of the Mesos master {@code /master/state.json} document.
+ * <p>
+ * The document is parsed once, and the slaves and frameworks are indexed by
+ * their IDs, so that every entity in the cluster can read its own details
+ * without fetching the state again.
+ */
+public class MesosMasterState {
+
+    private final JsonObject state;
+    private final long timestamp;
+    private final Map<String, JsonObject> slaves;
+    private final Map<String, JsonObject> frameworks;
+
+    public static MesosMasterState of(JsonElement json) {
+        return new MesosMasterState(json.getAsJsonObject(), System.currentTimeMillis());
+    }
+
+    protected MesosMasterState(JsonObject state, long timestamp) {
+        this.state = Preconditions.checkNotNull(state, "state");
+        this.timestamp = timestamp;
+        this.slaves = index(getSlaves());
+        this.frameworks = index(getFrameworks());
+    }
+
+    private static Map<String, JsonObject> index(JsonArray array) {
+        ImmutableMap.Builder<String, JsonObject> builder = ImmutableMap.builder();
+        for (JsonElement element : array) {
+            JsonObject object = element.getAsJsonObject();
+            builder.put(object.get("id").getAsString(), object);
+        }
+        return builder.build();
+    }
+
+    /** The time the state was fetched from the master, in milliseconds since the epoch. */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public JsonObject getState() {
+        return state;
+    }
+
+    public Optional<String> getString(String key) {
+        JsonElement value = state.get(key);
+        if (value == null || value.isJsonNull()) {
+            return Optional.absent();
+        } else {
+            return Optional.of(value.getAsString());
+        }
+    }
+
+    public JsonArray getSlaves() {
+        JsonArray slaves = state.getAsJsonArray("slaves");
+        return slaves == null ? new JsonArray() : slaves;
+    }
+
+    public JsonArray getFrameworks() {
+        JsonArray frameworks = state.getAsJsonArray("frameworks");
+        return frameworks == null ? new JsonArray() : frameworks;
+    }
+
+    public Optional<JsonObject> getSlave(String id) {
+        return Optional.fromNullable(slaves.get(id));
+    }
+
+    public Optional<JsonObject> getFramework(String id) {
+        return Optional.fromNullable(frameworks.get(id));
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("timestamp", timestamp)
+                .add("slaves", slaves.size())
+                .add("frameworks", frameworks.size())
+                .toString();
+    }
+
+}
@@ -15,6 +15,7 @@
  */
 package clocker.mesos.entity;
 
+import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -22,14 +23,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Functions;
-import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableMap;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 
 import org.apache.brooklyn.api.sensor.EnricherSpec;
 import org.apache.brooklyn.core.config.render.RendererHints;
 import org.apache.brooklyn.core.effector.ssh.SshEffectorTasks;
-import org.apache.brooklyn.core.entity.Attributes;
 import org.apache.brooklyn.core.entity.Entities;
 import org.apache.brooklyn.core.entity.lifecycle.Lifecycle;
 import org.apache.brooklyn.core.entity.lifecycle.ServiceStateLogic;
@@ -37,9 +37,8 @@ import org.apache.brooklyn.core.feed.ConfigToAttributes;
 import org.apache.brooklyn.enricher.stock.Enrichers;
 import org.apache.brooklyn.entity.machine.MachineEntityImpl;
 import org.apache.brooklyn.entity.software.base.AbstractSoftwareProcessSshDriver;
-import org.apache.brooklyn.feed.http.HttpFeed;
-import org.apache.brooklyn.feed.http.HttpPollConfig;
-import org.apache.brooklyn.feed.http.HttpValueFunctions;
+import org.apache.brooklyn.feed.function.FunctionFeed;
+import org.apache.brooklyn.feed.function.FunctionPollConfig;
 import org.apache.brooklyn.feed.http.JsonFunctions;
 import org.apache.brooklyn.util.core.internal.ssh.SshTool;
 import org.apache.brooklyn.util.core.task.DynamicTasks;
@@ -60,7 +59,7 @@ public class MesosSlaveImpl extends MachineEntityImpl implements MesosSlave {
 
     private static final Logger LOG = LoggerFactory.getLogger(MesosSlave.class);
 
-    private transient HttpFeed httpFeed;
+    private transient FunctionFeed resourcesFeed;
 
     @Override
     public void init() {
@@ -80,91 +79,50 @@ public class MesosSlaveImpl extends MachineEntityImpl implements MesosSlave {
     public void connectSensors() {
         super.connectSensors();
 
-        final String id = sensors().get(MESOS_SLAVE_ID);
+        String id = sensors().get(MESOS_SLAVE_ID);
 
-        HttpFeed.Builder httpFeedBuilder = HttpFeed.builder()
+        FunctionFeed.Builder resourcesFeedBuilder = FunctionFeed.builder()
                 .entity(this)
                 .period(30, TimeUnit.SECONDS)
-                .baseUri(getMesosCluster().sensors().get(Attributes.MAIN_URI))
-                .credentialsIfNotNull(config().get(MesosCluster.MESOS_USERNAME), config().get(MesosCluster.MESOS_PASSWORD))
-                .poll(HttpPollConfig.forSensor(MEMORY_AVAILABLE)
-                        .suburl("/master/state.json")
-                        .onSuccess(Functionals.chain(HttpValueFunctions.jsonContents(),
-                                Functions.compose(
-                                    MesosUtils.selectM(new Predicate<JsonElement>() {
-                                        @Override
-                                        public boolean apply(JsonElement input) {
-                                            return input.getAsJsonObject().get("id").getAsString().equals(id);
-                                        }}), JsonFunctions.walk("slaves")),
-                                JsonFunctions.walkM("resources", "mem"),
-                                JsonFunctions.castM(Long.class)))
+                .poll(new FunctionPollConfig<Long, Long>(MEMORY_AVAILABLE)
+                        .callable(slaveResource(id, "resources", "mem", Long.class))
                         .onFailureOrException(Functions.constant(-1L)))
-                .poll(HttpPollConfig.forSensor(CPU_AVAILABLE)
-                        .suburl("/master/state.json")
-                        .onSuccess(Functionals.chain(HttpValueFunctions.jsonContents(),
-                                Functions.compose(
-                                    MesosUtils.selectM(new Predicate<JsonElement>() {
-                                        @Override
-                                        public boolean apply(JsonElement input) {
-                                            return input.getAsJsonObject().get("id").getAsString().equals(id);
-                                        }}), JsonFunctions.walk("slaves")),
-                                JsonFunctions.walkM("resources", "cpus"),
-                                JsonFunctions.castM(Double.class)))
+                .poll(new FunctionPollConfig<Double, Double>(CPU_AVAILABLE)
+                        .callable(slaveResource(id, "resources", "cpus", Double.class))
                         .onFailureOrException(Functions.constant(-1d)))
-                .poll(HttpPollConfig.forSensor(DISK_AVAILABLE)
-                        .suburl("/master/state.json")
-                        .onSuccess(Functionals.chain(HttpValueFunctions.jsonContents(),
-                                Functions.compose(
-                                    MesosUtils.selectM(new Predicate<JsonElement>() {
-                                        @Override
-                                        public boolean apply(JsonElement input) {
-                                            return input.getAsJsonObject().get("id").getAsString().equals(id);
-                                        }}), JsonFunctions.walk("slaves")),
-                                JsonFunctions.walkM("resources", "disk"),
-                                JsonFunctions.castM(Long.class)))
+                .poll(new FunctionPollConfig<Long, Long>(DISK_AVAILABLE)
+                        .callable(slaveResource(id, "resources", "disk", Long.class))
                         .onFailureOrException(Functions.constant(-1L)))
-                .poll(HttpPollConfig.forSensor(MEMORY_USED)
-                        .suburl("/master/state.json")
-                        .onSuccess(Functionals.chain(HttpValueFunctions.jsonContents(),
-                                Functions.compose(
-                                    MesosUtils.selectM(new Predicate<JsonElement>() {
-                                        @Override
-                                        public boolean apply(JsonElement input) {
-                                            return input.getAsJsonObject().get("id").getAsString().equals(id);
-                                        }}), JsonFunctions.walk("slaves")),
-                                JsonFunctions.walkM("used_resources", "mem"),
-                                JsonFunctions.castM(Long.class)))
+                .poll(new FunctionPollConfig<Long, Long>(MEMORY_USED)
+                        .callable(slaveResource(id, "used_resources", "mem", Long.class))
                         .onFailureOrException(Functions.constant(-1L)))
-                .poll(HttpPollConfig.forSensor(CPU_USED)
-                        .suburl("/master/state.json")
-                        .onSuccess(Functionals.chain(HttpValueFunctions.jsonContents(),
-                                Functions.compose(
-                                    MesosUtils.selectM(new Predicate<JsonElement>() {
-                                        @Override
-                                        public boolean apply(JsonElement input) {
-                                            return input.getAsJsonObject().get("id").getAsString().equals(id);
-                                        }}), JsonFunctions.walk("slaves")),
-                                JsonFunctions.walkM("used_resources", "cpus"),
-                                JsonFunctions.castM(Double.class)))
+                .poll(new FunctionPollConfig<Double, Double>(CPU_USED)
+                        .callable(slaveResource(id, "used_resources", "cpus", Double.class))
                         .onFailureOrException(Functions.constant(-1d)))
-                .poll(HttpPollConfig.forSensor(DISK_USED)
-                        .suburl("/master/state.json")
-                        .onSuccess(Functionals.chain(HttpValueFunctions.jsonContents(),
-                                Functions.compose(
-                                    MesosUtils.selectM(new Predicate<JsonElement>() {
-                                        @Override
-                                        public boolean apply(JsonElement input) {
-                                            return input.getAsJsonObject().get("id").getAsString().equals(id);
-                                        }}), JsonFunctions.walk("slaves")),
-                                JsonFunctions.walkM("used_resources", "disk"),
-                                JsonFunctions.castM(Long.class)))
+                .poll(new FunctionPollConfig<Long, Long>(DISK_USED)
+                        .callable(slaveResource(id, "used_resources", "disk", Long.class))
                         .onFailureOrException(Functions.constant(-1L)));
-        httpFeed = httpFeedBuilder.build();
+        resourcesFeed = resourcesFeedBuilder.build();
+    }
+
+    /**
+     * Reads a resource value for this slave from the cluster's shared master state snapshot.
+     */
+    private <T> Callable<T> slaveResource(final String id, final String group, final String resource, final Class<T> type) {
+        return new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                MesosMasterState state = getMesosCluster().getMasterState().get();
+                JsonObject slave = state.getSlave(id).get();
+                JsonElement value = slave.getAsJsonObject(group).get(resource);
+                return JsonFunctions.cast(type).apply(value);
+            }
+        };
     }
 
     @Override
     public void disconnectSensors() {
-        if (httpFeed != null && httpFeed.isActivated()) httpFeed.destroy();
+        if (resourcesFeed != null && resourcesFeed.isActivated()) resourcesFeed.destroy();
 
         super.disconnectSensors();
     }
@@ -18,12 +18,16 @@ package clocker.mesos.entity;
 import java.net.URI;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nullable;
 
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.HttpClient;
 import org.apache.http.entity.ContentType;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.pool.PoolStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,13 +36,17 @@ import clocker.mesos.location.MesosLocation;
 
 import com.jayway.jsonpath.JsonPath;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Function;
+import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
 import com.google.common.net.HttpHeaders;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
@@ -53,11 +61,17 @@ import org.apache.brooklyn.util.http.HttpTool;
 import org.apache.brooklyn.util.http.HttpTool.HttpClientBuilder;
 import org.apache.brooklyn.util.http.HttpToolResponse;
 import org.apache.brooklyn.util.net.Urls;
+import org.apache.brooklyn.util.time.Duration;
 
 public class MesosUtils {
 
     private static final Logger LOG = LoggerFactory.getLogger(MesosUtils.class);
 
+    /** Idle pooled connections are closed after this time. */
+    private static final Duration IDLE_TIMEOUT = Duration.ONE_MINUTE;
+
+    private static final ConcurrentMap<String, PooledClient> CLIENTS = Maps.newConcurrentMap();
+
     /** Do not instantiate. */
     private MesosUtils() { }
 
@@ -165,18 +179,111 @@ public class MesosUtils {
         };
     }
 
+    /**
+     * Returns a shared HTTP client for the framework endpoint.
+     * <p>
+     * Clients are pooled per framework, endpoint URL and credentials, so connections
+     * are kept alive and reused across requests, and a changed password gets a new
+     * client. The pool size and timeouts are taken from the
+     * {@link MesosCluster#HTTP_MAX_CONNECTIONS} and {@link MesosCluster#HTTP_TIMEOUT}
+     * configuration.
+     */
     public static HttpClient buildClient(Entity framework) {
         String url = framework.sensors().get(MesosFramework.FRAMEWORK_URL);
         String username = framework.config().get(MesosCluster.MESOS_USERNAME);
         String password = framework.config().get(MesosCluster.MESOS_PASSWORD);
-        HttpClientBuilder builder = HttpTool.httpClientBuilder().uri(url);
+        String credentials = password == null ? null : Hashing.sha256().hashString(password, Charsets.UTF_8).toString();
+        String key = Joiner.on('|').useForNull("").join(framework.getId(), url, username, credentials);
+        PooledClient pooled = CLIENTS.get(key);
+        if (pooled == null) {
+            synchronized (CLIENTS) {
+                pooled = CLIENTS.get(key);
+                if (pooled == null) {
+                    pooled = newPooledClient(framework, url, username, password);
+                    CLIENTS.put(key, pooled);
+                }
+            }
+        }
+        return pooled.client;
+    }
+
+    private static PooledClient newPooledClient(Entity framework, String url, String username, String password) {
+        Integer maxConnections = framework.config().get(MesosCluster.HTTP_MAX_CONNECTIONS);
+        Duration timeout = framework.config().get(MesosCluster.HTTP_TIMEOUT);
+        Entity cluster = framework.config().get(MesosAttributes.MESOS_CLUSTER.getConfigKey());
+
+        PoolingClientConnectionManager manager = new PoolingClientConnectionManager();
+        manager.setMaxTotal(maxConnections);
+        manager.setDefaultMaxPerRoute(maxConnections);
+        HttpClientBuilder builder = HttpTool.httpClientBuilder()
+                .clientConnectionManager(manager)
+                .connectionTimeout(timeout)
+                .socketTimeout(timeout)
+                .uri(url);
         if ("true".equals(System.getProperty("jclouds.trust-all-certs"))) {
             builder.trustAll();
         }
         if (username != null && password != null) {
             builder.credentials(new UsernamePasswordCredentials(username, password));
         }
-        return builder.build();
+        LOG.debug("Created HTTP connection pool for {} with {} connections", url, maxConnections);
+        return new PooledClient(framework.getId(), cluster == null ? null : cluster.getId(), manager, builder.build());
+    }
+
+    /** Aggregated connection statistics for the HTTP clients used by a cluster. */
+    public static PoolStats getConnectionStats(Entity cluster) {
+        int leased = 0, pending = 0, available = 0, max = 0;
+        for (PooledClient pooled : CLIENTS.values()) {
+            if (pooled.isUsedBy(cluster)) {
+                PoolStats stats = pooled.manager.getTotalStats();
+                leased += stats.getLeased();
+                pending += stats.getPending();
+                available += stats.getAvailable();
+                max += stats.getMax();
+            }
+        }
+        return new PoolStats(leased, pending, available, max);
+    }
+
+    /** Closes connections in the clients used by a cluster that have been idle for longer than {@link #IDLE_TIMEOUT}. */
+    public static void closeIdleConnections(Entity cluster) {
+        for (PooledClient pooled : CLIENTS.values()) {
+            if (pooled.isUsedBy(cluster)) {
+                pooled.manager.closeIdleConnections(IDLE_TIMEOUT.toMilliseconds(), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /** Shuts down the HTTP clients used by a cluster or framework. */
+    public static void closeClients(Entity entity) {
+        synchronized (CLIENTS) {
+            for (Iterator<PooledClient> i = CLIENTS.values().iterator(); i.hasNext();) {
+                PooledClient pooled = i.next();
+                if (pooled.isUsedBy(entity)) {
+                    pooled.manager.shutdown();
+                    i.remove();
+                }
+            }
+        }
+    }
+
+    private static class PooledClient {
+        private final String frameworkId;
+        @Nullable private final String clusterId;
+        private final PoolingClientConnectionManager manager;
+        private final HttpClient client;
+
+        private PooledClient(String frameworkId, @Nullable String clusterId, PoolingClientConnectionManager manager, HttpClient client) {
+            this.frameworkId = frameworkId;
+            this.clusterId = clusterId;
+            this.manager = manager;
+            this.client = client;
+        }
+
+        /** Whether the client was created for the entity or, if it is a cluster, one of its frameworks. */
+        private boolean isUsedBy(Entity entity) {
+            return entity.getId().equals(frameworkId) || entity.getId().equals(clusterId);
+        }
     }
 
 }
@@ -20,14 +20,16 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import clocker.mesos.entity.MesosCluster;
+import clocker.mesos.entity.MesosMasterState;
+import clocker.mesos.entity.MesosUtils;
 import clocker.mesos.entity.task.MesosTask;
 
-import com.google.common.base.Function;
 import com.google.common.base.Functions;
 import com.google.common.base.Optional;
 import com.google.common.base.Predicates;
@@ -35,7 +37,6 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
 import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
 import org.apache.brooklyn.api.entity.Entity;
@@ -52,13 +53,10 @@ import org.apache.brooklyn.core.feed.ConfigToAttributes;
 import org.apache.brooklyn.entity.group.BasicGroup;
 import org.apache.brooklyn.entity.stock.BasicStartableImpl;
 import org.apache.brooklyn.entity.stock.DelegateEntity;
-import org.apache.brooklyn.feed.http.HttpFeed;
-import org.apache.brooklyn.feed.http.HttpPollConfig;
-import org.apache.brooklyn.feed.http.HttpValueFunctions;
-import org.apache.brooklyn.feed.http.JsonFunctions;
+import org.apache.brooklyn.feed.function.FunctionFeed;
+import org.apache.brooklyn.feed.function.FunctionPollConfig;
 import org.apache.brooklyn.util.collections.MutableList;
 import org.apache.brooklyn.util.collections.QuorumCheck.QuorumChecks;
-import org.apache.brooklyn.util.guava.Functionals;
 import org.apache.brooklyn.util.time.Duration;
 import org.apache.brooklyn.util.time.Time;
 
@@ -75,7 +73,7 @@ public class MesosFrameworkImpl extends BasicStartableImpl implements MesosFrame
     
     private static final Logger LOG = LoggerFactory.getLogger(MesosFramework.class);
 
-    private transient HttpFeed taskScan;
+    private transient FunctionFeed taskScan;
 
     @Override
     public void init() {
@@ -144,20 +142,18 @@ public class MesosFrameworkImpl extends BasicStartableImpl implements MesosFrame
     @Override
     public void connectSensors() {
         Duration scanInterval = config().get(MesosCluster.SCAN_INTERVAL);
-        HttpFeed.Builder taskScanBuilder = HttpFeed.builder()
+        FunctionFeed.Builder taskScanBuilder = FunctionFeed.builder()
                 .entity(this)
                 .period(scanInterval)
-                .baseUri(config().get(MesosCluster.MESOS_URL))
-                .credentialsIfNotNull(config().get(MesosCluster.MESOS_USERNAME), config().get(MesosCluster.MESOS_PASSWORD))
-                .poll(HttpPollConfig.forSensor(MESOS_TASK_LIST)
+                .poll(new FunctionPollConfig<Object, List<String>>(MESOS_TASK_LIST)
                         .description("Scan Tasks")
-                        .suburl("/master/state.json")
-                        .onSuccess(Functionals.chain(HttpValueFunctions.jsonContents(), JsonFunctions.walk("frameworks"), new Function<JsonElement, List<String>>() {
+                        .callable(new Callable<List<String>>() {
                             @Override
-                            public List<String> apply(JsonElement frameworks) {
-                                return scanTasks(frameworks.getAsJsonArray());
+                            public List<String> call() throws Exception {
+                                MesosMasterState state = getMesosCluster().getMasterState().get();
+                                return scanTasks(state.getFrameworks());
                             }
-                        }))
+                        })
                         .onFailureOrException(Functions.<List<String>>constant(null)));
         taskScan = taskScanBuilder.build();
     }
@@ -246,6 +242,7 @@ public class MesosFrameworkImpl extends BasicStartableImpl implements MesosFrame
     public void disconnectSensors() {
         if (taskScan  != null && taskScan.isActivated()) taskScan.destroy();
         taskScan = null;
+        MesosUtils.closeClients(this);
     }
 
     @Override
@@ -56,6 +56,8 @@ public interface MarathonFramework extends MesosFramework, LocationOwner<Maratho
 
     AttributeSensor<List<String>> MARATHON_APPLICATIONS = Sensors.newSensor(new TypeToken<List<String>>() { }, "marathon.applications", "List of Marathon applications");
 
+    AttributeSensor<Integer> MARATHON_TASK_COUNT = Sensors.newIntegerSensor("marathon.tasks.total", "Number of Marathon tasks");
+
     AttributeSensor<String> MARATHON_VERSION = Sensors.newStringSensor("marathon.version", "Marathon version");
 
     AttributeSensor<String> MARATHON_LEADER_URI = Sensors.newStringSensor("marathon.leader.uri", "Marathon leader URI");
@@ -15,13 +15,17 @@
  */
 package clocker.mesos.entity.framework.marathon;
 
+import java.net.InetAddress;
 import java.net.URI;
+import java.net.UnknownHostException;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
+import javax.annotation.Nullable;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,18 +39,30 @@ import clocker.mesos.entity.task.marathon.MarathonTask;
 import clocker.mesos.location.framework.marathon.MarathonLocation;
 import clocker.mesos.location.framework.marathon.MarathonResolver;
 
+import com.google.common.base.Function;
 import com.google.common.base.Functions;
 import com.google.common.base.Joiner;
+import com.google.common.base.Objects;
 import com.google.common.base.Optional;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 
 import org.apache.brooklyn.api.entity.Entity;
 import org.apache.brooklyn.api.location.Location;
 import org.apache.brooklyn.api.location.LocationDefinition;
 import org.apache.brooklyn.api.location.LocationRegistry;
 import org.apache.brooklyn.api.location.LocationSpec;
+import org.apache.brooklyn.api.sensor.AttributeSensor;
 import org.apache.brooklyn.core.entity.Attributes;
 import org.apache.brooklyn.core.entity.EntityPredicates;
 import org.apache.brooklyn.core.entity.lifecycle.Lifecycle;
@@ -61,9 +77,11 @@ import org.apache.brooklyn.feed.http.HttpPollConfig;
 import org.apache.brooklyn.feed.http.HttpValueFunctions;
 import org.apache.brooklyn.feed.http.JsonFunctions;
 import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.exceptions.Exceptions;
 import org.apache.brooklyn.util.guava.Functionals;
 import org.apache.brooklyn.util.net.Urls;
 import org.apache.brooklyn.util.text.Strings;
+import org.apache.brooklyn.util.time.Time;
 
 /**
  * The Marathon framework implementation.
@@ -73,6 +91,14 @@ public class MarathonFrameworkImpl extends MesosFrameworkImpl implements Maratho
     private static final Logger LOG = LoggerFactory.getLogger(MarathonFramework.class);
 
     private transient HttpFeed httpFeed;
+    private transient LoadingCache<String, String> addresses = CacheBuilder.newBuilder()
+            .expireAfterWrite(5, TimeUnit.MINUTES)
+            .build(new CacheLoader<String, String>() {
+                @Override
+                public String load(String host) throws UnknownHostException {
+                    return InetAddress.getByName(host).getHostAddress();
+                }
+            });
 
     @Override
     public void init() {
@@ -114,6 +140,21 @@ public class MarathonFrameworkImpl extends MesosFrameworkImpl implements Maratho
                         .suburl("/v2/apps/")
                         .onSuccess(Functionals.chain(HttpValueFunctions.jsonContents(), JsonFunctions.walk("apps"), JsonFunctions.forEach(JsonFunctions.<String>getPath("id"))))
                         .onFailureOrException(Functions.constant(Arrays.asList(new String[0]))))
+                .poll(HttpPollConfig.forSensor(MARATHON_TASK_COUNT)
+                        .suburl("/v2/tasks")
+                        .headers(ImmutableMap.of("Accept", "application/json"))
+                        .onSuccess(Functionals.chain(HttpValueFunctions.jsonContents(), JsonFunctions.walk("tasks"), new Function<JsonElement, Integer>() {
+                            @Override
+                            public Integer apply(JsonElement tasks) {
+                                return updateTasks(tasks.getAsJsonArray());
+                            }
+                        }))
+                        .onFailureOrException(new Function<Object, Integer>() {
+                            @Override
+                            public Integer apply(Object input) {
+                                return updateTasks(null);
+                            }
+                        }))
                 .poll(HttpPollConfig.forSensor(MARATHON_VERSION)
                         .suppressDuplicates(true)
                         .suburl("/v2/info/")
@@ -127,6 +168,89 @@ public class MarathonFrameworkImpl extends MesosFrameworkImpl implements Maratho
         httpFeed = httpFeedBuilder.build();
     }
 
+    /**
+     * Sets the status sensors on every {@link MarathonTask} from a single listing of
+     * all tasks, or marks them as failed if the listing could not be retrieved.
+     *
+     * @param tasks the {@code tasks} array from {@code /v2/tasks}, or {@code null} on failure
+     * @return the number of tasks listed
+     */
+    public Integer updateTasks(@Nullable JsonArray tasks) {
+        Multimap<String, JsonObject> byApplication = ArrayListMultimap.create();
+        if (tasks != null) {
+            for (JsonElement each : tasks) {
+                JsonObject task = each.getAsJsonObject();
+                JsonElement appId = task.get("appId");
+                if (appId != null && !appId.isJsonNull()) {
+                    byApplication.put(appId.getAsString(), task);
+                }
+            }
+        }
+
+        for (Entity member : getTaskCluster().getMembers()) {
+            if (!(member instanceof MarathonTask)) continue;
+            boolean managed = Boolean.TRUE.equals(member.sensors().get(MesosTask.MANAGED));
+            String appId = member.sensors().get(MarathonTask.APPLICATION_ID);
+            try {
+                if (tasks == null) {
+                    setIfChanged(member, SERVICE_UP, managed ? Boolean.FALSE : Boolean.TRUE);
+                    setIfChanged(member, MarathonTask.TASK_STARTED_AT, -1L);
+                    setIfChanged(member, MarathonTask.TASK_STAGED_AT, -1L);
+                    setIfChanged(member, Attributes.HOSTNAME, null);
+                    setIfChanged(member, Attributes.ADDRESS, null);
+                    if (managed) setIfChanged(member, MesosTask.TASK_ID, null);
+                } else {
+                    Collection<JsonObject> found = byApplication.get(appId);
+                    if (found.isEmpty() && !managed) {
+                        // We only guessed the appId for unmanaged tasks, so leave them alone
+                        setIfChanged(member, SERVICE_UP, Boolean.TRUE);
+                        continue;
+                    }
+                    String host = first(found, "host");
+                    String startedAt = first(found, "startedAt");
+                    String stagedAt = first(found, "stagedAt");
+                    setIfChanged(member, SERVICE_UP, found.size() == 1);
+                    setIfChanged(member, MarathonTask.TASK_STARTED_AT, startedAt == null ? null : Time.parseDate(startedAt).getTime());
+                    setIfChanged(member, MarathonTask.TASK_STAGED_AT, stagedAt == null ? null : Time.parseDate(stagedAt).getTime());
+                    setIfChanged(member, Attributes.HOSTNAME, host);
+                    setIfChanged(member, MesosTask.TASK_ID, first(found, "id"));
+                    setIfChanged(member, Attributes.ADDRESS, host == null ? null : resolve(host));
+                }
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                LOG.warn("Error updating Marathon task {}: {}", member, e.getMessage());
+            }
+        }
+
+        return tasks == null ? null : tasks.size();
+    }
+
+    private static String first(Collection<JsonObject> tasks, String field) {
+        for (JsonObject task : tasks) {
+            JsonElement value = task.get(field);
+            if (value != null && !value.isJsonNull()) {
+                return value.getAsString();
+            }
+        }
+        return null;
+    }
+
+    private static <T> void setIfChanged(Entity entity, AttributeSensor<T> sensor, T value) {
+        if (!Objects.equal(entity.sensors().get(sensor), value)) {
+            entity.sensors().set(sensor, value);
+        }
+    }
+
+    /** Resolves a slave hostname, caching the result for a few minutes. */
+    private String resolve(String host) {
+        try {
+            return addresses.getUnchecked(host);
+        } catch (UncheckedExecutionException uee) {
+            LOG.debug("Cannot resolve Marathon task host {}: {}", host, uee.getCause().getMessage());
+            return null;
+        }
+    }
+
     @Override
     public void disconnectSensors() {
         if (httpFeed != null && httpFeed.isActivated()) httpFeed.destroy();
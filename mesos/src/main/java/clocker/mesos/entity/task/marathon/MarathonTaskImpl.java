@@ -23,7 +23,6 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,7 +45,6 @@ import clocker.mesos.location.framework.marathon.MarathonTaskLocation;
 import clocker.mesos.networking.entity.sdn.calico.CalicoModule;
 
 import com.google.common.base.CharMatcher;
-import com.google.common.base.Function;
 import com.google.common.base.Functions;
 import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
@@ -80,7 +78,6 @@ import org.apache.brooklyn.core.entity.Attributes;
 import org.apache.brooklyn.core.entity.lifecycle.Lifecycle;
 import org.apache.brooklyn.core.entity.lifecycle.ServiceStateLogic;
 import org.apache.brooklyn.core.feed.ConfigToAttributes;
-import org.apache.brooklyn.core.feed.FeedConfig;
 import org.apache.brooklyn.core.location.LocationConfigKeys;
 import org.apache.brooklyn.core.location.Locations;
 import org.apache.brooklyn.core.location.cloud.CloudLocationConfig;
@@ -89,10 +86,7 @@ import org.apache.brooklyn.core.sensor.DependentConfiguration;
 import org.apache.brooklyn.core.sensor.PortAttributeSensorAndConfigKey;
 import org.apache.brooklyn.entity.software.base.SoftwareProcess;
 import org.apache.brooklyn.entity.stock.DelegateEntity;
-import org.apache.brooklyn.feed.http.HttpFeed;
-import org.apache.brooklyn.feed.http.HttpPollConfig;
 import org.apache.brooklyn.feed.http.HttpValueFunctions;
-import org.apache.brooklyn.feed.http.JsonFunctions;
 import org.apache.brooklyn.location.jclouds.JcloudsLocationConfig;
 import org.apache.brooklyn.location.ssh.SshMachineLocation;
 import org.apache.brooklyn.util.collections.MutableList;
@@ -102,7 +96,6 @@ import org.apache.brooklyn.util.core.config.ConfigBag;
 import org.apache.brooklyn.util.core.internal.ssh.SshTool;
 import org.apache.brooklyn.util.core.task.DynamicTasks;
 import org.apache.brooklyn.util.exceptions.Exceptions;
-import org.apache.brooklyn.util.guava.Functionals;
 import org.apache.brooklyn.util.http.HttpTool;
 import org.apache.brooklyn.util.http.HttpToolResponse;
 import org.apache.brooklyn.util.net.Cidr;
@@ -132,8 +125,6 @@ public class MarathonTaskImpl extends MesosTaskImpl implements MarathonTask {
     /** Invalid characters for a task name. */
     public static final CharMatcher TASK_CHARACTERS_INVALID = TASK_CHARACTERS.negate();
 
-    private transient HttpFeed httpFeed;
-
     @Override
     public void init() {
         super.init();
@@ -155,19 +146,6 @@ public class MarathonTaskImpl extends MesosTaskImpl implements MarathonTask {
         LOG.info("Marathon task {} for: {}", id, sensors().get(ENTITY));
     }
 
-    @Override
-    public void rebind() {
-        super.rebind();
-
-        if (httpFeed == null) {
-            // Normal best-practice would be to use {@code feeds().addFeed(feed)} so that the entity
-            // automatically persists its feed. But that would involve re-writing all the sensor 
-            // functions so they are not anonymous inner classes. Easier and safer for now to just
-            // call connectSensors(), rather than changing all that code and persisting it.
-            connectSensors();
-        }
-    }
-
     @Override
     public String getDisplayName() { return String.format("Marathon Task (%s)", sensors().get(APPLICATION_ID)); }
 
@@ -179,131 +157,27 @@ public class MarathonTaskImpl extends MesosTaskImpl implements MarathonTask {
         return TASK_CHARACTERS_INVALID.trimAndCollapseFrom(id, '_');
     }
 
+    /**
+     * Task status sensors are set by the {@link MarathonFramework} from a single poll
+     * of all its tasks.
+     * <p>
+     * Deliberately does nothing, as the {@link MesosTaskImpl} implementation sets
+     * {@link #SERVICE_UP} as soon as the task is started, before Marathon reports it
+     * running, and would overwrite the status set by the framework poll.
+     *
+     * @see clocker.mesos.entity.framework.marathon.MarathonFrameworkImpl#updateTasks(JsonArray)
+     */
     @Override
     public void connectSensors() {
-        // TODO If we are not "mesos.task.managed", then we are just guessing at the appId. We may get 
-        // it wrong. If it's wrong then our uri will always give 404. We should not mark the task as
-        // "serviceUp=false", and we should not clear the TASK_ID (which was correctly set in
-        // MesosFramework.scanTasks, which is where this task came from in the first place).
-        // The new behaviour of showing it as healthy (and not clearing the taskId, which caused 
-        // another instance to be automatically added!) is better than it was, but it definitely  
-        // needs more attention.
-        
-        final boolean managed = Boolean.TRUE.equals(sensors().get(MANAGED));
-            
-        String uri = Urls.mergePaths(getFramework().sensors().get(MarathonFramework.FRAMEWORK_URL), "/v2/apps", sensors().get(APPLICATION_ID), "tasks");
-        HttpFeed.Builder httpFeedBuilder = HttpFeed.builder()
-                .entity(this)
-                .period(2000, TimeUnit.MILLISECONDS)
-                .baseUri(uri)
-                .credentialsIfNotNull(config().get(MesosCluster.MESOS_USERNAME), config().get(MesosCluster.MESOS_PASSWORD))
-                .header("Accept", "application/json")
-                .poll(new HttpPollConfig<Boolean>(SERVICE_UP)
-                        .suppressDuplicates(true)
-                        .onSuccess(Functionals.chain(HttpValueFunctions.jsonContents(), JsonFunctions.walk("tasks"),
-                                new Function<JsonElement, Boolean>() {
-                                    @Override
-                                    public Boolean apply(JsonElement input) {
-                                        JsonArray tasks = input.getAsJsonArray();
-                                        return tasks.size() == 1;
-                                    }
-                                }))
-                        .onFailureOrException(Functions.constant(managed ? Boolean.FALSE : true)))
-                .poll(new HttpPollConfig<Long>(TASK_STARTED_AT)
-                        .suppressDuplicates(true)
-                        .onSuccess(Functionals.chain(HttpValueFunctions.jsonContents(), JsonFunctions.walk("tasks"),
-                                new Function<JsonElement, Long>() {
-                                    @Override
-                                    public Long apply(JsonElement input) {
-                                        JsonArray tasks = input.getAsJsonArray();
-                                        for (JsonElement each : tasks) {
-                                            JsonElement startedAt = each.getAsJsonObject().get("startedAt");
-                                            if (startedAt != null && !startedAt.isJsonNull()) {
-                                                return Time.parseDate(startedAt.getAsString()).getTime();
-                                            }
-                                        }
-                                        return null;
-                                    }
-                                }))
-                        .onFailureOrException(Functions.<Long>constant(-1L)))
-                .poll(new HttpPollConfig<Long>(TASK_STAGED_AT)
-                        .suppressDuplicates(true)
-                        .onSuccess(Functionals.chain(HttpValueFunctions.jsonContents(), JsonFunctions.walk("tasks"),
-                                new Function<JsonElement, Long>() {
-                                    @Override
-                                    public Long apply(JsonElement input) {
-                                        JsonArray tasks = input.getAsJsonArray();
-                                        for (JsonElement each : tasks) {
-                                            JsonElement stagedAt = each.getAsJsonObject().get("stagedAt");
-                                            if (stagedAt != null && !stagedAt.isJsonNull()) {
-                                                return Time.parseDate(stagedAt.getAsString()).getTime();
-                                            }
-                                        }
-                                        return null;
-                                    }
-                                }))
-                        .onFailureOrException(Functions.<Long>constant(-1L)))
-                .poll(new HttpPollConfig<String>(Attributes.HOSTNAME)
-                        .suppressDuplicates(true)
-                        .onSuccess(Functionals.chain(HttpValueFunctions.jsonContents(), JsonFunctions.walk("tasks"),
-                                new Function<JsonElement, String>() {
-                                    @Override
-                                    public String apply(JsonElement input) {
-                                        JsonArray tasks = input.getAsJsonArray();
-                                        for (JsonElement each : tasks) {
-                                            JsonElement host = each.getAsJsonObject().get("host");
-                                            if (host != null && !host.isJsonNull()) {
-                                                return host.getAsString();
-                                            }
-                                        }
-                                        return null;
-                                    }
-                                }))
-                        .onFailureOrException(Functions.<String>constant(null)))
-                .poll(new HttpPollConfig<String>(TASK_ID)
-                        .suppressDuplicates(true)
-                        .onSuccess(Functionals.chain(HttpValueFunctions.jsonContents(), JsonFunctions.walk("tasks"),
-                                new Function<JsonElement, String>() {
-                                    @Override
-                                    public String apply(JsonElement input) {
-                                        JsonArray tasks = input.getAsJsonArray();
-                                        for (JsonElement each : tasks) {
-                                            JsonElement id = each.getAsJsonObject().get("id");
-                                            if (id != null && !id.isJsonNull()) {
-                                                return id.getAsString();
-                                            }
-                                        }
-                                        return null;
-                                    }
-                                }))
-                        .onFailureOrException((Function) Functions.<Object>constant(managed ? null : FeedConfig.UNCHANGED)))
-                .poll(new HttpPollConfig<String>(Attributes.ADDRESS)
-                        .suppressDuplicates(true)
-                        .onSuccess(Functionals.chain(HttpValueFunctions.jsonContents(), JsonFunctions.walk("tasks"),
-                                new Function<JsonElement, String>() {
-                                    @Override
-                                    public String apply(JsonElement input) {
-                                        JsonArray tasks = input.getAsJsonArray();
-                                        for (JsonElement each : tasks) {
-                                            JsonElement host = each.getAsJsonObject().get("host");
-                                            if (host != null && !host.isJsonNull()) {
-                                                try {
-                                                    return InetAddress.getByName(host.getAsString()).getHostAddress();
-                                                } catch (UnknownHostException uhe) {
-                                                    Exceptions.propagate(uhe);
-                                                }
-                                            }
-                                        }
-                                        return null;
-                                    }
-                                }))
-                        .onFailureOrException(Functions.<String>constant(null)));
-        httpFeed = httpFeedBuilder.build();
     }
 
+    /**
+     * Deliberately does nothing, as {@link #SERVICE_UP} is set by the framework poll.
+     *
+     * @see #connectSensors()
+     */
     @Override
     public void disconnectSensors() {
-        if (httpFeed != null && httpFeed.isActivated()) httpFeed.destroy();
     }
 
     @Override
@@ -409,6 +283,13 @@ public class MarathonTaskImpl extends MesosTaskImpl implements MarathonTask {
         String name = sensors().get(APPLICATION_ID);
         ((MarathonFramework) getFramework()).stopApplication(name);
 
+        // Return any SDN addresses allocated to the container
+        String containerId = sensors().get(DockerContainer.DOCKER_CONTAINER_ID);
+        if (containerId != null && SdnUtils.isSdnProvider(getMesosCluster(), "CalicoModule")) {
+            CalicoModule provider = (CalicoModule) getMesosCluster().sensors().get(MesosCluster.SDN_PROVIDER);
+            provider.releaseContainerAddresses(containerId);
+        }
+
         super.stop();
     }
 
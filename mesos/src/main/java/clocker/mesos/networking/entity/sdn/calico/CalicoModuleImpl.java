@@ -27,6 +27,7 @@ import org.slf4j.LoggerFactory;
 
 import clocker.docker.networking.entity.VirtualNetwork;
 import clocker.docker.networking.entity.sdn.SdnProvider;
+import clocker.docker.networking.entity.sdn.util.ContainerAddressAllocator;
 import clocker.docker.networking.entity.sdn.util.SdnUtils;
 import clocker.docker.networking.location.NetworkProvisioningExtension;
 import clocker.mesos.entity.MesosCluster;
@@ -39,7 +40,6 @@ import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Multimap;
 
 import org.apache.brooklyn.api.entity.Entity;
 import org.apache.brooklyn.api.entity.EntitySpec;
@@ -69,8 +69,8 @@ public class CalicoModuleImpl extends BasicStartableImpl implements CalicoModule
 
     private static final Logger LOG = LoggerFactory.getLogger(CalicoModule.class);
 
-    /** Held while obtaining new IP addresses for containers. */
-    protected transient final Object addressMutex = new Object[0];
+    /** Allocates container addresses on each subnet. */
+    protected transient final ContainerAddressAllocator containerAddresses = new ContainerAddressAllocator(this);
 
     /** Mutex for provisioning new networks */
     protected transient final Object networkMutex = new Object[0];
@@ -87,9 +87,7 @@ public class CalicoModuleImpl extends BasicStartableImpl implements CalicoModule
 
         sensors().set(SDN_NETWORKS, networks);
 
-        synchronized (addressMutex) {
-            sensors().set(SUBNET_ADDRESS_ALLOCATIONS, Maps.<String, List<InetAddress>>newConcurrentMap());
-        }
+        sensors().set(SUBNET_ADDRESS_ALLOCATIONS, Maps.<String, String>newConcurrentMap());
 
         synchronized (networkMutex) {
             sensors().set(ALLOCATED_NETWORKS, 0);
@@ -108,48 +106,22 @@ public class CalicoModuleImpl extends BasicStartableImpl implements CalicoModule
 
     @Override
     public InetAddress getNextContainerAddress(String subnetId) {
-        Cidr cidr = getSubnetCidr(subnetId);
-
-        synchronized (addressMutex) {
-            Map<String, List<InetAddress>> allocations = sensors().get(SUBNET_ADDRESS_ALLOCATIONS);
-            List<InetAddress> allocated = allocations.get(subnetId);
-            if (allocated == null) allocated = MutableList.of();
-            int size = 1 << (32 - cidr.getLength());
-            int next = allocated.size();
-            do {
-                InetAddress addr = cidr.addressAtOffset(next + 1);
-                if (allocated.contains(addr)) {
-                    next++;
-                } else {
-                    allocated.add(addr);
-                    allocations.put(subnetId, allocated);
-                    sensors().set(SUBNET_ADDRESS_ALLOCATIONS, allocations);
-                    return addr;
-                }
-            } while (next < size);
-            throw new IllegalStateException("No more addresses in subnet: " + subnetId);
-        }
+        return containerAddresses.allocate(subnetId);
     }
 
     @Override
     public void recordContainerAddress(String subnetId, InetAddress address) {
-        synchronized (addressMutex) {
-            Map<String, List<InetAddress>> allocations = sensors().get(SUBNET_ADDRESS_ALLOCATIONS);
-            List<InetAddress> allocated = allocations.get(subnetId);
-            if (allocated == null) allocated = MutableList.of();
-            allocated.add(address);
-            allocations.put(subnetId, allocated);
-            sensors().set(SUBNET_ADDRESS_ALLOCATIONS, allocations);
-        }
+        containerAddresses.record(subnetId, address);
     }
 
     @Override
     public void associateContainerAddress(String containerId, InetAddress address) {
-        synchronized (addressMutex) {
-            Multimap<String, InetAddress> allocations = sensors().get(CONTAINER_ADDRESSES);
-            allocations.put(containerId, address);
-            sensors().set(CONTAINER_ADDRESSES, allocations);
-        }
+        containerAddresses.associate(containerId, address);
+    }
+
+    @Override
+    public void releaseContainerAddresses(String containerId) {
+        containerAddresses.release(containerId);
     }
 
     @Override
@@ -184,6 +156,20 @@ public class CalicoModuleImpl extends BasicStartableImpl implements CalicoModule
         }
     }
 
+    /**
+     * Forget a deleted subnet and its address allocations. Subnet CIDRs are
+     * allocated in sequence here, so the CIDR itself is not reused.
+     */
+    @Override
+    public void releaseSubnetCidr(String networkId) {
+        synchronized (networkMutex) {
+            Map<String, Cidr> subnets = sensors().get(SdnProvider.SUBNETS);
+            if (subnets.remove(networkId) == null) return;
+            sensors().set(SdnProvider.SUBNETS, subnets);
+        }
+        containerAddresses.remove(networkId);
+    }
+
     @Override
     public Cidr getSubnetCidr(String networkId) {
         synchronized (networkMutex) {
@@ -214,6 +200,7 @@ public class CalicoModuleImpl extends BasicStartableImpl implements CalicoModule
     @Override
     public void stop() {
         sensors().set(SERVICE_UP, Boolean.FALSE);
+        containerAddresses.persist();
 
         super.stop();
     }
@@ -222,6 +209,19 @@ public class CalicoModuleImpl extends BasicStartableImpl implements CalicoModule
     public void rebind() {
         super.rebind();
         // TODO implement custom SDN provider rebind logic
+
+        // Index networks provisioned before they were recorded by ID
+        synchronized (networkMutex) {
+            Map<String, VirtualNetwork> networks = sensors().get(SUBNET_ENTITIES);
+            if (networks == null) networks = Maps.newConcurrentMap();
+            for (Entity member : sensors().get(SDN_NETWORKS).getMembers()) {
+                String networkId = member.sensors().get(VirtualNetwork.NETWORK_ID);
+                if (networkId != null && !networks.containsKey(networkId)) {
+                    networks.put(networkId, (VirtualNetwork) member);
+                }
+            }
+            sensors().set(SUBNET_ENTITIES, networks);
+        }
     }
 
     @Override
@@ -247,6 +247,7 @@ public class CalicoModuleImpl extends BasicStartableImpl implements CalicoModule
     @Override
     public InetAddress attachNetwork(MesosSlave slave, Entity entity, String containerId, String subnetId) {
         InetAddress address = getNextContainerAddress(subnetId);
+        associateContainerAddress(containerId, address);
 
         // Run some commands to get information about the container network namespace
         String dockerIpOutput = slave.execCommand(sudo("ip addr show dev docker0 scope global label docker0"));
@@ -307,11 +308,25 @@ public class CalicoModuleImpl extends BasicStartableImpl implements CalicoModule
         execCalicoCommand(slave, addPool);
 
         sensors().get(SDN_NETWORKS).addMember(network);
+
+        // Publish the network, signalling anything waiting for it to be ready
+        synchronized (networkMutex) {
+            Map<String, VirtualNetwork> networks = sensors().get(SUBNET_ENTITIES);
+            networks.put(network.sensors().get(VirtualNetwork.NETWORK_ID), network);
+            sensors().set(SUBNET_ENTITIES, networks);
+        }
     }
 
     @Override
     public void deallocateNetwork(VirtualNetwork network) {
+        String networkId = network.sensors().get(VirtualNetwork.NETWORK_ID);
         sensors().get(SDN_NETWORKS).removeMember(network);
+        synchronized (networkMutex) {
+            Map<String, VirtualNetwork> networks = sensors().get(SUBNET_ENTITIES);
+            networks.remove(networkId);
+            sensors().set(SUBNET_ENTITIES, networks);
+        }
+        releaseSubnetCidr(networkId);
         network.stop();
         Entities.unmanage(network);
         // TODO actually deprovision the network if possible?